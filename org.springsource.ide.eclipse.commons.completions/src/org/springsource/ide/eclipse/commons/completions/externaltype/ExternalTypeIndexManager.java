@@ -10,13 +10,20 @@
  *******************************************************************************/
 package org.springsource.ide.eclipse.commons.completions.externaltype;
 
+import java.io.File;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IConfigurationElement;
@@ -28,14 +35,17 @@ import org.eclipse.core.runtime.Status;
 import org.eclipse.core.runtime.jobs.Job;
 import org.eclipse.jdt.core.IJavaProject;
 import org.springsource.ide.eclipse.commons.completions.CompletionsActivator;
+import org.springsource.ide.eclipse.commons.completions.externaltype.indexing.CompactExternalTypeIndexer;
+import org.springsource.ide.eclipse.commons.completions.externaltype.indexing.CompositeExternalTypeIndexer;
 import org.springsource.ide.eclipse.commons.completions.externaltype.indexing.ExternalTypeIndexer;
-import org.springsource.ide.eclipse.commons.completions.externaltype.indexing.SimpleExternalTypeIndexer;
 
 /**
  * Only a single instance of this class typically exists. Its purpose is to maintain a mapping between
  * {@link IJavaProject} instances and their respective ExternalType indexes.
  * <p>
- * External types are project specific. 
+ * External types are project specific. But projects that use the same {@link ExternalTypeDiscovery}
+ * share its index, and the indexes of discoveries that are no longer used are kept around as long
+ * as they don't use too much memory.
  * 
  * @author Kris De Volder
  */
@@ -50,63 +60,177 @@ public class ExternalTypeIndexManager {
 	}
 
 	/**
-	 * For now we only keep one index. If more than is need accross the projects in the workspace
-	 * this may be very bad becayse the index is thrown away and rebuilt each time we have to switch.
-	 * <p>
-	 * With the current implementers of this extension point however it is ok because there
-	 * is only one and it always provides discovery that is shareable between all projects it applies to.
+	 * Approximate number of bytes of memory the indexes may use. When they use more, the least
+	 * recently used indexes that the current project doesn't need are discarded.
 	 */
-	private ExternalTypeIndexer index = null;
-	
+	private static final long MAX_MEMORY = 32*1024*1024;
+
 	/**
-	 * This 'key' should identify the content of an indexer so that if the key changes (not equals) then 
-	 * the indexer is no longer valid and the index should be rebuilt.
-	 * <p>
-	 * For now the assumption is that mostly all projects have a non-empty index will be sharing it.
-	 * This is true for now, but maybe not always be true in the future if different implementations
-	 * of the extension point provide disovery algorithms that vary depending on project type,
-	 * library versions etc.
+	 * An index for each discovery, shared by all projects that use the discovery. A project's index
+	 * is composed of the indexes of its discoveries. Ordered from least to most recently used.
 	 */
-	private Set<ExternalTypeDiscovery> contentKey = null;
-	
+	private final LinkedHashMap<ExternalTypeDiscovery, CompactExternalTypeIndexer> indexes =
+			new LinkedHashMap<ExternalTypeDiscovery, CompactExternalTypeIndexer>(16, 0.75f, true);
+
 	public synchronized ExternalTypeIndexer getIndexFor(IJavaProject project) {
-		final HashSet<ExternalTypeDiscovery> newContentKey = new HashSet<ExternalTypeDiscovery>();
+		final HashSet<ExternalTypeDiscovery> contentKey = new HashSet<ExternalTypeDiscovery>();
 		for (ExternalTypeDiscoveryFactory factory : getFactories()) {
 			ExternalTypeDiscovery discovery = factory.discoveryFor(project);
 			if (discovery!=null) {
-				newContentKey.add(discovery);
+				contentKey.add(discovery);
 			}
 		}
-		if (newContentKey.isEmpty()) {
-			//A useful special case: if none of the factories applies to our current project...
-			// the empty index is pretty cheap so don't throw away a more valuable index because of it.
+		if (contentKey.isEmpty()) {
 			return ExternalTypeIndexer.EMPTY;
 		}
-		if (index!=null && contentKey.equals(newContentKey)) {
-			return index;
+		List<CompactExternalTypeIndexer> parts = new ArrayList<CompactExternalTypeIndexer>(contentKey.size());
+		final Map<ExternalTypeDiscovery, CompactExternalTypeIndexer> toBuild = new LinkedHashMap<ExternalTypeDiscovery, CompactExternalTypeIndexer>();
+		for (ExternalTypeDiscovery discovery : contentKey) {
+			CompactExternalTypeIndexer index = indexes.get(discovery);
+			if (index==null) {
+				index = new CompactExternalTypeIndexer(getStoreDirectory());
+				indexes.put(discovery, index);
+				toBuild.put(discovery, index);
+			}
+			parts.add(index);
 		}
-		index = new SimpleExternalTypeIndexer();
-		contentKey = newContentKey;
-		Job rebuildIndex = new Job("Indexing Jar Types") {
-			@Override
-			protected IStatus run(IProgressMonitor mon) {
-				mon.beginTask("Indexing Jar Types", contentKey.size());
-				try {
-					//Must (re)build the index
-					for (ExternalTypeDiscovery discovery : contentKey) {
-						index.addFrom(discovery);
-						mon.worked(1);
-					}
-				} finally {
-					mon.done();
+		evict(contentKey);
+		if (!toBuild.isEmpty()) {
+			Job rebuildIndex = new Job("Indexing Jar Types") {
+				@Override
+				protected IStatus run(IProgressMonitor mon) {
+					buildIndexes(toBuild, mon);
+					return mon.isCanceled() ? Status.CANCEL_STATUS : Status.OK_STATUS;
+				}
+
+			};
+			rebuildIndex.setPriority(Job.DECORATE);
+			rebuildIndex.schedule();
+		}
+		if (parts.size()==1) {
+			return parts.get(0);
+		}
+		return new CompositeExternalTypeIndexer(parts);
+	}
+
+	/**
+	 * Fill newly created indexes. Stored types are added first, since that is fast. Then the remaining
+	 * discoveries are scanned in parallel, one thread per discovery. A jar is scanned into a sorted table
+	 * of its own without taking any locks, and that table is merged into its index in one step (see
+	 * {@link CompactExternalTypeIndexer#addFrom(ExternalTypeDiscovery)}). When all its types are added,
+	 * the index for CamelCase and substring queries is built, so content assist doesn't have to.
+	 * <p>
+	 * If indexing is canceled, the indexes that weren't built are discarded, so they are built again
+	 * when they are needed.
+	 */
+	private void buildIndexes(final Map<ExternalTypeDiscovery, CompactExternalTypeIndexer> toBuild, final IProgressMonitor mon) {
+		mon.beginTask("Indexing Jar Types", toBuild.size());
+		try {
+			final List<ExternalTypeDiscovery> notStored = new ArrayList<ExternalTypeDiscovery>();
+			for (Map.Entry<ExternalTypeDiscovery, CompactExternalTypeIndexer> e : toBuild.entrySet()) {
+				if (!mon.isCanceled() && e.getValue().addFromStore(e.getKey())) {
+					e.getValue().buildNameIndex();
+					mon.worked(1);
+				} else {
+					notStored.add(e.getKey());
+				}
+			}
+			int threads = Math.max(1, Math.min(notStored.size(), Runtime.getRuntime().availableProcessors()));
+			ExecutorService executor = Executors.newFixedThreadPool(threads);
+			try {
+				for (final ExternalTypeDiscovery discovery : notStored) {
+					executor.execute(new Runnable() {
+						public void run() {
+							CompactExternalTypeIndexer index = toBuild.get(discovery);
+							if (mon.isCanceled()) {
+								discard(discovery, index);
+								return;
+							}
+							try {
+								index.addFrom(discovery);
+								//Each index has a single discovery, so this was the last merge.
+								index.buildNameIndex();
+							} catch (Throwable e) {
+								CompletionsActivator.log(e);
+							}
+							synchronized (mon) {
+								mon.worked(1);
+							}
+						}
+					});
 				}
-				return Status.OK_STATUS;
+			} finally {
+				executor.shutdown();
+			}
+			try {
+				executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			if (!mon.isCanceled()) {
+				pruneStore();
+			}
+		} finally {
+			mon.done();
+		}
+	}
+
+	/**
+	 * Whether the stored types of jars that no longer exist were deleted yet.
+	 */
+	private boolean storePruned = false;
+
+	/**
+	 * Delete the stored types of jars that no longer exist, once per session. Those are never read
+	 * again, so this only frees disk space and can wait until the indexes are built.
+	 */
+	private void pruneStore() {
+		synchronized (this) {
+			if (storePruned) {
+				return;
+			}
+			storePruned = true;
+		}
+		File storeDirectory = getStoreDirectory();
+		if (storeDirectory!=null) {
+			CompactExternalTypeIndexer.pruneStore(storeDirectory);
+		}
+	}
+
+	private synchronized void discard(ExternalTypeDiscovery discovery, CompactExternalTypeIndexer index) {
+		if (indexes.get(discovery)==index) {
+			indexes.remove(discovery);
+		}
+	}
+
+	/**
+	 * Discard least recently used indexes until the indexes use no more than MAX_MEMORY.
+	 * Indexes of discoveries in 'keep' are never discarded.
+	 */
+	private void evict(Set<ExternalTypeDiscovery> keep) {
+		long total = 0;
+		for (CompactExternalTypeIndexer index : indexes.values()) {
+			total += index.getMemorySize();
+		}
+		Iterator<Map.Entry<ExternalTypeDiscovery, CompactExternalTypeIndexer>> iter = indexes.entrySet().iterator();
+		while (total>MAX_MEMORY && iter.hasNext()) {
+			Map.Entry<ExternalTypeDiscovery, CompactExternalTypeIndexer> e = iter.next();
+			if (!keep.contains(e.getKey())) {
+				total -= e.getValue().getMemorySize();
+				iter.remove();
 			}
-			
-		};
-		rebuildIndex.setPriority(Job.DECORATE);
-		rebuildIndex.schedule();
-		return index;
+		}
+	}
+
+	/**
+	 * @return Directory where the types found in jars are stored, or null if the plugin isn't active.
+	 */
+	private static File getStoreDirectory() {
+		CompletionsActivator plugin = CompletionsActivator.getDefault();
+		if (plugin!=null) {
+			return plugin.getStateLocation().append("jarTypes").toFile();
+		}
+		return null;
 	}
 
 	private static List<ExternalTypeDiscoveryFactory> factories = null;	
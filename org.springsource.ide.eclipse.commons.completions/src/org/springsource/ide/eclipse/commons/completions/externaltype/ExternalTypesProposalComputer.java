@@ -12,12 +12,18 @@ package org.springsource.ide.eclipse.commons.completions.externaltype;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
 
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.jdt.core.CompletionProposal;
 import org.eclipse.jdt.core.Flags;
 import org.eclipse.jdt.core.IJavaProject;
+import org.eclipse.jdt.core.JavaModelException;
 import org.eclipse.jdt.core.Signature;
 import org.eclipse.jdt.ui.text.java.ContentAssistInvocationContext;
 import org.eclipse.jdt.ui.text.java.IJavaCompletionProposalComputer;
@@ -44,13 +50,45 @@ public class ExternalTypesProposalComputer implements IJavaCompletionProposalCom
 
 	private static final List<IContextInformation> NO_CONTEXTS = Arrays.asList(new IContextInformation[0]);
 	private static final List<ICompletionProposal> NO_PROPOSALS = Arrays.asList(new ICompletionProposal[0]);
-	
+
+	/**
+	 * Maximum number of proposals computed for a single request. If there's more than this
+	 * the user can't look at all of them anyway.
+	 */
+	private static final int MAX_PROPOSALS = 50;
+
+	/**
+	 * Order in which matching types are proposed. Types with shorter names come first, as
+	 * they match more of what the user typed, then types in shorter packages.
+	 */
+	private static final Comparator<ExternalType> RANKING = new Comparator<ExternalType>() {
+		public int compare(ExternalType a, ExternalType b) {
+			int comp = a.getName().length() - b.getName().length();
+			if (comp==0) {
+				comp = a.getPackage().length() - b.getPackage().length();
+			}
+			if (comp==0) {
+				comp = a.compareTo(b);
+			}
+			return comp;
+		}
+	};
+
+	/**
+	 * Remembers which types were found on a project's classpath during a content assist session.
+	 * {@link IJavaProject#findType(String)} is expensive, and as the user types, the same types are
+	 * proposed again and again.
+	 */
+	private Map<String, Boolean> onClasspath = new HashMap<String, Boolean>();
+	private IJavaProject onClasspathProject = null;
+
 	public ExternalTypesProposalComputer() {
 	}
 
 	@Override
 	public void sessionStarted() {
 		debug("sessionStarted");
+		clearClasspathCache();
 	}
 
 	@Override
@@ -61,10 +99,11 @@ public class ExternalTypesProposalComputer implements IJavaCompletionProposalCom
 	@Override
 	public void sessionEnded() {
 		debug("sessionEnded");
+		clearClasspathCache();
 	}
 
 	@Override
-	public List<ICompletionProposal> computeCompletionProposals(ContentAssistInvocationContext _context, IProgressMonitor monitor) {
+	public List<ICompletionProposal> computeCompletionProposals(ContentAssistInvocationContext _context, final IProgressMonitor monitor) {
 		if (_context instanceof JavaContentAssistInvocationContext) {
 			final JavaContentAssistInvocationContext context = (JavaContentAssistInvocationContext) _context;
 			try {
@@ -73,32 +112,49 @@ public class ExternalTypesProposalComputer implements IJavaCompletionProposalCom
 				//Only compute proposals if we actually have something to look for. This avoids adding our suggestions
 				// for completions like 'foo.^".
 				if (idPrefix!=null && !"".equals(idPrefix)) {
-					final ArrayList<ICompletionProposal> completions = new ArrayList<ICompletionProposal>();
 					final ExternalTypeIndexer index = ExternalTypeIndexManager.indexFor(context.getProject());
-					index.getByPrefix(idPrefix, new Requestor<ExternalType>() {
+					//Keep the best candidates. Some of them will turn out to be on the classpath already, so keep
+					// more than we need. The worst of the kept candidates is at the head of the queue.
+					//Note: all matches must be ranked, since the index doesn't deliver them in ranking order. A short
+					// prefix like "S" may match many thousands of types, but most of them are rejected by a single
+					// comparison with the worst kept candidate.
+					final int maxKept = 2*MAX_PROPOSALS;
+					final PriorityQueue<ExternalType> best = new PriorityQueue<ExternalType>(maxKept+1, Collections.reverseOrder(RANKING));
+					//CamelCase matches include all the types whose name starts with the prefix.
+					index.getByCamelCase(idPrefix, new Requestor<ExternalType>() {
 						public boolean receive(ExternalType type) {
-							//TODO: limit number of results. If there's too many user can't look
-							// at all of them anyway.
-							try {
-								if (type.getName().startsWith(idPrefix)) {
-									IJavaProject project = context.getProject();
-									if (project.findType(type.getFullyQualifiedName())==null) {
-										CompletionProposal proposal = CompletionProposal.create(CompletionProposal.TYPE_REF, context.getInvocationOffset());
-										proposal.setCompletion(type.getFullyQualifiedName().toCharArray());
-										proposal.setDeclarationSignature(type.getPackage().toCharArray());
-										proposal.setFlags(Flags.AccPublic); //TODO: This is some kind of bit mask and it should be derived from the type information.
-										//proposal.setRelevance(relevance);
-										proposal.setReplaceRange(context.getInvocationOffset()-idPrefix.length(), context.getInvocationOffset());
-										proposal.setSignature(Signature.createTypeSignature(type.getFullyQualifiedName(), true).toCharArray());
-										completions.add(new ExternalTypeCompletionProposal(proposal, context, type, index));
-									}
-								}
-							} catch (Exception e) {
-								CompletionsActivator.log(e);
+							if (best.size()<maxKept) {
+								best.add(type);
+							} else if (RANKING.compare(type, best.peek())<0) {
+								best.poll();
+								best.add(type);
 							}
-							return true;
+							return !monitor.isCanceled();
 						}
 					});
+					ExternalType[] ranked = best.toArray(new ExternalType[best.size()]);
+					Arrays.sort(ranked, RANKING);
+					IJavaProject project = context.getProject();
+					ArrayList<ICompletionProposal> completions = new ArrayList<ICompletionProposal>();
+					for (ExternalType type : ranked) {
+						if (completions.size()>=MAX_PROPOSALS || monitor.isCanceled()) {
+							break;
+						}
+						try {
+							if (!isOnClasspath(project, type)) {
+								CompletionProposal proposal = CompletionProposal.create(CompletionProposal.TYPE_REF, context.getInvocationOffset());
+								proposal.setCompletion(type.getFullyQualifiedName().toCharArray());
+								proposal.setDeclarationSignature(type.getPackage().toCharArray());
+								proposal.setFlags(Flags.AccPublic); //TODO: This is some kind of bit mask and it should be derived from the type information.
+								//proposal.setRelevance(relevance);
+								proposal.setReplaceRange(context.getInvocationOffset()-idPrefix.length(), context.getInvocationOffset());
+								proposal.setSignature(Signature.createTypeSignature(type.getFullyQualifiedName(), true).toCharArray());
+								completions.add(new ExternalTypeCompletionProposal(proposal, context, type, index));
+							}
+						} catch (Exception e) {
+							CompletionsActivator.log(e);
+						}
+					}
 					return completions;
 				}
 			} catch (Exception e) {
@@ -108,6 +164,25 @@ public class ExternalTypesProposalComputer implements IJavaCompletionProposalCom
 		return NO_PROPOSALS;
 	}
 
+	private synchronized boolean isOnClasspath(IJavaProject project, ExternalType type) throws JavaModelException {
+		if (!project.equals(onClasspathProject)) {
+			onClasspath.clear();
+			onClasspathProject = project;
+		}
+		String fqName = type.getFullyQualifiedName();
+		Boolean found = onClasspath.get(fqName);
+		if (found==null) {
+			found = project.findType(fqName)!=null;
+			onClasspath.put(fqName, found);
+		}
+		return found;
+	}
+
+	private synchronized void clearClasspathCache() {
+		onClasspath.clear();
+		onClasspathProject = null;
+	}
+
 	@Override
 	public List<IContextInformation> computeContextInformation(ContentAssistInvocationContext context, IProgressMonitor monitor) {
 		//This doesn't seem to get called so it doesn't really matter what we put in here.
@@ -87,6 +87,20 @@ public class JarTypeDiscovery extends AbstractExternalTypeSource implements Exte
 		return this;
 	}
 
+	/**
+	 * @return The jar file types are discovered from.
+	 */
+	public File getJarFile() {
+		return jarFile;
+	}
+
+	/**
+	 * @return The source of every type discovered from the jar.
+	 */
+	public final ExternalTypeSource getJarTypeSource() {
+		return getTypeSource();
+	}
+
 	@Override
 	public String toString() {
 		return "JarTypeDiscovery["+jarFile+"]";
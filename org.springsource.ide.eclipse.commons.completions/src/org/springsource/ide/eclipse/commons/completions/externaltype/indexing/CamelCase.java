@@ -0,0 +1,116 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Pivotal Software, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Pivotal Software, Inc. - initial API and implementation
+ *******************************************************************************/
+package org.springsource.ide.eclipse.commons.completions.externaltype.indexing;
+
+/**
+ * Name matching used by the queries of {@link ExternalTypeIndexer}.
+ * <p>
+ * A name consists of 'humps', each starting with its first character or an upper case
+ * character. E.g. 'RestTemplate' has the humps 'Rest' and 'Template'. A CamelCase
+ * pattern matches a name if each hump of the pattern is a prefix of the corresponding
+ * hump of the name, starting from the first hump. So 'RTemp', 'RestT' and 'RT' all match
+ * 'RestTemplate', but 'Temp' doesn't. As in JDT, matching is case sensitive.
+ */
+final class CamelCase {
+
+	private CamelCase() {
+	}
+
+	/**
+	 * @return The first character of every hump of a name, e.g. 'RT' for 'RestTemplate'.
+	 */
+	static String initials(String name) {
+		StringBuilder initials = new StringBuilder();
+		for (int i = 0; i < name.length(); i++) {
+			char c = name.charAt(i);
+			if (i==0 || Character.isUpperCase(c)) {
+				initials.append(c);
+			}
+		}
+		return initials.toString();
+	}
+
+	/**
+	 * @return Whether a pattern has a single hump. Such a pattern matches exactly the names
+	 *   it is a prefix of.
+	 */
+	static boolean isSingleHump(String pattern) {
+		for (int i = 1; i < pattern.length(); i++) {
+			if (Character.isUpperCase(pattern.charAt(i))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	static boolean matches(String pattern, String name) {
+		return matches(pattern, name.toCharArray(), name.length());
+	}
+
+	/**
+	 * @return Whether a CamelCase pattern matches the name in name[0..length-1].
+	 */
+	static boolean matches(String pattern, char[] name, int length) {
+		int p = 0;
+		int n = 0;
+		while (p<pattern.length()) {
+			if (n>=length) {
+				return false;
+			}
+			int patternEnd = p+1;
+			while (patternEnd<pattern.length() && !Character.isUpperCase(pattern.charAt(patternEnd))) {
+				patternEnd++;
+			}
+			int nameEnd = n+1;
+			while (nameEnd<length && !Character.isUpperCase(name[nameEnd])) {
+				nameEnd++;
+			}
+			if (patternEnd-p > nameEnd-n) {
+				return false;
+			}
+			for (int i = 0; i < patternEnd-p; i++) {
+				if (pattern.charAt(p+i)!=name[n+i]) {
+					return false;
+				}
+			}
+			p = patternEnd;
+			n = nameEnd;
+		}
+		return true;
+	}
+
+	/**
+	 * @param lowerCase Substring to look for, in lower case.
+	 * @return Whether the name in name[0..length-1] contains a substring, ignoring case.
+	 */
+	static boolean containsIgnoreCase(char[] name, int length, String lowerCase) {
+		int len = lowerCase.length();
+		for (int start = 0; start+len <= length; start++) {
+			int i = 0;
+			while (i<len && Character.toLowerCase(name[start+i])==lowerCase.charAt(i)) {
+				i++;
+			}
+			if (i==len) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	static String toLowerCase(String s) {
+		char[] chars = s.toCharArray();
+		for (int i = 0; i < chars.length; i++) {
+			chars[i] = Character.toLowerCase(chars[i]);
+		}
+		return new String(chars);
+	}
+
+}
@@ -0,0 +1,364 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Pivotal Software, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Pivotal Software, Inc. - initial API and implementation
+ *******************************************************************************/
+package org.springsource.ide.eclipse.commons.completions.externaltype.indexing;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.springsource.ide.eclipse.commons.completions.externaltype.ExternalType;
+import org.springsource.ide.eclipse.commons.completions.externaltype.ExternalTypeDiscovery;
+import org.springsource.ide.eclipse.commons.completions.externaltype.ExternalTypeEntry;
+import org.springsource.ide.eclipse.commons.completions.externaltype.ExternalTypeSource;
+import org.springsource.ide.eclipse.commons.completions.externaltype.JarTypeDiscovery;
+import org.springsource.ide.eclipse.commons.completions.util.Requestor;
+
+/**
+ * Memory efficient implementation of ExternalTypeIndexer. Types are kept in an immutable
+ * {@link TypeTable} which stores simple names front coded in a sorted array and each
+ * package name only once. Lookups by prefix use binary search. CamelCase and substring
+ * queries use a {@link NameIndex}, once it is built by {@link #buildNameIndex()}.
+ * <p>
+ * Types are added in batches. Each batch is sorted into a table of its own, which is then
+ * merged with the current table into a new table that replaces the current one. Queries read
+ * whatever table is current without taking any locks, so content assist is never blocked by
+ * indexing. Types that are being added become visible when the batch they are in is merged.
+ * <p>
+ * Optionally, the types found in each jar by a {@link JarTypeDiscovery} are stored on disk
+ * (see {@link TypeTableStore}). The stored types can be added to another indexer much faster
+ * than they can be discovered again, as long as the jar doesn't change.
+ */
+public class CompactExternalTypeIndexer extends ExternalTypeIndexer {
+
+	/**
+	 * Minimum number of types added in one batch. Batches grow with the size of the index,
+	 * so that the cost of merging them stays proportional to the number of types added.
+	 */
+	private static final int MIN_BATCH_SIZE = 4096;
+
+	private volatile TypeTable table = TypeTable.EMPTY;
+
+	/**
+	 * Stores the tables of jars on disk. May be null.
+	 */
+	private final TypeTableStore store;
+
+	//The fields below are only accessed while holding the lock on 'this'.
+
+	private final Map<String, Integer> packageIds = new HashMap<String, Integer>();
+	private final List<String> packages = new ArrayList<String>();
+	private final Map<ExternalTypeSource, Integer> sourceIds = new HashMap<ExternalTypeSource, Integer>();
+	private final List<ExternalTypeSource> sources = new ArrayList<ExternalTypeSource>();
+
+	public CompactExternalTypeIndexer() {
+		this(null);
+	}
+
+	/**
+	 * @param storeDirectory Directory in which the types found in jars are stored, so they don't have
+	 *    to be discovered again by another indexer, e.g. after a restart. May be null, in which case
+	 *    nothing is stored.
+	 */
+	public CompactExternalTypeIndexer(File storeDirectory) {
+		this.store = storeDirectory==null ? null : new TypeTableStore(storeDirectory);
+	}
+
+	/**
+	 * Delete the types stored in a directory for jars that no longer exist.
+	 */
+	public static void pruneStore(File storeDirectory) {
+		new TypeTableStore(storeDirectory).prune();
+	}
+
+	/**
+	 * @return The number of types in the index.
+	 */
+	public int size() {
+		return table.size;
+	}
+
+	/**
+	 * @return Approximate number of bytes of memory used by the index.
+	 */
+	public long getMemorySize() {
+		return table.getMemorySize();
+	}
+
+	TypeTable getTable() {
+		return table;
+	}
+
+	/**
+	 * Add the types of a discovery. The types of a jar are sorted into a table of their own
+	 * without holding any locks, then merged into the index in one step. Other discoveries may
+	 * find types for a long time, so their types are merged in batches as they are found.
+	 * <p>
+	 * Different discoveries can be added in parallel.
+	 */
+	@Override
+	public void addFrom(ExternalTypeDiscovery discovery) {
+		if (discovery instanceof JarTypeDiscovery) {
+			addFromJar((JarTypeDiscovery) discovery);
+			return;
+		}
+		final List<ExternalTypeEntry> batch = new ArrayList<ExternalTypeEntry>();
+		discovery.getTypes(new Requestor<ExternalTypeEntry>() {
+			public boolean receive(ExternalTypeEntry element) {
+				batch.add(element);
+				if (batch.size()>=Math.max(MIN_BATCH_SIZE, table.size/4)) {
+					add(sort(batch));
+					batch.clear();
+				}
+				return true;
+			}
+		});
+		add(sort(batch));
+	}
+
+	/**
+	 * Add the types of a discovery only if they were stored earlier, which is much faster
+	 * than {@link #addFrom(ExternalTypeDiscovery)}.
+	 *
+	 * @return true if the types were added.
+	 */
+	public boolean addFromStore(ExternalTypeDiscovery discovery) {
+		if (store!=null && discovery instanceof JarTypeDiscovery) {
+			JarTypeDiscovery jarDiscovery = (JarTypeDiscovery) discovery;
+			TypeTable run = store.load(jarDiscovery.getJarFile(), jarDiscovery.getJarTypeSource());
+			if (run!=null) {
+				add(run);
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private void addFromJar(JarTypeDiscovery discovery) {
+		File jar = discovery.getJarFile();
+		long length = jar.length();
+		long lastModified = jar.lastModified();
+		final List<ExternalTypeEntry> entries = new ArrayList<ExternalTypeEntry>();
+		discovery.getTypes(new Requestor<ExternalTypeEntry>() {
+			public boolean receive(ExternalTypeEntry element) {
+				entries.add(element);
+				return true;
+			}
+		});
+		TypeTable run = sort(entries);
+		ExternalTypeSource source = discovery.getJarTypeSource();
+		//A subclass may discover types from other sources. Those can't be stored.
+		if (store!=null && jar.isFile() && (run.size==0 || (run.sources.length==1 && run.sources[0]==source))) {
+			store.save(jar, length, lastModified, run);
+		}
+		add(run);
+	}
+
+	/**
+	 * Create a table from a list of entries. When the same type occurs more than once, the
+	 * last entry for it wins.
+	 */
+	private static TypeTable sort(List<ExternalTypeEntry> entries) {
+		Map<String, Integer> packageIds = new HashMap<String, Integer>();
+		List<String> packages = new ArrayList<String>();
+		Map<ExternalTypeSource, Integer> sourceIds = new HashMap<ExternalTypeSource, Integer>();
+		List<ExternalTypeSource> sources = new ArrayList<ExternalTypeSource>();
+		Pending[] pending = new Pending[entries.size()];
+		for (int i = 0; i < pending.length; i++) {
+			ExternalTypeEntry e = entries.get(i);
+			pending[i] = new Pending(e.getType(),
+					intern(e.getType().getPackage(), packageIds, packages),
+					intern(e.getSource(), sourceIds, sources)
+			);
+		}
+		Arrays.sort(pending); //stable, so when a type is added more than once, the last one stays last.
+		TypeTable.Builder builder = new TypeTable.Builder(pending.length,
+				packages.toArray(new String[packages.size()]),
+				sources.toArray(new ExternalTypeSource[sources.size()])
+		);
+		for (int i = 0; i < pending.length; i++) {
+			Pending p = pending[i];
+			if (i+1==pending.length || p.compareTo(pending[i+1])!=0) {
+				builder.add(p.name, p.name.length, p.packageId, p.sourceId);
+			}
+		}
+		return builder.build();
+	}
+
+	/**
+	 * Merge a table into the index. When a type is in both, the entry from the added table wins.
+	 */
+	private synchronized void add(TypeTable run) {
+		if (run.size==0) {
+			return;
+		}
+		int[] packageMap = new int[run.packages.length];
+		for (int i = 0; i < packageMap.length; i++) {
+			packageMap[i] = intern(run.packages[i], packageIds, packages);
+		}
+		int[] sourceMap = new int[run.sources.length];
+		for (int i = 0; i < sourceMap.length; i++) {
+			sourceMap[i] = intern(run.sources[i], sourceIds, sources);
+		}
+		TypeTable old = table;
+		TypeTable.Builder builder = new TypeTable.Builder(old.size+run.size,
+				packages.toArray(new String[packages.size()]),
+				sources.toArray(new ExternalTypeSource[sources.size()])
+		);
+		TypeTable.Cursor a = old.cursor();
+		TypeTable.Cursor b = run.cursor();
+		boolean moreA = a.next();
+		boolean moreB = b.next();
+		while (moreA || moreB) {
+			int comp;
+			if (!moreB) {
+				comp = -1;
+			} else if (!moreA) {
+				comp = 1;
+			} else {
+				comp = TypeTable.compare(a, b);
+				if (comp==0) {
+					comp = a.getPackage().compareTo(b.getPackage());
+				}
+			}
+			if (comp<0) {
+				builder.add(a.name, a.length, a.getPackageId(), a.getSourceId());
+				moreA = a.next();
+			} else {
+				builder.add(b.name, b.length, packageMap[b.getPackageId()], sourceMap[b.getSourceId()]);
+				moreB = b.next();
+				if (comp==0) {
+					moreA = a.next();
+				}
+			}
+		}
+		table = builder.build();
+	}
+
+	private static <T> int intern(T value, Map<T, Integer> ids, List<T> values) {
+		Integer id = ids.get(value);
+		if (id==null) {
+			id = values.size();
+			values.add(value);
+			ids.put(value, id);
+		}
+		return id;
+	}
+
+	@Override
+	public void getAll(Requestor<ExternalType> requestor) {
+		TypeTable.Cursor cursor = table.cursor();
+		while (cursor.next()) {
+			if (!requestor.receive(cursor.getType())) {
+				return;
+			}
+		}
+	}
+
+	@Override
+	public void getByPrefix(String prefix, Requestor<ExternalType> requestor) {
+		TypeTable.Cursor cursor = table.cursor();
+		if (cursor.seek(prefix)) {
+			do {
+				if (!cursor.startsWith(prefix) || !requestor.receive(cursor.getType())) {
+					return;
+				}
+			} while (cursor.next());
+		}
+	}
+
+	/**
+	 * Build the index for CamelCase and substring queries. Until it is built, those queries look at
+	 * every type. The index is for the types added so far, and adding more types discards it, so
+	 * this should be called when all types are added.
+	 */
+	public void buildNameIndex() {
+		table.buildNameIndex();
+	}
+
+	@Override
+	public void getByCamelCase(String pattern, Requestor<ExternalType> requestor) {
+		if (CamelCase.isSingleHump(pattern)) {
+			getByPrefix(pattern, requestor);
+			return;
+		}
+		TypeTable table = this.table;
+		NameIndex nameIndex = table.getNameIndex();
+		if (nameIndex!=null) {
+			nameIndex.getByCamelCase(pattern, requestor);
+			return;
+		}
+		TypeTable.Cursor cursor = table.cursor();
+		while (cursor.next()) {
+			if (CamelCase.matches(pattern, cursor.name, cursor.length) && !requestor.receive(cursor.getType())) {
+				return;
+			}
+		}
+	}
+
+	@Override
+	public void getBySubstring(String substring, Requestor<ExternalType> requestor) {
+		TypeTable table = this.table;
+		NameIndex nameIndex = table.getNameIndex();
+		if (nameIndex!=null) {
+			nameIndex.getBySubstring(substring, requestor);
+			return;
+		}
+		String lowerCase = CamelCase.toLowerCase(substring);
+		TypeTable.Cursor cursor = table.cursor();
+		while (cursor.next()) {
+			if (CamelCase.containsIgnoreCase(cursor.name, cursor.length, lowerCase) && !requestor.receive(cursor.getType())) {
+				return;
+			}
+		}
+	}
+
+	@Override
+	public ExternalTypeSource getSource(ExternalType type) {
+		TypeTable.Cursor cursor = table.cursor();
+		if (cursor.seek(type.getName())) {
+			do {
+				if (!cursor.nameEquals(type.getName())) {
+					break;
+				}
+				if (cursor.getPackage().equals(type.getPackage())) {
+					return cursor.getSource();
+				}
+			} while (cursor.next());
+		}
+		return ExternalTypeSource.UNKNOWN;
+	}
+
+	/**
+	 * A type waiting to be merged into the table.
+	 */
+	private static class Pending implements Comparable<Pending> {
+		final ExternalType type;
+		final char[] name;
+		final int packageId;
+		final int sourceId;
+
+		Pending(ExternalType type, int packageId, int sourceId) {
+			this.type = type;
+			this.name = type.getName().toCharArray();
+			this.packageId = packageId;
+			this.sourceId = sourceId;
+		}
+
+		@Override
+		public int compareTo(Pending other) {
+			return type.compareTo(other.type);
+		}
+	}
+
+}
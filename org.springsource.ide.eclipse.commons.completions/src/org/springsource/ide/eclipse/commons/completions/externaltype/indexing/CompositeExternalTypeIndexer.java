@@ -0,0 +1,151 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Pivotal Software, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Pivotal Software, Inc. - initial API and implementation
+ *******************************************************************************/
+package org.springsource.ide.eclipse.commons.completions.externaltype.indexing;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.eclipse.core.runtime.Assert;
+import org.springsource.ide.eclipse.commons.completions.externaltype.ExternalType;
+import org.springsource.ide.eclipse.commons.completions.externaltype.ExternalTypeDiscovery;
+import org.springsource.ide.eclipse.commons.completions.externaltype.ExternalTypeSource;
+import org.springsource.ide.eclipse.commons.completions.util.Requestor;
+
+/**
+ * Read-only view of the union of a number of {@link CompactExternalTypeIndexer}s. This allows
+ * projects to share the indexes of the discoveries they have in common.
+ * <p>
+ * Like a single index, {@link #getAll(Requestor)} and {@link #getByPrefix(String, Requestor)} deliver
+ * types in sorted order. A type that is in more than one of the indexes is delivered only once.
+ */
+public class CompositeExternalTypeIndexer extends ExternalTypeIndexer {
+
+	private final CompactExternalTypeIndexer[] parts;
+
+	public CompositeExternalTypeIndexer(List<CompactExternalTypeIndexer> parts) {
+		this.parts = parts.toArray(new CompactExternalTypeIndexer[parts.size()]);
+	}
+
+	@Override
+	public void getAll(Requestor<ExternalType> requestor) {
+		TypeTable.Cursor[] cursors = new TypeTable.Cursor[parts.length];
+		for (int i = 0; i < parts.length; i++) {
+			TypeTable.Cursor cursor = parts[i].getTable().cursor();
+			cursors[i] = cursor.next() ? cursor : null;
+		}
+		merge(cursors, null, requestor);
+	}
+
+	@Override
+	public void getByPrefix(String prefix, Requestor<ExternalType> requestor) {
+		TypeTable.Cursor[] cursors = new TypeTable.Cursor[parts.length];
+		for (int i = 0; i < parts.length; i++) {
+			TypeTable.Cursor cursor = parts[i].getTable().cursor();
+			cursors[i] = cursor.seek(prefix) ? cursor : null;
+		}
+		merge(cursors, prefix, requestor);
+	}
+
+	/**
+	 * Deliver the entries of a number of cursors in sorted order, skipping duplicates.
+	 *
+	 * @param cursors Cursors positioned on their first entry, or null for cursors without entries.
+	 * @param prefix If not null, stop at the first entry that doesn't start with the prefix.
+	 */
+	private static void merge(TypeTable.Cursor[] cursors, String prefix, Requestor<ExternalType> requestor) {
+		while (true) {
+			TypeTable.Cursor min = null;
+			for (TypeTable.Cursor cursor : cursors) {
+				if (cursor!=null && (min==null || compare(cursor, min)<0)) {
+					min = cursor;
+				}
+			}
+			if (min==null || (prefix!=null && !min.startsWith(prefix))) {
+				return;
+			}
+			ExternalType type = min.getType();
+			for (int i = 0; i < cursors.length; i++) {
+				//Advance past the delivered type, including any duplicates of it.
+				TypeTable.Cursor cursor = cursors[i];
+				if (cursor!=null && cursor!=min && compare(cursor, min)==0 && !cursor.next()) {
+					cursors[i] = null;
+				}
+			}
+			for (int i = 0; i < cursors.length; i++) {
+				if (cursors[i]==min && !min.next()) {
+					cursors[i] = null;
+				}
+			}
+			if (!requestor.receive(type)) {
+				return;
+			}
+		}
+	}
+
+	private static int compare(TypeTable.Cursor a, TypeTable.Cursor b) {
+		int comp = TypeTable.compare(a, b);
+		if (comp==0) {
+			comp = a.getPackage().compareTo(b.getPackage());
+		}
+		return comp;
+	}
+
+	@Override
+	public void getByCamelCase(String pattern, Requestor<ExternalType> requestor) {
+		Requestor<ExternalType> unique = unique(requestor);
+		for (CompactExternalTypeIndexer part : parts) {
+			part.getByCamelCase(pattern, unique);
+		}
+	}
+
+	@Override
+	public void getBySubstring(String substring, Requestor<ExternalType> requestor) {
+		Requestor<ExternalType> unique = unique(requestor);
+		for (CompactExternalTypeIndexer part : parts) {
+			part.getBySubstring(substring, unique);
+		}
+	}
+
+	/**
+	 * @return A requestor that passes on each type only once, and stops passing on types as soon
+	 *   as the given requestor doesn't want any more.
+	 */
+	private static Requestor<ExternalType> unique(final Requestor<ExternalType> requestor) {
+		return new Requestor<ExternalType>() {
+			private final Set<ExternalType> seen = new HashSet<ExternalType>();
+			private boolean wantsMore = true;
+			public boolean receive(ExternalType type) {
+				if (wantsMore && seen.add(type)) {
+					wantsMore = requestor.receive(type);
+				}
+				return wantsMore;
+			}
+		};
+	}
+
+	@Override
+	public ExternalTypeSource getSource(ExternalType type) {
+		for (CompactExternalTypeIndexer part : parts) {
+			ExternalTypeSource source = part.getSource(type);
+			if (source!=ExternalTypeSource.UNKNOWN) {
+				return source;
+			}
+		}
+		return ExternalTypeSource.UNKNOWN;
+	}
+
+	@Override
+	public void addFrom(ExternalTypeDiscovery ets) {
+		Assert.isLegal(false, "Composite index is read-only");
+	}
+
+}
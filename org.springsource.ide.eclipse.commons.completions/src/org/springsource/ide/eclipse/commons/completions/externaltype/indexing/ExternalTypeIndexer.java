@@ -57,6 +57,44 @@ public abstract class ExternalTypeIndexer {
 		});
 	}
 
+	/**
+	 * Find the types whose simple name matches a CamelCase pattern. E.g. 'RTemp' matches 'RestTemplate'.
+	 * Each hump of the pattern (starting with its first character or an upper case character) must be
+	 * a prefix of the corresponding hump of the name. Any name that starts with the pattern also matches.
+	 * The types are not delivered in any particular order.
+	 * <p>
+	 * Like {@link #getByPrefix(String, Requestor)}, the implementation here is only a 'specification'.
+	 */
+	public void getByCamelCase(final String pattern, final Requestor<ExternalType> requestor) {
+		getAll(new Requestor<ExternalType>() {
+			public boolean receive(ExternalType element) {
+				if (CamelCase.matches(pattern, element.getName())) {
+					return requestor.receive(element);
+				}
+				return true;
+			}
+		});
+	}
+
+	/**
+	 * Find the types whose simple name contains a substring, ignoring case. The types are not
+	 * delivered in any particular order.
+	 * <p>
+	 * Like {@link #getByPrefix(String, Requestor)}, the implementation here is only a 'specification'.
+	 */
+	public void getBySubstring(String substring, final Requestor<ExternalType> requestor) {
+		final String lowerCase = CamelCase.toLowerCase(substring);
+		getAll(new Requestor<ExternalType>() {
+			public boolean receive(ExternalType element) {
+				String name = element.getName();
+				if (CamelCase.containsIgnoreCase(name.toCharArray(), name.length(), lowerCase)) {
+					return requestor.receive(element);
+				}
+				return true;
+			}
+		});
+	}
+
 	/**
 	 * Find an ExternalTypeSource associated with the given type. If more than one source exists 
 	 * an arbitrary source is returned. If no source is found the {@link ExternalTypeSource}.UNKNOWN
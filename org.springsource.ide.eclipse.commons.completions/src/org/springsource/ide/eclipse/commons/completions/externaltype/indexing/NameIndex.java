@@ -0,0 +1,308 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Pivotal Software, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Pivotal Software, Inc. - initial API and implementation
+ *******************************************************************************/
+package org.springsource.ide.eclipse.commons.completions.externaltype.indexing;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+import org.springsource.ide.eclipse.commons.completions.externaltype.ExternalType;
+import org.springsource.ide.eclipse.commons.completions.util.Requestor;
+
+/**
+ * Secondary indexes over the simple names of a {@link TypeTable}, for CamelCase and substring
+ * queries (see {@link CamelCase}).
+ * <p>
+ * For CamelCase queries, the entries are sorted by the initials of their humps. The names matching
+ * a pattern are among the entries whose initials start with the initials of the pattern, which
+ * are found by binary search.
+ * <p>
+ * For substring queries, there is a posting list for every trigram (three consecutive characters,
+ * in lower case) that occurs in a name, listing the entries whose name contains it. The names
+ * containing a substring are among the entries in the intersection of the posting lists of
+ * the substring's trigrams.
+ * <p>
+ * Everything is stored in arrays of primitives. Building the index is linear in the size of the
+ * table, apart from sorting.
+ */
+final class NameIndex {
+
+	private final TypeTable table;
+
+	/**
+	 * Entries sorted by initials.
+	 */
+	private final int[] byInitials;
+
+	/**
+	 * The initials of entry e are in initials[initialsStart[e]..initialsStart[e+1]-1].
+	 */
+	private final char[] initials;
+	private final int[] initialsStart;
+
+	/**
+	 * Sorted codes of the trigrams that occur in names (see {@link #trigram(char, char, char)}). The sorted
+	 * entries whose name contains trigrams[k] are in postings[postingsStart[k]..postingsStart[k+1]-1].
+	 */
+	private final int[] trigrams;
+	private final int[] postingsStart;
+	private final int[] postings;
+
+	private final long memorySize;
+
+	NameIndex(TypeTable table) {
+		this.table = table;
+		int size = table.size;
+
+		//Initials, in the order of the entries.
+		initialsStart = new int[size+1];
+		char[] initials = new char[Math.max(16, 2*size)];
+		int pos = 0;
+		int occurrences = 0;
+		TypeTable.Cursor cursor = table.cursor();
+		for (int entry = 0; cursor.next(); entry++) {
+			initialsStart[entry] = pos;
+			for (int i = 0; i < cursor.length; i++) {
+				char c = cursor.name[i];
+				if (i==0 || Character.isUpperCase(c)) {
+					if (pos==initials.length) {
+						initials = Arrays.copyOf(initials, 2*pos);
+					}
+					initials[pos++] = c;
+				}
+			}
+			occurrences += Math.max(0, cursor.length-2);
+		}
+		initialsStart[size] = pos;
+		this.initials = Arrays.copyOf(initials, pos);
+		byInitials = sortByInitials(size);
+
+		//Trigrams: sorting all (trigram, entry) pairs puts the entries of each trigram together, in order.
+		long[] pairs = new long[occurrences];
+		int count = 0;
+		cursor = table.cursor();
+		for (int entry = 0; cursor.next(); entry++) {
+			for (int i = 0; i+3 <= cursor.length; i++) {
+				pairs[count++] = ((long) trigram(cursor.name, i) << 32) | entry;
+			}
+		}
+		Arrays.sort(pairs);
+		//A trigram occurring more than once in a name gives the same pair more than once.
+		int distinctPairs = 0;
+		int distinctTrigrams = 0;
+		for (int i = 0; i < count; i++) {
+			if (i==0 || pairs[i]!=pairs[i-1]) {
+				distinctPairs++;
+				if (i==0 || (pairs[i]>>>32)!=(pairs[i-1]>>>32)) {
+					distinctTrigrams++;
+				}
+			}
+		}
+		trigrams = new int[distinctTrigrams];
+		postingsStart = new int[distinctTrigrams+1];
+		postings = new int[distinctPairs];
+		int k = -1;
+		int p = 0;
+		for (int i = 0; i < count; i++) {
+			if (i>0 && pairs[i]==pairs[i-1]) {
+				continue;
+			}
+			int trigram = (int) (pairs[i]>>>32);
+			if (k<0 || trigrams[k]!=trigram) {
+				trigrams[++k] = trigram;
+				postingsStart[k] = p;
+			}
+			postings[p++] = (int) pairs[i];
+		}
+		postingsStart[distinctTrigrams] = p;
+
+		memorySize = 4L*byInitials.length + 2L*this.initials.length + 4L*initialsStart.length
+				+ 4L*trigrams.length + 4L*postingsStart.length + 4L*postings.length;
+	}
+
+	long getMemorySize() {
+		return memorySize;
+	}
+
+	/**
+	 * @return The entries, sorted by their initials. Entries with the same initials stay in table order.
+	 */
+	private int[] sortByInitials(int size) {
+		int[] order = new int[size];
+		for (int i = 0; i < size; i++) {
+			order[i] = i;
+		}
+		//Bottom-up merge sort, which is stable.
+		int[] merged = new int[size];
+		for (int width = 1; width < size; width *= 2) {
+			for (int lo = 0; lo < size; lo += 2*width) {
+				int mid = Math.min(lo+width, size);
+				int hi = Math.min(lo+2*width, size);
+				int a = lo;
+				int b = mid;
+				int m = lo;
+				while (a<mid && b<hi) {
+					merged[m++] = compareInitials(order[b], order[a])<0 ? order[b++] : order[a++];
+				}
+				while (a<mid) {
+					merged[m++] = order[a++];
+				}
+				while (b<hi) {
+					merged[m++] = order[b++];
+				}
+			}
+			int[] swap = order;
+			order = merged;
+			merged = swap;
+		}
+		return order;
+	}
+
+	/**
+	 * Compares the initials of two entries, in the same way as {@link String#compareTo(String)}.
+	 */
+	private int compareInitials(int a, int b) {
+		int startA = initialsStart[a];
+		int lengthA = initialsStart[a+1]-startA;
+		int startB = initialsStart[b];
+		int lengthB = initialsStart[b+1]-startB;
+		for (int i = 0; i < lengthA && i < lengthB; i++) {
+			char ca = initials[startA+i];
+			char cb = initials[startB+i];
+			if (ca!=cb) {
+				return ca-cb;
+			}
+		}
+		return lengthA-lengthB;
+	}
+
+	private static int trigram(char[] name, int start) {
+		return trigram(Character.toLowerCase(name[start]), Character.toLowerCase(name[start+1]), Character.toLowerCase(name[start+2]));
+	}
+
+	/**
+	 * @return A code for a trigram. Trigrams of characters below 1024 get codes of their own. Others may
+	 *   share a code, which only makes their posting lists longer: the names found through a posting
+	 *   list are always checked.
+	 */
+	private static int trigram(char a, char b, char c) {
+		if (a<1024 && b<1024 && c<1024) {
+			return (a << 20) | (b << 10) | c;
+		}
+		return (1 << 30) | (((a*31 + b)*31 + c) & ((1 << 30) - 1));
+	}
+
+	/**
+	 * Deliver the types matching a CamelCase pattern, in no particular order.
+	 */
+	void getByCamelCase(String pattern, Requestor<ExternalType> requestor) {
+		String patternInitials = CamelCase.initials(pattern);
+		int lo = 0;
+		int hi = byInitials.length;
+		while (lo<hi) {
+			int mid = (lo+hi) >>> 1;
+			if (compareInitials(mid, patternInitials)<0) {
+				lo = mid+1;
+			} else {
+				hi = mid;
+			}
+		}
+		TypeTable.Cursor cursor = table.cursor();
+		for (int i = lo; i < byInitials.length && initialsStartWith(i, patternInitials); i++) {
+			cursor.moveTo(byInitials[i]);
+			if (CamelCase.matches(pattern, cursor.name, cursor.length) && !requestor.receive(cursor.getType())) {
+				return;
+			}
+		}
+	}
+
+	private int compareInitials(int i, String other) {
+		int entry = byInitials[i];
+		int start = initialsStart[entry];
+		return TypeTable.compare(initials, start, initialsStart[entry+1]-start, other);
+	}
+
+	private boolean initialsStartWith(int i, String prefix) {
+		int entry = byInitials[i];
+		int start = initialsStart[entry];
+		if (initialsStart[entry+1]-start<prefix.length()) {
+			return false;
+		}
+		for (int j = 0; j < prefix.length(); j++) {
+			if (initials[start+j]!=prefix.charAt(j)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Deliver the types whose name contains a substring, ignoring case, in sorted order.
+	 */
+	void getBySubstring(String substring, Requestor<ExternalType> requestor) {
+		String lowerCase = CamelCase.toLowerCase(substring);
+		TypeTable.Cursor cursor = table.cursor();
+		if (lowerCase.length()<3) {
+			//Too short to use the trigrams.
+			while (cursor.next()) {
+				if (CamelCase.containsIgnoreCase(cursor.name, cursor.length, lowerCase) && !requestor.receive(cursor.getType())) {
+					return;
+				}
+			}
+			return;
+		}
+		//The posting list of each trigram, as {start, end} in 'postings'.
+		int[][] lists = new int[lowerCase.length()-2][];
+		for (int i = 0; i < lists.length; i++) {
+			int k = Arrays.binarySearch(trigrams, trigram(lowerCase.charAt(i), lowerCase.charAt(i+1), lowerCase.charAt(i+2)));
+			if (k<0) {
+				return;
+			}
+			lists[i] = new int[] { postingsStart[k], postingsStart[k+1] };
+		}
+		Arrays.sort(lists, new Comparator<int[]>() {
+			public int compare(int[] a, int[] b) {
+				return (a[1]-a[0]) - (b[1]-b[0]);
+			}
+		});
+		int[] candidates = Arrays.copyOfRange(postings, lists[0][0], lists[0][1]);
+		int count = candidates.length;
+		for (int l = 1; l < lists.length && count>0; l++) {
+			count = intersect(candidates, count, postings, lists[l][0], lists[l][1]);
+		}
+		for (int i = 0; i < count; i++) {
+			cursor.moveTo(candidates[i]);
+			if (CamelCase.containsIgnoreCase(cursor.name, cursor.length, lowerCase) && !requestor.receive(cursor.getType())) {
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Intersect the sorted list in candidates[0..count-1] with the sorted list in list[start..end-1], in place.
+	 *
+	 * @return The number of candidates left.
+	 */
+	private static int intersect(int[] candidates, int count, int[] list, int start, int end) {
+		int kept = 0;
+		int j = start;
+		for (int i = 0; i < count && j < end; i++) {
+			int c = candidates[i];
+			while (j<end && list[j]<c) {
+				j++;
+			}
+			if (j<end && list[j]==c) {
+				candidates[kept++] = c;
+			}
+		}
+		return kept;
+	}
+
+}
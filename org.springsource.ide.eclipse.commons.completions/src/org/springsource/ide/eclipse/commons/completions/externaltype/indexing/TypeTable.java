@@ -0,0 +1,427 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Pivotal Software, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Pivotal Software, Inc. - initial API and implementation
+ *******************************************************************************/
+package org.springsource.ide.eclipse.commons.completions.externaltype.indexing;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import org.springsource.ide.eclipse.commons.completions.externaltype.ExternalType;
+import org.springsource.ide.eclipse.commons.completions.externaltype.ExternalTypeSource;
+
+/**
+ * Immutable, sorted table of external types used by {@link CompactExternalTypeIndexer}.
+ * <p>
+ * Entries are sorted like {@link ExternalType}s, by simple name and then by package name.
+ * The simple names are front coded: entries are grouped in blocks of BLOCK_SIZE, and each
+ * name except the first one in a block is stored as the length of the prefix it shares with
+ * the previous name, followed by the rest of the name. Packages and sources are stored
+ * as indexes into tables shared by all entries, so each package name is stored only once.
+ * <p>
+ * Since the table is immutable it can be read by any number of threads without locking.
+ */
+final class TypeTable {
+
+	static final int BLOCK_SIZE = 16;
+
+	static final TypeTable EMPTY = new Builder(0, new String[0], new ExternalTypeSource[0]).build();
+
+	final int size;
+
+	/**
+	 * Encoded names. Each entry is encoded as: shared prefix length, suffix length, suffix chars.
+	 */
+	private final char[] names;
+
+	/**
+	 * Position in 'names' of the first entry of each block.
+	 */
+	private final int[] blockStart;
+
+	private final int[] packageIds;
+	private final int[] sourceIds;
+
+	final String[] packages;
+	final ExternalTypeSource[] sources;
+
+	private final long memorySize;
+
+	/**
+	 * Created by {@link #buildNameIndex()}.
+	 */
+	private volatile NameIndex nameIndex = null;
+
+	private TypeTable(int size, char[] names, int[] blockStart, int[] packageIds, int[] sourceIds, String[] packages, ExternalTypeSource[] sources) {
+		this.size = size;
+		this.names = names;
+		this.blockStart = blockStart;
+		this.packageIds = packageIds;
+		this.sourceIds = sourceIds;
+		this.packages = packages;
+		this.sources = sources;
+		long bytes = 2L*names.length + 4L*blockStart.length + 4L*packageIds.length + 4L*sourceIds.length;
+		for (String pkg : packages) {
+			bytes += 40 + 2*pkg.length();
+		}
+		this.memorySize = bytes;
+	}
+
+	Cursor cursor() {
+		return new Cursor();
+	}
+
+	/**
+	 * @return Approximate number of bytes of memory used by the table.
+	 */
+	long getMemorySize() {
+		NameIndex nameIndex = this.nameIndex;
+		return nameIndex==null ? memorySize : memorySize + nameIndex.getMemorySize();
+	}
+
+	/**
+	 * @return The index for CamelCase and substring queries on this table, or null if it wasn't built.
+	 */
+	NameIndex getNameIndex() {
+		return nameIndex;
+	}
+
+	/**
+	 * Build the index for CamelCase and substring queries on this table, unless it was built already.
+	 */
+	NameIndex buildNameIndex() {
+		NameIndex nameIndex = this.nameIndex;
+		if (nameIndex==null) {
+			synchronized (this) {
+				nameIndex = this.nameIndex;
+				if (nameIndex==null) {
+					this.nameIndex = nameIndex = new NameIndex(this);
+				}
+			}
+		}
+		return nameIndex;
+	}
+
+	/**
+	 * Write the table to a stream. Only tables in which all entries have the same source can be
+	 * written. The source itself isn't written, it must be provided when the table is read back.
+	 */
+	void write(DataOutputStream out) throws IOException {
+		if (sources.length>1) {
+			throw new IllegalStateException("Can't write a table with more than one source");
+		}
+		out.writeInt(size);
+		out.writeInt(packages.length);
+		for (String pkg : packages) {
+			out.writeInt(pkg.length());
+			out.writeChars(pkg);
+		}
+		out.writeInt(names.length);
+		for (char c : names) {
+			out.writeChar(c);
+		}
+		out.writeInt(blockStart.length);
+		for (int start : blockStart) {
+			out.writeInt(start);
+		}
+		for (int i = 0; i < size; i++) {
+			out.writeInt(packageIds[i]);
+		}
+	}
+
+	/**
+	 * Read a table written with {@link #write(DataOutputStream)}.
+	 *
+	 * @param maxLength The table is no longer than this many bytes. Lengths read from a corrupt
+	 *    stream are checked against this, rather than allocating huge arrays.
+	 * @param source The source of all entries in the table.
+	 */
+	static TypeTable read(DataInputStream in, long maxLength, ExternalTypeSource source) throws IOException {
+		int size = checkLength(in.readInt(), 4, maxLength);
+		String[] packages = new String[checkLength(in.readInt(), 2, maxLength)];
+		for (int i = 0; i < packages.length; i++) {
+			packages[i] = new String(readChars(in, in.readInt(), maxLength));
+		}
+		char[] names = readChars(in, in.readInt(), maxLength);
+		int[] blockStart = readInts(in, in.readInt(), maxLength);
+		int[] packageIds = readInts(in, size, maxLength);
+		if (blockStart.length!=(size+BLOCK_SIZE-1)/BLOCK_SIZE) {
+			throw new IOException("Corrupt type table");
+		}
+		for (int id : packageIds) {
+			if (id<0 || id>=packages.length) {
+				throw new IOException("Corrupt type table");
+			}
+		}
+		return new TypeTable(size, names, blockStart, packageIds, new int[size], packages, new ExternalTypeSource[] { source });
+	}
+
+	private static int checkLength(int length, int elementSize, long maxLength) throws IOException {
+		if (length<0 || (long)length*elementSize>maxLength) {
+			throw new IOException("Corrupt type table");
+		}
+		return length;
+	}
+
+	private static char[] readChars(DataInputStream in, int length, long maxLength) throws IOException {
+		byte[] bytes = new byte[2*checkLength(length, 2, maxLength)];
+		in.readFully(bytes);
+		char[] chars = new char[length];
+		ByteBuffer.wrap(bytes).asCharBuffer().get(chars);
+		return chars;
+	}
+
+	private static int[] readInts(DataInputStream in, int length, long maxLength) throws IOException {
+		byte[] bytes = new byte[4*checkLength(length, 4, maxLength)];
+		in.readFully(bytes);
+		int[] ints = new int[length];
+		ByteBuffer.wrap(bytes).asIntBuffer().get(ints);
+		return ints;
+	}
+
+	/**
+	 * Compares chars in a buffer to a String, in the same way as {@link String#compareTo(String)}.
+	 */
+	static int compare(char[] buf, int offset, int length, String other) {
+		int len = Math.min(length, other.length());
+		for (int i = 0; i < len; i++) {
+			int diff = buf[offset+i] - other.charAt(i);
+			if (diff!=0) {
+				return diff;
+			}
+		}
+		return length - other.length();
+	}
+
+	/**
+	 * Compares the names of the current entries of two cursors, in the same way as {@link String#compareTo(String)}.
+	 */
+	static int compare(Cursor a, Cursor b) {
+		int len = Math.min(a.length, b.length);
+		for (int i = 0; i < len; i++) {
+			int diff = a.name[i] - b.name[i];
+			if (diff!=0) {
+				return diff;
+			}
+		}
+		return a.length - b.length;
+	}
+
+	/**
+	 * Decodes entries of the table one by one, in order.
+	 */
+	final class Cursor {
+
+		/**
+		 * Index of the current entry, or -1 before the first call to {@link #next()}.
+		 */
+		private int entry = -1;
+
+		/**
+		 * Position in 'names' of the entry following the current one.
+		 */
+		private int pos = 0;
+
+		/**
+		 * Simple name of the current entry is stored in name[0..length-1].
+		 */
+		char[] name = new char[64];
+		int length = 0;
+
+		/**
+		 * Move to the next entry.
+		 *
+		 * @return false if there are no more entries.
+		 */
+		boolean next() {
+			if (entry+1>=size) {
+				return false;
+			}
+			int shared = names[pos];
+			int suffix = names[pos+1];
+			if (shared+suffix>name.length) {
+				name = Arrays.copyOf(name, Math.max(name.length*2, shared+suffix));
+			}
+			System.arraycopy(names, pos+2, name, shared, suffix);
+			length = shared+suffix;
+			pos += 2+suffix;
+			entry++;
+			return true;
+		}
+
+		/**
+		 * Move to the entry with the given index.
+		 */
+		void moveTo(int target) {
+			if (entry<0 || target<entry || target/BLOCK_SIZE!=entry/BLOCK_SIZE) {
+				int block = target/BLOCK_SIZE;
+				entry = block*BLOCK_SIZE - 1;
+				pos = blockStart[block];
+			}
+			while (entry<target && next()) {
+				//keep going
+			}
+		}
+
+		/**
+		 * Move to the first entry with a simple name that is greater than or equal to the given name.
+		 *
+		 * @return false if there is no such entry.
+		 */
+		boolean seek(String target) {
+			int block = 0;
+			int lo = 0;
+			int hi = blockStart.length-1;
+			while (lo<=hi) {
+				int mid = (lo+hi) >>> 1;
+				int start = blockStart[mid];
+				if (compare(names, start+2, names[start+1], target)<0) {
+					block = mid;
+					lo = mid+1;
+				} else {
+					hi = mid-1;
+				}
+			}
+			entry = block*BLOCK_SIZE - 1;
+			pos = block<blockStart.length ? blockStart[block] : 0;
+			while (next()) {
+				if (compare(name, 0, length, target)>=0) {
+					return true;
+				}
+			}
+			return false;
+		}
+
+		boolean startsWith(String prefix) {
+			int len = prefix.length();
+			if (length<len) {
+				return false;
+			}
+			for (int i = 0; i < len; i++) {
+				if (name[i]!=prefix.charAt(i)) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		boolean nameEquals(String other) {
+			return length==other.length() && startsWith(other);
+		}
+
+		String getName() {
+			return new String(name, 0, length);
+		}
+
+		int getPackageId() {
+			return packageIds[entry];
+		}
+
+		String getPackage() {
+			return packages[packageIds[entry]];
+		}
+
+		int getSourceId() {
+			return sourceIds[entry];
+		}
+
+		ExternalTypeSource getSource() {
+			return sources[sourceIds[entry]];
+		}
+
+		ExternalType getType() {
+			return new ExternalType(getName(), getPackage());
+		}
+	}
+
+	/**
+	 * Builds a table from entries added in sorted order.
+	 */
+	static final class Builder {
+
+		private final String[] packages;
+		private final ExternalTypeSource[] sources;
+
+		private int size = 0;
+		private char[] names;
+		private int namesLength = 0;
+		private int[] blockStart;
+		private int[] packageIds;
+		private int[] sourceIds;
+
+		private char[] previous = new char[64];
+		private int previousLength = 0;
+
+		/**
+		 * @param packages Package names referred to by the package ids of the entries.
+		 * @param sources Sources referred to by the source ids of the entries.
+		 */
+		Builder(int expectedSize, String[] packages, ExternalTypeSource[] sources) {
+			int capacity = Math.max(expectedSize, 1);
+			this.packages = packages;
+			this.sources = sources;
+			this.names = new char[capacity*8];
+			this.blockStart = new int[capacity/BLOCK_SIZE+1];
+			this.packageIds = new int[capacity];
+			this.sourceIds = new int[capacity];
+		}
+
+		void add(char[] name, int length, int packageId, int sourceId) {
+			if (size==packageIds.length) {
+				packageIds = Arrays.copyOf(packageIds, size*2);
+				sourceIds = Arrays.copyOf(sourceIds, size*2);
+			}
+			int shared = 0;
+			if (size%BLOCK_SIZE==0) {
+				int block = size/BLOCK_SIZE;
+				if (block==blockStart.length) {
+					blockStart = Arrays.copyOf(blockStart, block*2);
+				}
+				blockStart[block] = namesLength;
+			} else {
+				int max = Math.min(length, previousLength);
+				while (shared<max && name[shared]==previous[shared]) {
+					shared++;
+				}
+			}
+			int suffix = length-shared;
+			if (namesLength+2+suffix>names.length) {
+				names = Arrays.copyOf(names, Math.max(names.length*2, namesLength+2+suffix));
+			}
+			names[namesLength++] = (char) shared;
+			names[namesLength++] = (char) suffix;
+			System.arraycopy(name, shared, names, namesLength, suffix);
+			namesLength += suffix;
+			packageIds[size] = packageId;
+			sourceIds[size] = sourceId;
+			size++;
+
+			if (length>previous.length) {
+				previous = Arrays.copyOf(previous, Math.max(previous.length*2, length));
+			}
+			System.arraycopy(name, 0, previous, 0, length);
+			previousLength = length;
+		}
+
+		TypeTable build() {
+			int blocks = (size+BLOCK_SIZE-1)/BLOCK_SIZE;
+			return new TypeTable(size,
+					Arrays.copyOf(names, namesLength),
+					Arrays.copyOf(blockStart, blocks),
+					Arrays.copyOf(packageIds, size),
+					Arrays.copyOf(sourceIds, size),
+					packages, sources
+			);
+		}
+	}
+
+}
@@ -0,0 +1,175 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Pivotal Software, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Pivotal Software, Inc. - initial API and implementation
+ *******************************************************************************/
+package org.springsource.ide.eclipse.commons.completions.externaltype.indexing;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import org.springsource.ide.eclipse.commons.completions.CompletionsActivator;
+import org.springsource.ide.eclipse.commons.completions.externaltype.ExternalTypeSource;
+
+/**
+ * Keeps the {@link TypeTable}s of jar files on disk, so that jars don't have to be scanned
+ * again after a restart.
+ * <p>
+ * There is one file per jar. Besides the table it contains the path, size and modification time
+ * the jar had when it was scanned. A stored table is only used if the jar still has the same
+ * size and modification time. Files of jars that no longer exist are deleted by {@link #prune()}.
+ */
+class TypeTableStore {
+
+	private static final int MAGIC = 0x4A545950; // "JTYP"
+	private static final int VERSION = 1;
+	private static final String EXTENSION = ".types";
+
+	private final File directory;
+
+	TypeTableStore(File directory) {
+		this.directory = directory;
+	}
+
+	/**
+	 * Read the stored table for a jar.
+	 *
+	 * @param source The source of all types in the jar.
+	 * @return The table, or null if there is no up-to-date table for the jar.
+	 */
+	TypeTable load(File jar, ExternalTypeSource source) {
+		File file = fileFor(jar);
+		if (!file.isFile()) {
+			return null;
+		}
+		//Note: the file is read rather than mapped. A mapping keeps the file open until it is garbage
+		// collected, and on Windows an open file can't be replaced or deleted.
+		DataInputStream in = null;
+		try {
+			long maxLength = file.length();
+			in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+			String path = readPath(in, maxLength);
+			if (path==null || !path.equals(jar.getAbsolutePath()) || in.readLong()!=jar.length() || in.readLong()!=jar.lastModified()) {
+				return null;
+			}
+			return TypeTable.read(in, maxLength, source);
+		} catch (Exception e) {
+			//Unreadable or corrupt. The jar will be scanned again and the file overwritten.
+			return null;
+		} finally {
+			close(in);
+		}
+	}
+
+	/**
+	 * Delete the stored tables of jars that no longer exist, and stored tables that can't be read.
+	 */
+	void prune() {
+		File[] files = directory.listFiles();
+		if (files==null) {
+			return;
+		}
+		for (File file : files) {
+			if (file.getName().endsWith(EXTENSION)) {
+				String path = null;
+				DataInputStream in = null;
+				try {
+					in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+					path = readPath(in, file.length());
+				} catch (IOException e) {
+					//Unreadable, so useless.
+				} finally {
+					close(in);
+				}
+				if (path==null || !new File(path).isFile()) {
+					file.delete();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Read the start of a stored table, up to the path of the jar.
+	 *
+	 * @return The path, or null if the stream doesn't contain a stored table of this version.
+	 */
+	private static String readPath(DataInputStream in, long maxLength) throws IOException {
+		if (in.readInt()!=MAGIC || in.readInt()!=VERSION) {
+			return null;
+		}
+		int length = in.readInt();
+		if (length<0 || 2L*length>maxLength) {
+			return null;
+		}
+		char[] path = new char[length];
+		for (int i = 0; i < path.length; i++) {
+			path[i] = in.readChar();
+		}
+		return new String(path);
+	}
+
+	private static void close(DataInputStream in) {
+		if (in!=null) {
+			try {
+				in.close();
+			} catch (IOException e) {
+				//ignore
+			}
+		}
+	}
+
+	/**
+	 * Store the table for a jar.
+	 *
+	 * @param length Size of the jar before it was scanned.
+	 * @param lastModified Modification time of the jar before it was scanned.
+	 */
+	void save(File jar, long length, long lastModified, TypeTable table) {
+		File tmp = null;
+		try {
+			directory.mkdirs();
+			tmp = File.createTempFile("types", ".tmp", directory);
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+			try {
+				String path = jar.getAbsolutePath();
+				out.writeInt(MAGIC);
+				out.writeInt(VERSION);
+				out.writeInt(path.length());
+				out.writeChars(path);
+				out.writeLong(length);
+				out.writeLong(lastModified);
+				table.write(out);
+			} finally {
+				out.close();
+			}
+			File file = fileFor(jar);
+			file.delete();
+			if (tmp.renameTo(file)) {
+				tmp = null;
+			}
+		} catch (IOException e) {
+			CompletionsActivator.log(e);
+		} finally {
+			if (tmp!=null) {
+				tmp.delete();
+			}
+		}
+	}
+
+	private File fileFor(File jar) {
+		String path = jar.getAbsolutePath();
+		return new File(directory, jar.getName()+"-"+Integer.toHexString(path.hashCode())+EXTENSION);
+	}
+
+}
@@ -323,7 +323,7 @@ public class ContentManager {
 		try {
 
 			URI uri = new URI(location);
-			InputStream in = HttpUtil.stream(uri, monitor);
+			InputStream in = HttpUtil.streamCached(uri, monitor);
 
 			try {
 				reader.read(in);
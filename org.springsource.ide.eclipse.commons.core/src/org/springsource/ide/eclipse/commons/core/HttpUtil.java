@@ -32,6 +32,7 @@ import org.eclipse.core.runtime.SubMonitor;
 import org.eclipse.osgi.util.NLS;
 import org.springsource.ide.eclipse.commons.core.util.IOUtil;
 import org.springsource.ide.eclipse.commons.internal.core.CorePlugin;
+import org.springsource.ide.eclipse.commons.internal.core.net.HttpCache;
 import org.springsource.ide.eclipse.commons.internal.core.net.HttpClientTransportService;
 import org.springsource.ide.eclipse.commons.internal.core.net.ITransportService;
 import org.springsource.ide.eclipse.commons.internal.core.net.P2TransportService;
@@ -44,6 +45,8 @@ public class HttpUtil {
 
 	private static ITransportService transport;
 
+	private static HttpCache cache;
+
 	public static IStatus download(String url, File archiveFile, File targetDirectory, IProgressMonitor monitor) {
 		return download(url, archiveFile, targetDirectory, null, monitor);
 	}
@@ -165,6 +168,34 @@ public class HttpUtil {
 		return getTransport().stream(uri, monitor);
 	}
 
+	/**
+	 * Like {@link #stream(URI, IProgressMonitor)}, but keeps a copy of the content, and next time only
+	 * fetches the content again if it changed on the server. Meant for small resources that are read
+	 * often, like descriptors and properties.
+	 * <p>
+	 * This uses the same transport as {@link #stream(URI, IProgressMonitor)}, so that proxy and
+	 * authentication settings apply in the same way. The P2 transport can't make conditional requests,
+	 * it compares the modification date of the resource with that of the copy instead.
+	 */
+	public static InputStream streamCached(URI uri, IProgressMonitor monitor) throws CoreException {
+		HttpCache httpCache = getCache();
+		if (httpCache == null || "file".equals(uri.getScheme())) {
+			return stream(uri, monitor);
+		}
+		return getTransport().stream(uri, httpCache, monitor);
+	}
+
+	/**
+	 * @return The cache used by {@link #streamCached(URI, IProgressMonitor)}, or null if the platform
+	 *    isn't running.
+	 */
+	public static synchronized HttpCache getCache() {
+		if (cache == null && CorePlugin.getDefault() != null) {
+			cache = new HttpCache(CorePlugin.getDefault().getStateLocation().append("httpCache").toFile());
+		}
+		return cache;
+	}
+
 	public static void ping(URI uri) throws MalformedURLException, IOException, CoreException {
 		URLConnection connection = uri.toURL().openConnection();
 		connection.setConnectTimeout(500);
@@ -33,6 +33,7 @@ import org.osgi.framework.Bundle;
 import org.osgi.framework.Version;
 import org.springsource.ide.eclipse.commons.core.HttpUtil;
 import org.springsource.ide.eclipse.commons.internal.core.CorePlugin;
+import org.springsource.ide.eclipse.commons.internal.core.net.HttpCache;
 import org.springsource.ide.eclipse.commons.internal.core.net.HttpClientTransportService;
 
 /**
@@ -194,7 +195,11 @@ public class StsProperties {
 
 	private InputStream uriStream(URI uri, IProgressMonitor mon) throws CoreException, MalformedURLException, IOException {
 		if (isHangingBug()) {
-			return new HttpClientTransportService().stream(uri, mon);
+			HttpCache cache = HttpUtil.getCache();
+			if (cache==null) {
+				return new HttpClientTransportService().stream(uri, mon);
+			}
+			return new HttpClientTransportService().stream(uri, cache, mon);
 //			//Bug: using HttpUtil causes a hang. So instead we use a simple URLConnection here. This doesn't
 //			// provide the same level of completeness (i.e. proxy authentication is not supported yet)
 //			//But at least it doesn't hang.
@@ -203,7 +208,7 @@ public class StsProperties {
 //			return conn.getInputStream();
 
 		} else {
-			return HttpUtil.stream(uri, mon);
+			return HttpUtil.streamCached(uri, mon);
 		}
 	}
 
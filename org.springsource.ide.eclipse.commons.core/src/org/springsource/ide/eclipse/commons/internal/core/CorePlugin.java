@@ -22,6 +22,7 @@ import org.eclipse.core.runtime.preferences.InstanceScope;
 import org.osgi.framework.BundleContext;
 import org.osgi.framework.ServiceReference;
 import org.osgi.service.prefs.Preferences;
+import org.springsource.ide.eclipse.commons.internal.core.net.HttpConnectionPool;
 
 /**
  * @author Steffen Pingel
@@ -89,6 +90,7 @@ public class CorePlugin extends Plugin {
 
 	@Override
 	public void stop(BundleContext context) throws Exception {
+		HttpConnectionPool.disposeDefault();
 		plugin = null;
 		super.stop(context);
 		savePluginPreferences();
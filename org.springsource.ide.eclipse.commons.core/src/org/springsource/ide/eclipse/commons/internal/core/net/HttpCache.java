@@ -0,0 +1,185 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Pivotal Software, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Pivotal Software, Inc. - initial API and implementation
+ *******************************************************************************/
+package org.springsource.ide.eclipse.commons.internal.core.net;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Properties;
+
+/**
+ * Keeps copies of web resources, together with the HTTP validators ('ETag' and
+ * 'Last-Modified' headers) they were fetched with. A transport can use the validators
+ * to ask the server for the content only if it changed (a 'conditional GET'), and use the
+ * copy if the server answers '304 Not Modified'.
+ * <p>
+ * Each resource is stored as two files in the cache directory: its content, and a
+ * properties file with its validators.
+ * @see ITransportService#stream(URI, HttpCache, org.eclipse.core.runtime.IProgressMonitor)
+ */
+public class HttpCache {
+
+	private static final String ETAG = "etag";
+	private static final String LAST_MODIFIED = "lastModified";
+
+	private final File directory;
+
+	public HttpCache(File directory) {
+		this.directory = directory;
+	}
+
+	/**
+	 * Validators of a cached resource.
+	 */
+	public static class Entry {
+		private final String etag;
+		private final String lastModified;
+
+		private Entry(String etag, String lastModified) {
+			this.etag = etag;
+			this.lastModified = lastModified;
+		}
+
+		/**
+		 * @return The ETag to send as 'If-None-Match', or null.
+		 */
+		public String getETag() {
+			return etag;
+		}
+
+		/**
+		 * @return The date to send as 'If-Modified-Since', or null.
+		 */
+		public String getLastModified() {
+			return lastModified;
+		}
+	}
+
+	/**
+	 * @return The validators of the cached copy of a resource, or null if there is no copy, or
+	 *   there are no validators for it.
+	 */
+	public synchronized Entry get(URI uri) {
+		String key = key(uri);
+		File props = new File(directory, key+".properties");
+		if (!props.isFile() || !new File(directory, key+".content").isFile()) {
+			return null;
+		}
+		try {
+			Properties p = new Properties();
+			InputStream in = new FileInputStream(props);
+			try {
+				p.load(in);
+			} finally {
+				in.close();
+			}
+			String etag = p.getProperty(ETAG);
+			String lastModified = p.getProperty(LAST_MODIFIED);
+			if (etag==null && lastModified==null) {
+				return null;
+			}
+			return new Entry(etag, lastModified);
+		} catch (IOException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * @return The content of the cached copy of a resource, or null if there is none.
+	 *   The caller must close the stream.
+	 */
+	public synchronized InputStream open(URI uri) {
+		try {
+			return new FileInputStream(new File(directory, key(uri)+".content"));
+		} catch (IOException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Store a copy of a resource, replacing any earlier copy.
+	 *
+	 * @param content The content. It is read up to the end, but not closed.
+	 * @param etag Value of the 'ETag' header the content came with, or null.
+	 * @param lastModified Value of the 'Last-Modified' header the content came with, or null.
+	 * @return The content of the copy. The caller must close the stream.
+	 */
+	public InputStream put(URI uri, InputStream content, String etag, String lastModified) throws IOException {
+		directory.mkdirs();
+		String key = key(uri);
+		File tmp = File.createTempFile(key, ".tmp", directory);
+		try {
+			OutputStream out = new BufferedOutputStream(new FileOutputStream(tmp));
+			try {
+				byte[] buf = new byte[4 * 1024];
+				int len;
+				while ((len = content.read(buf)) != -1) {
+					out.write(buf, 0, len);
+				}
+			} finally {
+				out.close();
+			}
+			Properties p = new Properties();
+			p.setProperty("uri", uri.toString());
+			if (etag!=null && !etag.startsWith("W/")) {
+				p.setProperty(ETAG, etag);
+			}
+			if (lastModified!=null) {
+				p.setProperty(LAST_MODIFIED, lastModified);
+			}
+			synchronized (this) {
+				File contentFile = new File(directory, key+".content");
+				File props = new File(directory, key+".properties");
+				//Delete the validators first, so that they can never end up with the wrong content.
+				props.delete();
+				contentFile.delete();
+				if (!tmp.renameTo(contentFile)) {
+					throw new IOException("Error while renaming " + tmp + " to " + contentFile);
+				}
+				OutputStream propsOut = new FileOutputStream(props);
+				try {
+					p.store(propsOut, null);
+				} finally {
+					propsOut.close();
+				}
+				return new FileInputStream(contentFile);
+			}
+		} finally {
+			tmp.delete();
+		}
+	}
+
+	private static String key(URI uri) {
+		try {
+			byte[] digest = MessageDigest.getInstance("sha1").digest(uri.toString().getBytes("UTF-8"));
+			StringBuilder key = new StringBuilder();
+			for (byte b : digest) {
+				key.append(Character.forDigit((b >> 4) & 0xF, 16));
+				key.append(Character.forDigit(b & 0xF, 16));
+			}
+			return key.toString();
+		} catch (NoSuchAlgorithmException e) {
+			//This should not be possible
+			throw new Error(e);
+		} catch (IOException e) {
+			//UTF-8 is always supported
+			throw new Error(e);
+		}
+	}
+
+}
@@ -16,8 +16,6 @@ import java.io.InputStream;
 import java.io.OutputStream;
 
 import org.apache.commons.httpclient.Header;
-import org.apache.commons.httpclient.HostConfiguration;
-import org.apache.commons.httpclient.HttpClient;
 import org.apache.commons.httpclient.HttpStatus;
 import org.apache.commons.httpclient.methods.GetMethod;
 import org.apache.commons.httpclient.methods.HeadMethod;
@@ -34,7 +32,8 @@ import org.eclipse.osgi.util.NLS;
 import org.springsource.ide.eclipse.commons.internal.core.CorePlugin;
 
 /**
- * A utility for accessing web resources.
+ * A utility for accessing web resources. Connections are shared through the
+ * {@link HttpConnectionPool}.
  * @author Steffen Pingel
  */
 public class HttpClientTransportService implements ITransportService {
@@ -57,14 +56,9 @@ public class HttpClientTransportService implements ITransportService {
 		SubMonitor monitor = SubMonitor.convert(progressMonitor);
 		monitor.subTask(NLS.bind("Fetching {0}", location.getUrl()));
 		try {
-			HttpClient client = new HttpClient();
-			org.eclipse.mylyn.commons.net.WebUtil.configureHttpClient(client, ""); //$NON-NLS-1$
-
 			GetMethod method = new GetMethod(location.getUrl());
 			try {
-				HostConfiguration hostConfiguration = org.eclipse.mylyn.commons.net.WebUtil.createHostConfiguration(
-						client, location, monitor);
-				int result = org.eclipse.mylyn.commons.net.WebUtil.execute(client, hostConfiguration, method, monitor);
+				int result = HttpConnectionPool.getDefault().execute(location, method, monitor);
 				if (result == HttpStatus.SC_OK) {
 					long total = method.getResponseContentLength();
 					if (total != -1) {
@@ -137,14 +131,9 @@ public class HttpClientTransportService implements ITransportService {
 		SubMonitor monitor = SubMonitor.convert(progressMonitor);
 		monitor.subTask(NLS.bind("Fetching {0}", location.getUrl()));
 		try {
-			HttpClient client = new HttpClient();
-			org.eclipse.mylyn.commons.net.WebUtil.configureHttpClient(client, ""); //$NON-NLS-1$
-
 			HeadMethod method = new HeadMethod(location.getUrl());
 			try {
-				HostConfiguration hostConfiguration = org.eclipse.mylyn.commons.net.WebUtil.createHostConfiguration(
-						client, location, monitor);
-				int result = org.eclipse.mylyn.commons.net.WebUtil.execute(client, hostConfiguration, method, monitor);
+				int result = HttpConnectionPool.getDefault().execute(location, method, monitor);
 				if (result == HttpStatus.SC_OK) {
 					Header lastModified = method.getResponseHeader("Last-Modified"); //$NON-NLS-1$
 					if (lastModified != null) {
@@ -187,15 +176,10 @@ public class HttpClientTransportService implements ITransportService {
 		SubMonitor monitor = SubMonitor.convert(progressMonitor);
 		monitor.subTask(NLS.bind("Fetching {0}", location.getUrl()));
 		try {
-			HttpClient client = new HttpClient();
-			org.eclipse.mylyn.commons.net.WebUtil.configureHttpClient(client, ""); //$NON-NLS-1$
-
 			boolean success = false;
 			GetMethod method = new GetMethod(location.getUrl());
 			try {
-				HostConfiguration hostConfiguration = org.eclipse.mylyn.commons.net.WebUtil.createHostConfiguration(
-						client, location, monitor);
-				int result = org.eclipse.mylyn.commons.net.WebUtil.execute(client, hostConfiguration, method, monitor);
+				int result = HttpConnectionPool.getDefault().execute(location, method, monitor);
 				if (result == HttpStatus.SC_OK) {
 					InputStream in = org.eclipse.mylyn.commons.net.WebUtil.getResponseBodyAsStream(method, monitor);
 					success = true;
@@ -219,6 +203,68 @@ public class HttpClientTransportService implements ITransportService {
 		}
 	}
 
+	/**
+	 * Read a web-based resource, using a conditional GET to revalidate the copy
+	 * of it kept in a cache, if there is one.
+	 * 
+	 * @param uri the web location of the content
+	 * @param cache keeps copies of resources and their validators
+	 * @param progressMonitor the monitor
+	 * @return the content, from the server or from the cache
+	 */
+	public InputStream stream(java.net.URI uri, HttpCache cache, IProgressMonitor progressMonitor) throws CoreException {
+		WebLocation location = new WebLocation(uri.toString());
+		SubMonitor monitor = SubMonitor.convert(progressMonitor);
+		monitor.subTask(NLS.bind("Fetching {0}", location.getUrl()));
+		try {
+			GetMethod method = new GetMethod(location.getUrl());
+			HttpCache.Entry cached = cache.get(uri);
+			if (cached != null) {
+				if (cached.getETag() != null) {
+					method.setRequestHeader("If-None-Match", cached.getETag()); //$NON-NLS-1$
+				}
+				if (cached.getLastModified() != null) {
+					method.setRequestHeader("If-Modified-Since", cached.getLastModified()); //$NON-NLS-1$
+				}
+			}
+			try {
+				int result = HttpConnectionPool.getDefault().execute(location, method, monitor);
+				if (result == HttpStatus.SC_NOT_MODIFIED && cached != null) {
+					InputStream in = cache.open(uri);
+					if (in != null) {
+						return in;
+					}
+				}
+				else if (result == HttpStatus.SC_OK) {
+					InputStream in = org.eclipse.mylyn.commons.net.WebUtil.getResponseBodyAsStream(method, monitor);
+					try {
+						Header etag = method.getResponseHeader("ETag"); //$NON-NLS-1$
+						Header lastModified = method.getResponseHeader("Last-Modified"); //$NON-NLS-1$
+						return cache.put(uri, in, etag != null ? etag.getValue() : null,
+								lastModified != null ? lastModified.getValue() : null);
+					}
+					finally {
+						in.close();
+					}
+				}
+				else {
+					throw toException(location, result);
+				}
+			}
+			catch (IOException e) {
+				throw toException(location, e);
+			}
+			finally {
+				method.releaseConnection();
+			}
+		}
+		finally {
+			monitor.done();
+		}
+		// the copy disappeared after the server said it was still valid
+		return stream(uri, progressMonitor);
+	}
+
 	private CoreException toException(WebLocation location, int result) {
 		return new CoreException(new Status(IStatus.ERROR, CorePlugin.PLUGIN_ID, NLS.bind(
 				"Download of {0} failed: Unexpected HTTP response {1}", location.getUrl(), result)));
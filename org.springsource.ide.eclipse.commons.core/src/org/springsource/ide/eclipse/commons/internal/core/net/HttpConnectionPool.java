@@ -0,0 +1,200 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Pivotal Software, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Pivotal Software, Inc. - initial API and implementation
+ *******************************************************************************/
+package org.springsource.ide.eclipse.commons.internal.core.net;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.httpclient.ConnectionPoolTimeoutException;
+import org.apache.commons.httpclient.HostConfiguration;
+import org.apache.commons.httpclient.HttpClient;
+import org.apache.commons.httpclient.HttpMethod;
+import org.apache.commons.httpclient.MultiThreadedHttpConnectionManager;
+import org.apache.commons.httpclient.params.HttpClientParams;
+import org.apache.commons.httpclient.params.HttpConnectionManagerParams;
+import org.apache.commons.httpclient.util.IdleConnectionTimeoutThread;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.mylyn.commons.net.WebLocation;
+import org.eclipse.mylyn.commons.net.WebUtil;
+
+/**
+ * A pool of HTTP connections that are kept open and reused by later requests to the same host,
+ * so that those don't pay for connection setup (DNS lookup, TCP and TLS handshakes) again.
+ * <p>
+ * Only the connections are shared. Each request gets its own {@link HttpClient}, and so its own
+ * state (cookies and credentials), like it did before connections were pooled.
+ * <ul>
+ *   <li>The number of open connections is limited per host and in total. A request that finds no
+ *   free connection waits for one, up to the socket timeout.</li>
+ *   <li>Connections that stay unused for longer than the idle timeout are closed.</li>
+ * </ul>
+ * The defaults can be changed with system properties (see the constants below), or with the setters.
+ */
+public class HttpConnectionPool {
+
+	public static final String MAX_CONNECTIONS_PER_HOST_PROPERTY = "sts.http.maxConnectionsPerHost";
+	public static final String MAX_TOTAL_CONNECTIONS_PROPERTY = "sts.http.maxTotalConnections";
+	public static final String CONNECT_TIMEOUT_PROPERTY = "sts.http.connectTimeout";
+	public static final String SOCKET_TIMEOUT_PROPERTY = "sts.http.socketTimeout";
+	public static final String IDLE_TIMEOUT_PROPERTY = "sts.http.idleTimeout";
+
+	private static HttpConnectionPool instance;
+
+	public static synchronized HttpConnectionPool getDefault() {
+		if (instance == null) {
+			instance = new HttpConnectionPool();
+		}
+		return instance;
+	}
+
+	/**
+	 * Close all connections of the default pool. Called when the plugin is stopped.
+	 */
+	public static synchronized void disposeDefault() {
+		if (instance != null) {
+			instance.dispose();
+			instance = null;
+		}
+	}
+
+	private final MultiThreadedHttpConnectionManager connectionManager;
+	/**
+	 * Parameters of the clients created for requests.
+	 */
+	private final HttpClientParams clientParams;
+	private final IdleConnectionTimeoutThread idleConnectionEvictor;
+
+	private final AtomicLong requests = new AtomicLong();
+	private final AtomicLong poolTimeouts = new AtomicLong();
+
+	public HttpConnectionPool() {
+		connectionManager = new MultiThreadedHttpConnectionManager();
+		HttpClient template = new HttpClient(connectionManager);
+		//Note: this also sets the connection manager parameters, so ours must be set afterwards.
+		WebUtil.configureHttpClient(template, ""); //$NON-NLS-1$
+		clientParams = template.getParams();
+
+		HttpConnectionManagerParams params = connectionManager.getParams();
+		params.setDefaultMaxConnectionsPerHost(Integer.getInteger(MAX_CONNECTIONS_PER_HOST_PROPERTY, 4));
+		params.setMaxTotalConnections(Integer.getInteger(MAX_TOTAL_CONNECTIONS_PROPERTY, 20));
+		params.setConnectionTimeout(Integer.getInteger(CONNECT_TIMEOUT_PROPERTY, 30 * 1000));
+		params.setStaleCheckingEnabled(true);
+		setSocketTimeout(Integer.getInteger(SOCKET_TIMEOUT_PROPERTY, 60 * 1000));
+
+		idleConnectionEvictor = new IdleConnectionTimeoutThread();
+		idleConnectionEvictor.setName("STS idle HTTP connection evictor"); //$NON-NLS-1$
+		idleConnectionEvictor.addConnectionManager(connectionManager);
+		setIdleTimeout(Integer.getInteger(IDLE_TIMEOUT_PROPERTY, 30 * 1000));
+		idleConnectionEvictor.start();
+	}
+
+	/**
+	 * Execute a method using a pooled connection. The connection goes back to the pool when the
+	 * method is released, or when the stream with its response body is closed.
+	 *
+	 * @return The HTTP status code.
+	 */
+	public int execute(WebLocation location, HttpMethod method, IProgressMonitor monitor) throws IOException {
+		//A client is cheap. Sharing one would share its cookies and credentials between unrelated requests.
+		HttpClient client = new HttpClient(clientParams, connectionManager);
+		HostConfiguration hostConfiguration = WebUtil.createHostConfiguration(client, location, monitor);
+		requests.incrementAndGet();
+		try {
+			return WebUtil.execute(client, hostConfiguration, method, monitor);
+		}
+		catch (ConnectionPoolTimeoutException e) {
+			poolTimeouts.incrementAndGet();
+			throw e;
+		}
+	}
+
+	public void setMaxConnectionsPerHost(int max) {
+		connectionManager.getParams().setDefaultMaxConnectionsPerHost(max);
+	}
+
+	public int getMaxConnectionsPerHost() {
+		return connectionManager.getParams().getDefaultMaxConnectionsPerHost();
+	}
+
+	public void setMaxTotalConnections(int max) {
+		connectionManager.getParams().setMaxTotalConnections(max);
+	}
+
+	public int getMaxTotalConnections() {
+		return connectionManager.getParams().getMaxTotalConnections();
+	}
+
+	/**
+	 * Sets the time in milliseconds to wait for a connection to be established.
+	 */
+	public void setConnectTimeout(int millis) {
+		connectionManager.getParams().setConnectionTimeout(millis);
+	}
+
+	public int getConnectTimeout() {
+		return connectionManager.getParams().getConnectionTimeout();
+	}
+
+	/**
+	 * Sets the time in milliseconds to wait for data from the server, and to wait for a free
+	 * connection when all connections are in use.
+	 */
+	public void setSocketTimeout(int millis) {
+		connectionManager.getParams().setSoTimeout(millis);
+		clientParams.setConnectionManagerTimeout(millis);
+	}
+
+	public int getSocketTimeout() {
+		return connectionManager.getParams().getSoTimeout();
+	}
+
+	/**
+	 * Sets the time in milliseconds after which unused connections are closed.
+	 */
+	public synchronized void setIdleTimeout(long millis) {
+		idleConnectionEvictor.setConnectionTimeout(millis);
+		idleConnectionEvictor.setTimeoutInterval(Math.max(1000, millis / 2));
+	}
+
+	/**
+	 * @return The number of open connections, both in use and idle.
+	 */
+	public int getConnectionsInPool() {
+		return connectionManager.getConnectionsInPool();
+	}
+
+	/**
+	 * @return The number of requests executed so far.
+	 */
+	public long getRequestCount() {
+		return requests.get();
+	}
+
+	/**
+	 * @return The number of requests that failed because no connection became free in time. If this
+	 *    is more than 0, the connection limits may be too low.
+	 */
+	public long getPoolTimeoutCount() {
+		return poolTimeouts.get();
+	}
+
+	@Override
+	public String toString() {
+		return "HttpConnectionPool(connections: " + getConnectionsInPool() + "/" + getMaxTotalConnections() //$NON-NLS-1$ //$NON-NLS-2$
+				+ ", requests: " + getRequestCount() + ", pool timeouts: " + getPoolTimeoutCount() + ")"; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+	}
+
+	public void dispose() {
+		idleConnectionEvictor.shutdown();
+		connectionManager.shutdown();
+	}
+
+}
@@ -28,4 +28,13 @@ public interface ITransportService {
 
 	public abstract InputStream stream(URI uri, IProgressMonitor monitor) throws CoreException;
 
+	/**
+	 * Like {@link #stream(URI, IProgressMonitor)}, but keeps a copy of the content in a cache. If
+	 * there already is a copy, it is revalidated: the server is asked for the content only if it
+	 * changed since the copy was made. If it didn't change ('304 Not Modified'), the copy is used.
+	 * <p>
+	 * Transports that can't revalidate fetch the content in full.
+	 */
+	public abstract InputStream stream(URI uri, HttpCache cache, IProgressMonitor monitor) throws CoreException;
+
 }
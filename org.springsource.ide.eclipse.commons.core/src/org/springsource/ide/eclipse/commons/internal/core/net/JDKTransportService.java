@@ -14,9 +14,11 @@ import java.io.BufferedInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
 import java.net.URI;
 import java.net.URL;
+import java.net.URLConnection;
 
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IProgressMonitor;
@@ -105,6 +107,50 @@ public class JDKTransportService implements ITransportService {
 		}
 	}
 
+	public InputStream stream(URI uri, HttpCache cache, IProgressMonitor monitor) throws CoreException {
+		try {
+			URL url = uri.toURL();
+			try {
+				URLConnection conn = url.openConnection();
+				if (!(conn instanceof HttpURLConnection)) {
+					return stream(uri, monitor);
+				}
+				HttpURLConnection http = (HttpURLConnection) conn;
+				HttpCache.Entry cached = cache.get(uri);
+				if (cached!=null) {
+					if (cached.getETag()!=null) {
+						http.setRequestProperty("If-None-Match", cached.getETag());
+					}
+					if (cached.getLastModified()!=null) {
+						http.setRequestProperty("If-Modified-Since", cached.getLastModified());
+					}
+				}
+				if (cached!=null && http.getResponseCode()==HttpURLConnection.HTTP_NOT_MODIFIED) {
+					http.disconnect();
+					InputStream in = cache.open(uri);
+					if (in!=null) {
+						return in;
+					}
+					//The copy disappeared in the mean time.
+					return stream(uri, monitor);
+				}
+				InputStream in = http.getInputStream();
+				try {
+					return cache.put(uri, in, http.getHeaderField("ETag"), http.getHeaderField("Last-Modified"));
+				}
+				finally {
+					in.close();
+				}
+			}
+			catch (IOException e) {
+				throw toException(url, e);
+			}
+		}
+		catch (MalformedURLException e) {
+			throw toException(uri, e);
+		}
+	}
+
 	private CoreException toException(URI uri, IOException e) throws CoreException {
 		String message = e.getMessage() != null ? e.getMessage() : "Unexpected error";
 		return new CoreException(new Status(IStatus.ERROR, CorePlugin.PLUGIN_ID, NLS.bind(
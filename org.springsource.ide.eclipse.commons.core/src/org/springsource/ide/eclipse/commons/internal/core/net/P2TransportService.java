@@ -10,11 +10,18 @@
  *******************************************************************************/
 package org.springsource.ide.eclipse.commons.internal.core.net;
 
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.net.URI;
+import java.text.DateFormat;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
 
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IProgressMonitor;
@@ -148,4 +155,74 @@ public class P2TransportService implements ITransportService {
 		throw new IllegalStateException();
 	}
 
+	/**
+	 * The P2 transport has no way to make conditional requests. Instead, the modification date of the
+	 * resource is requested first, and compared with the 'Last-Modified' date of the cached copy. This
+	 * costs an extra request when the content did change, but keeps the proxy and authentication settings
+	 * of P2 for both requests. Copies made without a modification date are always fetched again.
+	 */
+	public InputStream stream(URI uri, HttpCache cache, IProgressMonitor monitor) throws CoreException {
+		long lastModified;
+		try {
+			lastModified = getLastModified(uri, monitor);
+		}
+		catch (CoreException e) {
+			//Server may not support asking for just the date. Fetch without caching.
+			return stream(uri, monitor);
+		}
+		HttpCache.Entry cached = cache.get(uri);
+		if (cached != null && lastModified > 0 && !isNewer(lastModified, cached.getLastModified())) {
+			InputStream in = cache.open(uri);
+			if (in != null) {
+				return in;
+			}
+			//The copy disappeared in the mean time.
+		}
+		//The date was taken before the content. If the content changes in between, the copy
+		//looks older than it is and is fetched again next time, which is safe.
+		InputStream in = stream(uri, monitor);
+		try {
+			return cache.put(uri, in, null, lastModified > 0 ? formatHttpDate(lastModified) : null);
+		}
+		catch (IOException e) {
+			throw new CoreException(new Status(IStatus.ERROR, CorePlugin.PLUGIN_ID, "Failed to cache " + uri, e));
+		}
+		finally {
+			try {
+				in.close();
+			}
+			catch (IOException e) {
+				// ignore
+			}
+		}
+	}
+
+	/**
+	 * @param cachedDate An HTTP date, or null if unknown.
+	 * @return Whether a modification time is later than a cached date. HTTP dates have a resolution of
+	 *    a second.
+	 */
+	private static boolean isNewer(long lastModified, String cachedDate) {
+		if (cachedDate == null) {
+			return true;
+		}
+		try {
+			return lastModified / 1000 > httpDateFormat().parse(cachedDate).getTime() / 1000;
+		}
+		catch (ParseException e) {
+			return true;
+		}
+	}
+
+	private static String formatHttpDate(long time) {
+		return httpDateFormat().format(new Date(time));
+	}
+
+	private static DateFormat httpDateFormat() {
+		// RFC 1123 date, as used in 'Last-Modified' headers
+		SimpleDateFormat format = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss zzz", Locale.US); //$NON-NLS-1$
+		format.setTimeZone(TimeZone.getTimeZone("GMT")); //$NON-NLS-1$
+		return format;
+	}
+
 }
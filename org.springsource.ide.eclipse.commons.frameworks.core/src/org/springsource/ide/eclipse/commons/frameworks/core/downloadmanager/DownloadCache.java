@@ -0,0 +1,450 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Pivotal Software, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Pivotal Software, Inc. - initial API and implementation
+ *******************************************************************************/
+package org.springsource.ide.eclipse.commons.frameworks.core.downloadmanager;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.io.FileUtils;
+import org.springsource.ide.eclipse.commons.frameworks.core.FrameworkCoreActivator;
+
+/**
+ * Index of the content downloaded into the cache directory of a {@link DownloadManager}.
+ * <p>
+ * Content is stored under its SHA-1 hash, so identical content downloaded for different
+ * items is only stored once. For each item, the index records the hash and size of its
+ * content and when it was last used. The index is kept in a file in the cache directory.
+ * <p>
+ * The index also records the validator of the content (see {@link PartialDownload}) and when
+ * it was last checked with the server, so that content can be revalidated when it gets old.
+ * <ul>
+ *   <li>Content is verified when it is read: its size every time, its hash the first time
+ *   it is read after the index is loaded, unless the reader asks not to (hashing a large
+ *   file takes a while). Corrupt content is removed.</li>
+ *   <li>When the content in the cache is larger than a maximum size, the content that was
+ *   used least recently is removed.</li>
+ * </ul>
+ * Reading content doesn't write the index. The times content was last used are written
+ * with the next change to the index, or by {@link #flush()}.
+ */
+class DownloadCache {
+
+	private static final String INDEX_FILE_NAME = ".index";
+
+	private final File directory;
+	private final File indexFile;
+
+	//The fields below are only accessed while holding the lock on 'this'.
+
+	private long maxSize = Long.MAX_VALUE;
+
+	/**
+	 * Entries by item file name.
+	 */
+	private final Map<String, Entry> entries = new HashMap<String, Entry>();
+
+	/**
+	 * Names of the content files whose hash was checked since the index was loaded.
+	 */
+	private final Set<String> verified = new HashSet<String>();
+
+	/**
+	 * True if content was used since the index was last written.
+	 */
+	private boolean accessed = false;
+
+	private static class Entry {
+		final String fileName;
+		final String sha1;
+		final long size;
+		long lastAccess;
+		final String validator; //may be null
+		long lastValidated;
+
+		Entry(String fileName, String sha1, long size, long lastAccess, String validator, long lastValidated) {
+			this.fileName = fileName;
+			this.sha1 = sha1;
+			this.size = size;
+			this.lastAccess = lastAccess;
+			this.validator = validator;
+			this.lastValidated = lastValidated;
+		}
+	}
+
+	DownloadCache(File directory) {
+		this.directory = directory;
+		this.indexFile = new File(directory, INDEX_FILE_NAME);
+		load();
+	}
+
+	synchronized void setMaxSize(long maxSize) {
+		this.maxSize = maxSize;
+		evict(null);
+		save();
+	}
+
+	synchronized long getMaxSize() {
+		return maxSize;
+	}
+
+	/**
+	 * @return The total size of the content in the cache.
+	 */
+	synchronized long getSize() {
+		long size = 0;
+		Set<String> counted = new HashSet<String>();
+		for (Entry e : entries.values()) {
+			if (counted.add(e.fileName)) {
+				size += e.size;
+			}
+		}
+		return size;
+	}
+
+	/**
+	 * @return The file holding the content for an item, or null if the cache has no content for it.
+	 *   The content isn't verified.
+	 */
+	synchronized File getLocation(String name) {
+		Entry e = entries.get(name);
+		return e==null ? null : new File(directory, e.fileName);
+	}
+
+	/**
+	 * @return Whether the content for an item was last validated at least maxAge milliseconds ago.
+	 */
+	synchronized boolean isStale(String name, long maxAge) {
+		Entry e = entries.get(name);
+		return e!=null && System.currentTimeMillis()-e.lastValidated>=maxAge;
+	}
+
+	/**
+	 * @return The validator of the content for an item, or null if there is none.
+	 */
+	synchronized String getValidator(String name) {
+		Entry e = entries.get(name);
+		return e==null ? null : e.validator;
+	}
+
+	/**
+	 * Record that the server confirmed that the content for an item is still valid.
+	 */
+	synchronized void validated(String name) {
+		Entry e = entries.get(name);
+		if (e!=null) {
+			e.lastValidated = System.currentTimeMillis();
+			save();
+		}
+	}
+
+	/**
+	 * Get the file holding the content for an item, and record that the content was used.
+	 *
+	 * @param verify Whether to check the hash of the content, if that wasn't done yet.
+	 * @return The file, or null if the cache has no content for the item, or the content was
+	 *   found to be corrupt.
+	 */
+	File get(String name, boolean verify) {
+		while (true) {
+			Entry e;
+			File file;
+			synchronized (this) {
+				e = entries.get(name);
+				if (e==null) {
+					return null;
+				}
+				file = new File(directory, e.fileName);
+				if (!file.isFile() || file.length()!=e.size) {
+					removeContent(e.fileName);
+					save();
+					return null;
+				}
+				e.lastAccess = System.currentTimeMillis();
+				accessed = true;
+				if (!verify || verified.contains(e.fileName)) {
+					return file;
+				}
+			}
+			//Hashing a large file takes a while. Don't hold the lock while doing it.
+			String sha1;
+			try {
+				sha1 = sha1(file);
+			} catch (IOException ex) {
+				//Removed in the mean time, or unreadable.
+				sha1 = null;
+			}
+			synchronized (this) {
+				if (entries.get(name)!=e) {
+					//Replaced or removed while we were hashing (e.g. the item was downloaded again).
+					//The hash says nothing about the new entry, so look again.
+					continue;
+				}
+				if (e.sha1.equals(sha1)) {
+					verified.add(e.fileName);
+					return file;
+				}
+				FrameworkCoreActivator.logError("Removing corrupt download from cache: "+file, null);
+				removeContent(e.fileName);
+				save();
+				return null;
+			}
+		}
+	}
+
+	/**
+	 * Add downloaded content for an item to the cache. The file is moved into the cache, or deleted if
+	 * the cache already has the same content. Then content is evicted if the cache got too large.
+	 *
+	 * @param validator Validator of the content, or null if unknown.
+	 * @return The file that now holds the content.
+	 */
+	File add(String name, File file, String validator) throws IOException {
+		if (validator!=null && (validator.indexOf('\t')>=0 || validator.indexOf('\n')>=0)) {
+			validator = null; //Can't be stored in the index.
+		}
+		String sha1 = sha1(file);
+		long size = file.length();
+		synchronized (this) {
+			String fileName = null;
+			for (Entry e : entries.values()) {
+				if (e.sha1.equals(sha1) && e.size==size && new File(directory, e.fileName).isFile()) {
+					fileName = e.fileName;
+					break;
+				}
+			}
+			if (fileName!=null) {
+				FileUtils.deleteQuietly(file);
+			} else {
+				fileName = sha1+getExtension(name);
+				File content = new File(directory, fileName);
+				content.delete();
+				if (!file.renameTo(content)) {
+					throw new IOException("Error while renaming " + file + " to " + content);
+				}
+			}
+			long now = System.currentTimeMillis();
+			Entry old = entries.put(name, new Entry(fileName, sha1, size, now, validator, now));
+			verified.add(fileName);
+			if (old!=null && !old.fileName.equals(fileName)) {
+				deleteIfUnused(old.fileName);
+			}
+			evict(fileName);
+			save();
+			return new File(directory, fileName);
+		}
+	}
+
+	/**
+	 * Remove the content for an item. The content file is only deleted if no other item uses it.
+	 */
+	synchronized void remove(String name) {
+		Entry old = entries.remove(name);
+		if (old!=null) {
+			deleteIfUnused(old.fileName);
+			save();
+		}
+	}
+
+	/**
+	 * Remove a content file that is presumed to be corrupt, for all items that use it.
+	 */
+	synchronized void invalidate(File file) {
+		if (directory.equals(file.getParentFile())) {
+			removeContent(file.getName());
+			save();
+		}
+	}
+
+	/**
+	 * Write the index if content was used since it was last written.
+	 */
+	synchronized void flush() {
+		if (accessed) {
+			save();
+		}
+	}
+
+	/**
+	 * Forget all entries. Called after the cache directory was deleted.
+	 */
+	synchronized void clear() {
+		entries.clear();
+		verified.clear();
+	}
+
+	/**
+	 * Remove content, least recently used first, until the content in the cache is no larger than
+	 * the maximum size.
+	 *
+	 * @param keep Name of a content file that must not be removed, or null.
+	 */
+	private void evict(String keep) {
+		long size = getSize();
+		while (size>maxSize) {
+			Map<String, Long> lastAccess = new HashMap<String, Long>();
+			for (Entry e : entries.values()) {
+				Long t = lastAccess.get(e.fileName);
+				if (t==null || t<e.lastAccess) {
+					lastAccess.put(e.fileName, e.lastAccess);
+				}
+			}
+			String oldest = null;
+			for (Map.Entry<String, Long> e : lastAccess.entrySet()) {
+				if (!e.getKey().equals(keep) && (oldest==null || e.getValue()<lastAccess.get(oldest))) {
+					oldest = e.getKey();
+				}
+			}
+			if (oldest==null) {
+				return;
+			}
+			removeContent(oldest);
+			size = getSize();
+		}
+	}
+
+	private void removeContent(String fileName) {
+		for (Iterator<Entry> iter = entries.values().iterator(); iter.hasNext();) {
+			if (iter.next().fileName.equals(fileName)) {
+				iter.remove();
+			}
+		}
+		verified.remove(fileName);
+		FileUtils.deleteQuietly(new File(directory, fileName));
+	}
+
+	private void deleteIfUnused(String fileName) {
+		for (Entry e : entries.values()) {
+			if (e.fileName.equals(fileName)) {
+				return;
+			}
+		}
+		verified.remove(fileName);
+		FileUtils.deleteQuietly(new File(directory, fileName));
+	}
+
+	/**
+	 * @return The extension of a file name, including the '.', or the empty string if it has none.
+	 *   Content is stored with the extension of the item it was first downloaded for, in case
+	 *   clients care about it.
+	 */
+	private static String getExtension(String name) {
+		int dot = name.lastIndexOf('.');
+		if (dot>0 && name.length()-dot<=10) {
+			String ext = name.substring(dot);
+			if (ext.matches("\\.[A-Za-z0-9]+")) {
+				return ext;
+			}
+		}
+		return "";
+	}
+
+	static String sha1(File file) throws IOException {
+		try {
+			MessageDigest sha1 = MessageDigest.getInstance("sha1");
+			InputStream in = new FileInputStream(file);
+			try {
+				byte[] buf = new byte[1024*16];
+				int n;
+				while ((n = in.read(buf))>=0) {
+					sha1.update(buf, 0, n);
+				}
+			} finally {
+				in.close();
+			}
+			return new String(Hex.encodeHex(sha1.digest()));
+		} catch (NoSuchAlgorithmException e) {
+			//This should not be possible
+			throw new Error(e);
+		}
+	}
+
+	/**
+	 * Read the index. Entries whose content is missing are dropped.
+	 */
+	private synchronized void load() {
+		if (!indexFile.isFile()) {
+			return;
+		}
+		try {
+			BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(indexFile), "UTF-8"));
+			try {
+				String line;
+				while ((line = in.readLine())!=null) {
+					String[] fields = line.split("\t");
+					//Entries written before validators were recorded have only 5 fields.
+					if (fields.length==5 || fields.length==7) {
+						try {
+							String validator = fields.length==7 && fields[5].length()>0 ? fields[5] : null;
+							long lastValidated = fields.length==7 ? Long.parseLong(fields[6]) : 0;
+							Entry e = new Entry(fields[1], fields[2], Long.parseLong(fields[3]), Long.parseLong(fields[4]),
+									validator, lastValidated);
+							if (new File(directory, e.fileName).isFile()) {
+								entries.put(fields[0], e);
+							}
+						} catch (NumberFormatException ignore) {
+							//Skip the entry. Its content will be downloaded again if needed.
+						}
+					}
+				}
+			} finally {
+				in.close();
+			}
+		} catch (IOException e) {
+			FrameworkCoreActivator.log(e);
+		}
+	}
+
+	/**
+	 * Write the index. Written to a temp file first, so that a crash can't leave half an index.
+	 */
+	private void save() {
+		if (!directory.isDirectory()) {
+			//Deleted (e.g. the download manager was disposed)
+			return;
+		}
+		File tmp = new File(directory, INDEX_FILE_NAME+".tmp");
+		try {
+			PrintWriter out = new PrintWriter(new OutputStreamWriter(new FileOutputStream(tmp), "UTF-8"));
+			try {
+				for (Map.Entry<String, Entry> me : entries.entrySet()) {
+					Entry e = me.getValue();
+					out.print(me.getKey()+"\t"+e.fileName+"\t"+e.sha1+"\t"+e.size+"\t"+e.lastAccess+"\t"
+							+(e.validator==null ? "" : e.validator)+"\t"+e.lastValidated+"\n");
+				}
+			} finally {
+				out.close();
+			}
+			indexFile.delete();
+			if (!tmp.renameTo(indexFile)) {
+				throw new IOException("Error while renaming " + tmp + " to " + indexFile);
+			}
+			accessed = false;
+		} catch (IOException e) {
+			FrameworkCoreActivator.log(e);
+		}
+	}
+
+}
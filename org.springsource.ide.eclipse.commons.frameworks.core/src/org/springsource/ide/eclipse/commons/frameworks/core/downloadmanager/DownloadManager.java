@@ -14,9 +14,16 @@ import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
 import java.net.URISyntaxException;
 import java.net.URL;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.Semaphore;
 
 import org.apache.commons.io.FileUtils;
 import org.eclipse.core.runtime.Assert;
@@ -52,12 +59,53 @@ public class DownloadManager {
 		void fetch(URL url, OutputStream writeTo) throws IOException;
 	}
 
+	/**
+	 * A DownloadService that can resume interrupted downloads. When a download fails,
+	 * the content received so far is kept, and the next try only fetches the rest of it,
+	 * provided the content didn't change in the meantime.
+	 */
+	public interface ResumableDownloadService extends DownloadService {
+		/**
+		 * Fetch the content of a url into a partial download. If the partial download already
+		 * has some content and a validator, only the rest of the content is fetched, if possible.
+		 * Otherwise the partial download is restarted and all of the content is fetched.
+		 */
+		void fetch(URL url, PartialDownload writeTo) throws IOException;
+	}
+
+	/**
+	 * A DownloadService that can ask the server whether content it fetched before has changed,
+	 * so that content in the cache can be checked without downloading it again.
+	 */
+	public interface RevalidatingDownloadService extends ResumableDownloadService {
+		/**
+		 * Fetch the content of a url into a partial download, but only if it changed since it had
+		 * a given validator (see {@link PartialDownload#getValidator()}).
+		 *
+		 * @return false if the content didn't change (nothing was fetched), true if it was fetched.
+		 */
+		boolean fetchIfModified(URL url, String validator, PartialDownload writeTo) throws IOException;
+	}
+
 	private final File cacheDirectory;
+	private final DownloadCache cache;
 	private final DownloadService downloader;
 	private boolean deleteCacheOnDispose = false;
 	private boolean allowUIThread = false;
 	private int tries = 5; //5 retries by default
 	private long retryInterval = 0; //no wait between retries by default.
+	private int maxConcurrentDownloads = 4;
+	private long revalidationInterval = -1; //never revalidate by default.
+
+	/**
+	 * Limits the number of downloads running at the same time.
+	 */
+	private volatile Semaphore downloadSlots = new Semaphore(maxConcurrentDownloads);
+
+	/**
+	 * Downloads in progress, by item file name.
+	 */
+	private final Map<String, FutureTask<File>> inFlight = new HashMap<String, FutureTask<File>>();
 
 	public DownloadManager(DownloadService downloader, File cacheDir) throws IOException {
 		if (cacheDir==null) {
@@ -72,11 +120,13 @@ public class DownloadManager {
 		if (!cacheDir.isDirectory()) {
 			Assert.isTrue(cacheDir.mkdirs(), "Couldn't create cache directory at "+cacheDir);
 		}
+		this.cache = new DownloadCache(cacheDir);
 	}
 
 	public DownloadManager clearCache() {
 		FileUtils.deleteQuietly(cacheDirectory);
 		cacheDirectory.mkdirs();
+		cache.clear();
 		return this;
 	}
 
@@ -101,41 +151,185 @@ public class DownloadManager {
 	 */
 	@Deprecated
 	public File downloadFile(DownloadableItem item) throws URISyntaxException, FileNotFoundException, CoreException, IOException, UIThreadDownloadDisallowed {
-		File target = getLocalLocation(item);
-		if (target.exists()) {
-			return target;
+		File cached = getCached(item);
+		if (cached!=null && !isStale(item)) {
+			return cached;
 		}
 
-		if (!allowUIThread && Display.getCurrent()!=null) {
+		boolean uiThreadDisallowed = !allowUIThread && Display.getCurrent()!=null;
+		if (cached!=null && uiThreadDisallowed) {
+			//Don't make the UI thread wait for the server. The stale copy will have to do for now.
+			return cached;
+		}
+		if (uiThreadDisallowed) {
 			throw new UIThreadDownloadDisallowed("Don't call download manager from the UI Thread unless the data is already cached.");
 		}
-//
-//		);
 		//It is important not to lock the UI thread for downloads!!!
 		//  If the UI thread is well behaved, we assume it will be careful not to call this method unless the
-		//  content is already cached. So once we get past the exists check it is ok to grab the lock.
-		synchronized (this) {
-			//It is possible that multiple thread where waiting to enter here... only one of them should proceed
-			// to actually download. So make sure to retest the target.exists() condition to avoid multiple downloads
-			if (target.exists()) {
-				return target;
+		//  content is already cached. So once we get past the exists check it is ok to wait for a download.
+		String name = item.getFileName();
+		FutureTask<File> download;
+		boolean mine = false;
+		synchronized (inFlight) {
+			//It is possible that multiple threads want the same item at the same time... only one of them
+			// should actually download it. The others wait for that download to finish.
+			download = inFlight.get(name);
+			if (download==null) {
+				download = new FutureTask<File>(new Download(item));
+				inFlight.put(name, download);
+				mine = true;
+			}
+		}
+		if (mine) {
+			try {
+				download.run();
+			} finally {
+				synchronized (inFlight) {
+					inFlight.remove(name);
+				}
 			}
-			if (!cacheDirectory.exists()) {
-				cacheDirectory.mkdirs();
+		}
+		try {
+			return download.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting for download of " + item.getURL());
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof IOException) {
+				throw (IOException) cause;
+			} else if (cause instanceof CoreException) {
+				throw (CoreException) cause;
+			} else if (cause instanceof URISyntaxException) {
+				throw (URISyntaxException) cause;
+			} else if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			} else if (cause instanceof Error) {
+				throw (Error) cause;
 			}
+			throw new IOException(cause.getMessage(), cause);
+		}
+	}
 
-			File targetPart = new File(target.toString()+".part");
-			FileOutputStream out = new FileOutputStream(targetPart);
+	/**
+	 * @return The file with the content of an item if it is in the cache (or is a local file),
+	 *    or null otherwise.
+	 */
+	private File getCached(DownloadableItem item) throws IOException {
+		File target = getLocalLocation(item);
+		if (isLocal(item)) {
+			return target.exists() ? target : null;
+		}
+		String name = item.getFileName();
+		//Hashing a large file would freeze the UI. The hash is checked when the item is next
+		//read from another thread. Until then, a corrupt file is caught by doWithDownload's retries.
+		boolean uiThread = Display.getCurrent()!=null;
+		File cached = cache.get(name, !uiThread);
+		if (cached==null && target.isFile()) {
+			//Downloaded before the cache had an index.
+			if (uiThread) {
+				return target; //Added to the index when it is read from another thread.
+			}
+			cached = cache.add(name, target, null);
+		}
+		return cached;
+	}
+
+	/**
+	 * @return Whether the cached content of an item should be checked with the server before it is used.
+	 */
+	private boolean isStale(DownloadableItem item) {
+		return revalidationInterval>=0 && !isLocal(item) && cache.isStale(item.getFileName(), revalidationInterval);
+	}
+
+	private boolean isLocal(DownloadableItem item) {
+		return "file".equals(item.getURL().getProtocol());
+	}
+
+	/**
+	 * Downloads an item into the cache, while holding one of the download slots.
+	 */
+	private class Download implements Callable<File> {
+
+		private final DownloadableItem item;
+
+		Download(DownloadableItem item) {
+			this.item = item;
+		}
+
+		public File call() throws Exception {
+			//Another thread may have finished downloading the item since we last looked.
+			File cached = getCached(item);
+			if (cached!=null && !isStale(item)) {
+				return cached;
+			}
+			Semaphore slots = downloadSlots;
+			slots.acquire();
 			try {
-				URL url = item.getURL();
-				System.out.println("Downloading " + url + " to " + target);
+				if (!cacheDirectory.exists()) {
+					cacheDirectory.mkdirs();
+				}
+				if (cached!=null) {
+					return revalidate(cached);
+				}
+				return fetch();
+			} finally {
+				slots.release();
+			}
+		}
 
-				downloader.fetch(url, out);
+		/**
+		 * Check with the server whether the cached content of the item changed, and download it
+		 * again if it did.
+		 */
+		private File revalidate(File cached) throws Exception {
+			String name = item.getFileName();
+			String validator = cache.getValidator(name);
+			try {
+				if (validator!=null && downloader instanceof RevalidatingDownloadService) {
+					PartialDownload part = new PartialDownload(new File(cacheDirectory, name+".part"));
+					if (!((RevalidatingDownloadService) downloader).fetchIfModified(item.getURL(), validator, part)) {
+						cache.validated(name);
+						return cached;
+					}
+					String newValidator = part.getValidator();
+					part.complete();
+					return cache.add(name, part.getFile(), newValidator);
+				}
+				//No way to ask whether it changed, so just download it again.
+				return fetch();
+			} catch (IOException e) {
+				//Probably offline. The content we have is better than nothing.
+				FrameworkCoreActivator.log(e);
+				return cached;
 			}
-			finally {
-				out.close();
+		}
+
+		private File fetch() throws Exception {
+			File target = isLocal(item) ? getLocalLocation(item) : new File(cacheDirectory, item.getFileName());
+			File targetPart = new File(target.toString()+".part");
+			URL url = item.getURL();
+			System.out.println("Downloading " + url + " to " + target);
+			String validator = null;
+			if (downloader instanceof ResumableDownloadService) {
+				//If an earlier try failed, the .part file holds what it got, so this try may only need the rest.
+				PartialDownload part = new PartialDownload(targetPart);
+				((ResumableDownloadService) downloader).fetch(url, part);
+				validator = part.getValidator();
+				part.complete();
+			} else {
+				FileOutputStream out = new FileOutputStream(targetPart);
+				try {
+					downloader.fetch(url, out);
+				}
+				finally {
+					out.close();
+				}
 			}
 
+			if (!isLocal(item)) {
+				return cache.add(item.getFileName(), targetPart, validator);
+			}
 			if (!targetPart.renameTo(target)) {
 				throw new IOException("Error while renaming " + targetPart + " to " + target);
 			}
@@ -161,11 +355,26 @@ public class DownloadManager {
 		}
 
 		String filename = item.getFileName();
-
+		File cached = cache.getLocation(filename);
+		if (cached!=null) {
+			return cached;
+		}
 		File target = new File(cacheDirectory, filename);
 		return target;
 	}
 
+	/**
+	 * Remove an item from the cache. Its content is only deleted if no other item has
+	 * the same content.
+	 *
+	 * @since 3.7.0
+	 */
+	public void removeFromCache(DownloadableItem item) {
+		if (!isLocal(item)) {
+			cache.remove(item.getFileName());
+		}
+	}
+
 	/**
 	 * This method tries to download or fetch a File from the cache, then passes the
 	 * downloaded file to the DownloadRequestor.
@@ -192,6 +401,7 @@ public class DownloadManager {
 				//Presume the cache may be corrupt!
 				//System.out.println("Delete corrupt download: "+downloadedFile);
 				if (downloadedFile!=null) {
+					cache.invalidate(downloadedFile);
 					downloadedFile.delete();
 					downloadedFile = null;
 				}
@@ -246,6 +456,68 @@ public class DownloadManager {
 		return retryInterval;
 	}
 	
+	/**
+	 * Sets the maximum number of items that are downloaded at the same time. Requests for
+	 * other items wait until one of the running downloads is done. The default is 4.
+	 * <p>
+	 * Concurrent requests for the same item always share a single download.
+	 */
+	public DownloadManager setMaxConcurrentDownloads(int max) {
+		Assert.isLegal(max>0);
+		this.maxConcurrentDownloads = max;
+		this.downloadSlots = new Semaphore(max);
+		return this;
+	}
+
+	public int getMaxConcurrentDownloads() {
+		return maxConcurrentDownloads;
+	}
+
+	/**
+	 * Sets the maximum number of bytes of downloaded content kept in the cache. When the
+	 * cache gets larger, the content that was used least recently is removed.
+	 * The default is no limit.
+	 *
+	 * @since 3.7.0
+	 */
+	public DownloadManager setMaxCacheSize(long bytes) {
+		Assert.isLegal(bytes>=0);
+		cache.setMaxSize(bytes);
+		return this;
+	}
+
+	/**
+	 * Sets how old (in milliseconds) cached content may get before it is checked with the server
+	 * again. If the server says the content didn't change, the cached content is used without
+	 * downloading it again (provided the download service is a {@link RevalidatingDownloadService}).
+	 * If the server can't be reached, the cached content is used anyway.
+	 * <p>
+	 * A negative value means cached content is never checked. This is the default.
+	 *
+	 * @since 3.7.0
+	 */
+	public DownloadManager setRevalidationInterval(long millis) {
+		this.revalidationInterval = millis;
+		return this;
+	}
+
+	public long getRevalidationInterval() {
+		return revalidationInterval;
+	}
+
+	public long getMaxCacheSize() {
+		return cache.getMaxSize();
+	}
+
+	/**
+	 * @return The number of bytes of downloaded content in the cache.
+	 *
+	 * @since 3.7.0
+	 */
+	public long getCacheSize() {
+		return cache.getSize();
+	}
+
 	public File getCacheDir() {
 		return cacheDirectory;
 	}
@@ -262,6 +534,8 @@ public class DownloadManager {
 		if (deleteCacheOnDispose) {
 			FileUtils.deleteQuietly(cacheDirectory);
 			deleteCacheOnDispose = false;
+		} else {
+			cache.flush();
 		}
 	}
 
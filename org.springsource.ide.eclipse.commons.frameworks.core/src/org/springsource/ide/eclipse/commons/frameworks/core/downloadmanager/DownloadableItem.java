@@ -16,7 +16,6 @@ import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 
 import org.apache.commons.codec.binary.Base64;
-import org.apache.commons.io.FileUtils;
 import org.eclipse.core.runtime.Assert;
 import org.eclipse.core.runtime.IStatus;
 import org.eclipse.core.runtime.Status;
@@ -132,11 +131,7 @@ public class DownloadableItem {
 		//Take care not to delete the original file if was local to begin with (in that case we don't 
 		// copy it into the cache dir so there is no cache to clear!
 		if (url!=null && !"file".equals(url.getProtocol())) {
-			//Avoid race conditions when someone is downloading this item at the moment.
-			synchronized (downloader) {
-				File localFile = downloader.getLocalLocation(this);
-				FileUtils.deleteQuietly(localFile);
-			}
+			downloader.removeFromCache(this);
 		}
 	}
 
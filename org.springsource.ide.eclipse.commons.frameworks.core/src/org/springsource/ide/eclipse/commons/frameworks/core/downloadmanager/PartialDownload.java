@@ -0,0 +1,101 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Pivotal Software, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Pivotal Software, Inc. - initial API and implementation
+ *******************************************************************************/
+package org.springsource.ide.eclipse.commons.frameworks.core.downloadmanager;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import org.apache.commons.io.FileUtils;
+import org.springsource.ide.eclipse.commons.frameworks.core.downloadmanager.DownloadManager.ResumableDownloadService;
+
+/**
+ * A file that a {@link ResumableDownloadService} downloads to. If a download is interrupted,
+ * the file keeps the content received so far, so that a later try can fetch just the rest.
+ * <p>
+ * Content fetched later is only a continuation of what is in the file if the resource didn't
+ * change in the meantime. So together with the content, a 'validator' is kept, which identifies
+ * the version of the resource the content belongs to (e.g. an HTTP ETag or Last-Modified date).
+ * It is stored next to the file.
+ */
+public class PartialDownload {
+
+	private final File file;
+	private final File validatorFile;
+
+	public PartialDownload(File file) {
+		this.file = file;
+		this.validatorFile = new File(file.toString()+".validator");
+	}
+
+	public File getFile() {
+		return file;
+	}
+
+	/**
+	 * @return Number of bytes downloaded so far.
+	 */
+	public long length() {
+		return file.isFile() ? file.length() : 0;
+	}
+
+	/**
+	 * @return The validator of the content downloaded so far, or null if there is no content,
+	 *   or it isn't known which version of the resource it belongs to.
+	 */
+	public String getValidator() {
+		if (length()>0 && validatorFile.isFile()) {
+			try {
+				String validator = FileUtils.readFileToString(validatorFile, "UTF-8");
+				if (validator.length()>0) {
+					return validator;
+				}
+			} catch (IOException e) {
+				//Treat as unknown
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Discard the content downloaded so far and start over.
+	 *
+	 * @param validator Validator of the content that will be written, or null if unknown. Without
+	 *   a validator, an interrupted download can't be resumed.
+	 * @return Stream to write the content to. The caller must close it.
+	 */
+	public OutputStream restart(String validator) throws IOException {
+		FileUtils.deleteQuietly(validatorFile);
+		OutputStream out = new FileOutputStream(file);
+		if (validator!=null) {
+			FileUtils.writeStringToFile(validatorFile, validator, "UTF-8");
+		}
+		return out;
+	}
+
+	/**
+	 * Continue the download after the content downloaded so far.
+	 *
+	 * @return Stream to write the rest of the content to. The caller must close it.
+	 */
+	public OutputStream resume() throws IOException {
+		return new FileOutputStream(file, true);
+	}
+
+	/**
+	 * Called when the download is complete, before the file is moved to its final location.
+	 */
+	public void complete() {
+		FileUtils.deleteQuietly(validatorFile);
+	}
+
+}
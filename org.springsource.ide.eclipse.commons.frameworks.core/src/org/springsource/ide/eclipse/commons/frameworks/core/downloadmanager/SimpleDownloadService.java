@@ -13,16 +13,21 @@ package org.springsource.ide.eclipse.commons.frameworks.core.downloadmanager;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.net.HttpURLConnection;
 import java.net.URL;
 import java.net.URLConnection;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 
-import org.springsource.ide.eclipse.commons.frameworks.core.downloadmanager.DownloadManager.DownloadService;
+import org.springsource.ide.eclipse.commons.frameworks.core.downloadmanager.DownloadManager.RevalidatingDownloadService;
 import org.springsource.ide.eclipse.commons.frameworks.core.util.IOUtil;
 
-public class SimpleDownloadService implements DownloadService {
+/**
+ * Fetches content with the standard Java API. Interrupted HTTP downloads are resumed with
+ * a 'Range' request, if the server supports it.
+ */
+public class SimpleDownloadService implements RevalidatingDownloadService {
 
 	private final URLConnectionFactory connectionFactory;
 	private static final boolean DEBUG = false;
@@ -67,4 +72,137 @@ public class SimpleDownloadService implements DownloadService {
 		}
 	}
 
+	//@Override
+	public void fetch(URL url, PartialDownload writeTo) throws IOException {
+		URLConnection conn = connectionFactory.createConnection(url);
+		long offset = writeTo.length();
+		String validator = writeTo.getValidator();
+		boolean resuming = offset>0 && validator!=null && conn instanceof HttpURLConnection;
+		if (resuming) {
+			//If-Range: if the resource changed, the server ignores the Range and sends all of it.
+			conn.setRequestProperty("Range", "bytes="+offset+"-");
+			conn.setRequestProperty("If-Range", validator);
+		}
+		conn.connect();
+		int status = getResponseCode(conn);
+		OutputStream out;
+		if (resuming && status==HttpURLConnection.HTTP_PARTIAL) {
+			String range = conn.getHeaderField("Content-Range");
+			if (range==null || !range.startsWith("bytes "+offset+"-")) {
+				//Can't use this, and can't restart from it either. Make sure the next try starts over.
+				writeTo.restart(null).close();
+				throw new IOException("Unexpected Content-Range '"+range+"' resuming download of "+url);
+			}
+			if (DEBUG) {
+				System.out.println(">>> "+url+" resumed at "+offset);
+			}
+			out = writeTo.resume();
+		} else if (resuming && status==416) { // Requested Range Not Satisfiable
+			writeTo.restart(null).close();
+			throw new IOException("Can't resume download of "+url+" at "+offset);
+		} else if (status==HttpURLConnection.HTTP_OK) {
+			out = writeTo.restart(getValidator(conn));
+		} else {
+			//E.g. a server that is temporarily unavailable. Keep what we have, a next try may resume from it.
+			throw unexpectedResponse(url, conn, status);
+		}
+		receive(url, conn, out, writeTo);
+	}
+
+	//@Override
+	public boolean fetchIfModified(URL url, String validator, PartialDownload writeTo) throws IOException {
+		URLConnection conn = connectionFactory.createConnection(url);
+		if (!(conn instanceof HttpURLConnection)) {
+			fetch(url, writeTo);
+			return true;
+		}
+		//Validators are strong ETags (which are quoted) or Last-Modified dates.
+		if (validator.startsWith("\"")) {
+			conn.setRequestProperty("If-None-Match", validator);
+		} else {
+			conn.setRequestProperty("If-Modified-Since", validator);
+		}
+		conn.connect();
+		int status = getResponseCode(conn);
+		if (status==HttpURLConnection.HTTP_NOT_MODIFIED) {
+			if (DEBUG) {
+				System.out.println(">>> "+url+" not modified");
+			}
+			((HttpURLConnection) conn).disconnect();
+			return false;
+		} else if (status!=HttpURLConnection.HTTP_OK) {
+			throw unexpectedResponse(url, conn, status);
+		}
+		receive(url, conn, writeTo.restart(getValidator(conn)), writeTo);
+		return true;
+	}
+
+	/**
+	 * @return The HTTP status code of a connection. Other kinds of connections are treated as 'OK'.
+	 */
+	private static int getResponseCode(URLConnection conn) throws IOException {
+		if (conn instanceof HttpURLConnection) {
+			return ((HttpURLConnection) conn).getResponseCode();
+		}
+		return HttpURLConnection.HTTP_OK;
+	}
+
+	/**
+	 * Give up on an HTTP response that doesn't carry the content.
+	 */
+	private static IOException unexpectedResponse(URL url, URLConnection conn, int status) {
+		((HttpURLConnection) conn).disconnect();
+		return new IOException("Unexpected response "+status+" fetching "+url);
+	}
+
+	/**
+	 * Write the content of a connection to a partial download, and check that all of it was received.
+	 */
+	private static void receive(URL url, URLConnection conn, OutputStream out, PartialDownload writeTo) throws IOException {
+		try {
+			IOUtil.pipe(conn.getInputStream(), out);
+		} finally {
+			out.close();
+		}
+		//A connection that breaks off may look like a normal end of the content. Check we got all of it.
+		long expected = getContentLength(conn);
+		if (expected>=0 && writeTo.length()<expected) {
+			throw new IOException("Download of "+url+" ended after "+writeTo.length()+" of "+expected+" bytes");
+		}
+	}
+
+	/**
+	 * @return The total length of the content being fetched, or -1 if unknown.
+	 */
+	private static long getContentLength(URLConnection conn) {
+		String range = conn.getHeaderField("Content-Range");
+		String length = conn.getHeaderField("Content-Length");
+		try {
+			if (range!=null) {
+				// bytes <first>-<last>/<total>
+				return Long.parseLong(range.substring(range.lastIndexOf('/')+1).trim());
+			} else if (length!=null) {
+				return Long.parseLong(length.trim());
+			}
+		} catch (NumberFormatException e) {
+			//unknown
+		}
+		return -1;
+	}
+
+	/**
+	 * @return A validator that identifies the version of the content being fetched, suitable for
+	 *    an 'If-Range' header, or null if there is none.
+	 */
+	private static String getValidator(URLConnection conn) {
+		if (!(conn instanceof HttpURLConnection)) {
+			return null;
+		}
+		String etag = conn.getHeaderField("ETag");
+		if (etag!=null && !etag.startsWith("W/")) {
+			return etag; //Weak ETags can't be used in If-Range
+		}
+		return conn.getHeaderField("Last-Modified");
+	}
+
 }
@@ -0,0 +1,99 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Pivotal Software, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Pivotal Software, Inc. - initial API and implementation
+ *******************************************************************************/
+package org.springsource.ide.eclipse.commons.livexp.core;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.eclipse.swt.SWTException;
+import org.eclipse.swt.widgets.Display;
+
+/**
+ * Like {@link UIValueListener}, but the thread that changes the value never waits
+ * for the UI thread. 'uiGotValue' is called later on, via 'asyncExec'.
+ * <p>
+ * Values are coalesced: if the value of an expression changes several times before the UI
+ * thread gets around to processing the change, 'uiGotValue' is only called once for that
+ * expression, with the latest value. A listener added to several expressions gets the latest
+ * value of each of them. So a background job that updates a LiveVariable in a tight loop is not slowed
+ * down by the UI, and doesn't flood the UI thread with runnables.
+ * <p>
+ * Use this instead of {@link UIValueListener} when it doesn't matter to the listener
+ * whether it sees every intermediate value.
+ */
+public abstract class AsyncUIValueListener<T> implements ValueListener<T> {
+
+	//The fields below are only accessed while holding the lock on 'this'.
+
+	/**
+	 * Latest values not delivered yet, by expression, in the order the expressions first changed.
+	 */
+	private Map<LiveExpression<T>, T> pending = new LinkedHashMap<LiveExpression<T>, T>();
+
+	/**
+	 * True while a runnable is scheduled to deliver the pending value.
+	 */
+	private boolean scheduled = false;
+
+	/**
+	 * This method is final. Implement 'uiGotValue' instead.
+	 */
+	public final void gotValue(LiveExpression<T> exp, T value) {
+		synchronized (this) {
+			pending.put(exp, value);
+			if (scheduled) {
+				//The runnable that is already scheduled will deliver this value.
+				return;
+			}
+			scheduled = true;
+		}
+		Display display = getDisplay();
+		if (display.isDisposed()) {
+			discardPending();
+			return;
+		}
+		try {
+			display.asyncExec(new Runnable() {
+				public void run() {
+					Map<LiveExpression<T>, T> values;
+					synchronized (AsyncUIValueListener.this) {
+						values = pending;
+						pending = new LinkedHashMap<LiveExpression<T>, T>();
+						//Values arriving from now on need another runnable.
+						scheduled = false;
+					}
+					for (Map.Entry<LiveExpression<T>, T> e : values.entrySet()) {
+						uiGotValue(e.getKey(), e.getValue());
+					}
+				}
+			});
+		} catch (SWTException e) {
+			//The display was disposed after we checked. Nobody is left to show the values.
+			discardPending();
+		}
+	}
+
+	private synchronized void discardPending() {
+		pending.clear();
+		scheduled = false;
+	}
+
+	protected Display getDisplay() {
+		return Display.getDefault();
+	}
+
+	/**
+	 * Subclasses should implement. This method will always be called in the UIThread,
+	 * with the latest value the expression had at the time.
+	 */
+	protected abstract void uiGotValue(LiveExpression<T> exp, T value);
+
+}
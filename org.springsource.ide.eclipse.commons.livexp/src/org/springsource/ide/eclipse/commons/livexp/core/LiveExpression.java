@@ -10,6 +10,11 @@
  *******************************************************************************/
 package org.springsource.ide.eclipse.commons.livexp.core;
 
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.PriorityQueue;
+import java.util.Set;
+
 import org.eclipse.core.runtime.ListenerList;
 
 /**
@@ -24,6 +29,18 @@ public abstract class LiveExpression<V> {
 
 	private ListenerList fListeners = new ListenerList();
 
+	/**
+	 * The batch running in the current thread, if any. See {@link #batch(Runnable)}.
+	 */
+	private static final ThreadLocal<Batch> currentBatch = new ThreadLocal<Batch>();
+
+	/**
+	 * An expression's level is higher than the levels of all the expressions it depends on.
+	 * Expressions that depend on nothing have level 0.
+	 */
+	private int level = 0;
+	private boolean raisingLevel = false;
+
 	/**
 	 * The last computed value of the expression.
 	 */
@@ -65,23 +82,174 @@ public abstract class LiveExpression<V> {
 	 * that this expression will be refreshed if the value of the other expression changes.
 	 */
 	public <O> LiveExpression<V> dependsOn(LiveExpression<O> other) {
-		other.addListener(new ValueListener<O>() {
-			public void gotValue(LiveExpression<O> exp, O value) {
-				refresh();
-			}
-		});
+		raiseLevel(other.level+1);
+		other.addListener(new DependencyListener<O>(this));
 		return this;
 	};
 
+	/**
+	 * Listener that refreshes an expression when an expression it depends on changes. If this
+	 * happens during a batch, the refresh is postponed until the end of the batch.
+	 */
+	private static class DependencyListener<O> implements ValueListener<O> {
+		final LiveExpression<?> dependent;
+
+		DependencyListener(LiveExpression<?> dependent) {
+			this.dependent = dependent;
+		}
+
+		public void gotValue(LiveExpression<O> exp, O value) {
+			Batch batch = currentBatch.get();
+			if (batch!=null) {
+				batch.add(dependent);
+			} else {
+				dependent.refresh();
+			}
+		}
+	}
+
+	/**
+	 * Make sure this expression's level is at least 'min', and that the levels of the expressions
+	 * depending on it are still higher than its own level.
+	 */
+	private void raiseLevel(int min) {
+		if (level<min && !raisingLevel) {
+			//The raisingLevel flag stops us from going round and round in a cycle of dependencies.
+			raisingLevel = true;
+			try {
+				level = min;
+				for (Object l : fListeners.getListeners()) {
+					if (l instanceof DependencyListener) {
+						((DependencyListener<?>) l).dependent.raiseLevel(level+1);
+					}
+				}
+			} finally {
+				raisingLevel = false;
+			}
+		}
+	}
+
+	/**
+	 * Make a number of changes to live expressions (e.g. set the values of a number of LiveVariables)
+	 * as a single batch. While the batch runs, expressions that depend on changed expressions are not
+	 * refreshed right away. When the batch is done, they are refreshed in dependency order, so that each
+	 * of them is refreshed only once, and only after all the expressions it depends on.
+	 * <p>
+	 * Other listeners are notified after that, once per changed expression, with its final value. So they
+	 * never see an expression whose dependents haven't been refreshed yet.
+	 * <p>
+	 * Each change to a live expression made outside a batch is a batch of its own. So an expression
+	 * depending on several expressions that change because of the same change is still refreshed once.
+	 * <p>
+	 * Batches are per thread. Calling this method while a batch is running just adds the changes
+	 * to the running batch.
+	 */
+	public static void batch(Runnable changes) {
+		if (currentBatch.get()!=null) {
+			changes.run();
+			return;
+		}
+		Batch batch = new Batch();
+		currentBatch.set(batch);
+		try {
+			changes.run();
+			batch.flush();
+		} finally {
+			currentBatch.remove();
+		}
+	}
+
+	/**
+	 * Expressions that need to be refreshed at the end of a batch, and expressions whose listeners
+	 * need to be notified after that.
+	 */
+	private static class Batch {
+		private long sequence = 0;
+		private final Set<LiveExpression<?>> queued = new HashSet<LiveExpression<?>>();
+		private final PriorityQueue<Dirty> queue = new PriorityQueue<Dirty>();
+		private Set<LiveExpression<?>> changed = new LinkedHashSet<LiveExpression<?>>();
+
+		void add(LiveExpression<?> exp) {
+			if (queued.add(exp)) {
+				queue.add(new Dirty(exp, sequence++));
+			}
+		}
+
+		void changed(LiveExpression<?> exp) {
+			changed.add(exp);
+		}
+
+		/**
+		 * Refresh queued expressions, lowest level first, then notify the listeners of the expressions
+		 * that changed, in the order they first changed. Both may cause more changes, which are
+		 * handled the same way.
+		 */
+		void flush() {
+			while (true) {
+				Dirty d;
+				while ((d = queue.poll())!=null) {
+					queued.remove(d.exp);
+					d.exp.refresh();
+				}
+				if (changed.isEmpty()) {
+					return;
+				}
+				Set<LiveExpression<?>> notify = changed;
+				changed = new LinkedHashSet<LiveExpression<?>>();
+				for (LiveExpression<?> exp : notify) {
+					exp.notifyListeners(false);
+				}
+			}
+		}
+	}
+
+	private static class Dirty implements Comparable<Dirty> {
+		final LiveExpression<?> exp;
+		final int level;
+		final long sequence;
+
+		Dirty(LiveExpression<?> exp, long sequence) {
+			this.exp = exp;
+			this.level = exp.level;
+			this.sequence = sequence;
+		}
+
+		public int compareTo(Dirty other) {
+			if (level!=other.level) {
+				return level<other.level ? -1 : 1;
+			}
+			return sequence<other.sequence ? -1 : sequence==other.sequence ? 0 : 1;
+		}
+	}
 
 	protected abstract V compute();
 
 	protected void changed() {
+		Batch batch = currentBatch.get();
+		if (batch!=null) {
+			notifyListeners(true);
+			batch.changed(this);
+		} else {
+			batch(new Runnable() {
+				public void run() {
+					changed();
+				}
+			});
+		}
+	}
+
+	/**
+	 * @param dependencies Whether to notify the listeners that refresh dependent expressions,
+	 *   or the other listeners.
+	 */
+	private void notifyListeners(boolean dependencies) {
 		Object[] listeners = fListeners.getListeners();
 		for (Object _l : listeners) {
-			@SuppressWarnings("unchecked")
-			ValueListener<V> l = (ValueListener<V>) _l;
-			l.gotValue(this, value);
+			if ((_l instanceof DependencyListener)==dependencies) {
+				@SuppressWarnings("unchecked")
+				ValueListener<V> l = (ValueListener<V>) _l;
+				l.gotValue(this, value);
+			}
 		}
 	}
 
@@ -25,7 +25,7 @@ import org.springsource.ide.eclipse.commons.livexp.core.LiveExpression;
  * <p>
  * To allow more efficient incemental processing, clients may be interested in 
  * just knowing about individual elements getting added / removed.
- * This is not yet supported.
+ * This is not supported here, but {@link SnapshotLiveSet} supports it.
  * 
  * TODO: moved to commons. Remove this one and use the one in commons instead.
  */
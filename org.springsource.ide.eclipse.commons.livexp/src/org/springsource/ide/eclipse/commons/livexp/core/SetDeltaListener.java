@@ -0,0 +1,31 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Pivotal Software, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Pivotal Software, Inc. - initial API and implementation
+ *******************************************************************************/
+package org.springsource.ide.eclipse.commons.livexp.core;
+
+import java.util.Set;
+
+/**
+ * Listener that is told which elements were added to and removed from a {@link SnapshotLiveSet},
+ * so that it can update incrementally rather than process the whole set on every change.
+ */
+public interface SetDeltaListener<T> {
+
+	/**
+	 * Called when elements were added to or removed from the set. The first call after the listener
+	 * is added reports all the elements in the set at that time as added. Adding up all the calls
+	 * thus always gives the current contents of the set.
+	 *
+	 * @param added Elements that were added. Never null, but may be empty.
+	 * @param removed Elements that were removed. Never null, but may be empty.
+	 */
+	void setChanged(SnapshotLiveSet<T> set, Set<T> added, Set<T> removed);
+
+}
@@ -0,0 +1,285 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Pivotal Software, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Pivotal Software, Inc. - initial API and implementation
+ *******************************************************************************/
+package org.springsource.ide.eclipse.commons.livexp.core;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.eclipse.core.runtime.ListenerList;
+
+/**
+ * A set of values that can be listened to, like {@link LiveSet}, but suitable for large sets:
+ * <ul>
+ *   <li>The value of the expression is an immutable snapshot of the set. Getting it takes
+ *   constant time, no matter how large the set is. The snapshot can be used safely while
+ *   other threads continue to change the set.</li>
+ *   <li>Besides the usual {@link ValueListener}s, the set accepts {@link SetDeltaListener}s,
+ *   which are only told about the elements that were added and removed.</li>
+ * </ul>
+ * The set is copied on write: a change made after a snapshot was taken first copies the set,
+ * leaving the snapshot as it was. Changes made while no snapshot is in use don't copy anything.
+ * Snapshots are taken by {@link #getValue()} and to notify value listeners. So a set that only
+ * has delta listeners can be changed in constant time per element. Use {@link #addAll(Collection)}
+ * and {@link #removeAll(Collection)} to change many elements with a single copy and a single event.
+ * <p>
+ * Listeners are notified without holding any locks, and in the order in which the changes
+ * were made. When several threads change the set at the same time, a change made by one thread
+ * may be reported by another thread.
+ */
+public class SnapshotLiveSet<T> extends LiveExpression<Set<T>> {
+
+	private final ListenerList deltaListeners = new ListenerList();
+
+	/**
+	 * The value listeners, tracked here too so we know whether there are any. (Counting calls
+	 * goes wrong when a listener is added twice or an unknown one is removed.)
+	 */
+	private final ListenerList valueListeners = new ListenerList();
+
+	//The fields below are only accessed while holding the lock on 'this'.
+
+	private Set<T> elements = new HashSet<T>();
+
+	/**
+	 * Unmodifiable view of 'elements', or null if no snapshot was taken since 'elements' was copied.
+	 * While it isn't null, 'elements' must not be changed in place.
+	 */
+	private Set<T> snapshot = null;
+
+	/**
+	 * Changes that still have to be reported to listeners, in the order they were made.
+	 */
+	private final List<Delta<T>> pending = new ArrayList<Delta<T>>();
+
+	/**
+	 * True while some thread is reporting pending changes.
+	 */
+	private boolean delivering = false;
+
+	public SnapshotLiveSet() {
+	}
+
+	public SnapshotLiveSet(Collection<? extends T> initialElements) {
+		elements.addAll(initialElements);
+	}
+
+	/**
+	 * @return An immutable snapshot of the current elements.
+	 */
+	@Override
+	public synchronized Set<T> getValue() {
+		return snapshot();
+	}
+
+	private Set<T> snapshot() {
+		if (snapshot==null) {
+			snapshot = Collections.unmodifiableSet(elements);
+		}
+		return snapshot;
+	}
+
+	/**
+	 * @return 'elements', copied first if a snapshot of it may be in use.
+	 */
+	private Set<T> writable() {
+		if (snapshot!=null) {
+			elements = new HashSet<T>(elements);
+			snapshot = null;
+		}
+		return elements;
+	}
+
+	@Override
+	protected Set<T> compute() {
+		throw new Error("Shouldn't be reachable because refresh is overridden");
+	}
+
+	/**
+	 * The value of the set is only changed by its own operations, so there is nothing to recompute.
+	 * Only reports changes that are still pending.
+	 */
+	@Override
+	public void refresh() {
+		deliver();
+	}
+
+	public synchronized boolean contains(T element) {
+		return elements.contains(element);
+	}
+
+	public synchronized int size() {
+		return elements.size();
+	}
+
+	public void add(T element) {
+		addAll(Collections.singleton(element));
+	}
+
+	/**
+	 * Add a number of elements at once. At most one change event is fired, no matter how many
+	 * elements are actually added.
+	 */
+	public void addAll(Collection<? extends T> toAdd) {
+		synchronized (this) {
+			Set<T> added = new HashSet<T>();
+			for (T e : toAdd) {
+				if (!elements.contains(e)) {
+					writable().add(e);
+					added.add(e);
+				}
+			}
+			if (added.isEmpty()) {
+				//Nothing to do!
+				return;
+			}
+			pending.add(new Delta<T>(null, added, Collections.<T>emptySet()));
+		}
+		deliver();
+	}
+
+	public void remove(T element) {
+		removeAll(Collections.singleton(element));
+	}
+
+	/**
+	 * Remove a number of elements at once. At most one change event is fired, no matter how many
+	 * elements are actually removed.
+	 */
+	public void removeAll(Collection<? extends T> toRemove) {
+		synchronized (this) {
+			Set<T> removed = new HashSet<T>();
+			for (T e : toRemove) {
+				if (elements.contains(e)) {
+					writable().remove(e);
+					removed.add(e);
+				}
+			}
+			if (removed.isEmpty()) {
+				//Nothing to do!
+				return;
+			}
+			pending.add(new Delta<T>(null, Collections.<T>emptySet(), removed));
+		}
+		deliver();
+	}
+
+	@Override
+	public void addListener(ValueListener<Set<T>> l) {
+		synchronized (this) {
+			valueListeners.add(l);
+			value = snapshot();
+		}
+		super.addListener(l);
+	}
+
+	@Override
+	public void removeListener(ValueListener<Set<T>> l) {
+		super.removeListener(l);
+		valueListeners.remove(l);
+	}
+
+	/**
+	 * Add a delta listener. Its first event reports all current elements as added.
+	 */
+	public void addDeltaListener(SetDeltaListener<T> l) {
+		synchronized (this) {
+			//The listener is only registered when this delta is delivered, so that it doesn't
+			//also get the changes that are pending now, which are already in the snapshot.
+			pending.add(new Delta<T>(l, snapshot(), Collections.<T>emptySet()));
+		}
+		deliver();
+	}
+
+	public void removeDeltaListener(SetDeltaListener<T> l) {
+		deltaListeners.remove(l);
+	}
+
+	/**
+	 * Report pending changes, unless another thread is already doing that, in which case that
+	 * thread will also report the changes pending now.
+	 */
+	private void deliver() {
+		synchronized (this) {
+			if (delivering) {
+				return;
+			}
+			delivering = true;
+		}
+		boolean done = false;
+		try {
+			while (true) {
+				List<Delta<T>> deltas;
+				boolean valueChanged = false;
+				synchronized (this) {
+					if (pending.isEmpty()) {
+						delivering = false;
+						done = true;
+						return;
+					}
+					deltas = new ArrayList<Delta<T>>(pending);
+					pending.clear();
+					for (Delta<T> d : deltas) {
+						valueChanged = valueChanged || d.target==null;
+					}
+					if (valueChanged && !valueListeners.isEmpty()) {
+						value = snapshot();
+					} else {
+						valueChanged = false;
+					}
+				}
+				//Careful... call listeners only after releasing the monitor, they could do anything.
+				for (Delta<T> d : deltas) {
+					if (d.target!=null) {
+						deltaListeners.add(d.target);
+						d.target.setChanged(this, d.added, d.removed);
+					} else {
+						for (Object l : deltaListeners.getListeners()) {
+							@SuppressWarnings("unchecked")
+							SetDeltaListener<T> dl = (SetDeltaListener<T>) l;
+							dl.setChanged(this, d.added, d.removed);
+						}
+					}
+				}
+				if (valueChanged) {
+					changed();
+				}
+			}
+		} finally {
+			if (!done) {
+				//A listener threw an exception. Let the next change report whatever is still pending.
+				synchronized (this) {
+					delivering = false;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Elements added and removed by a change. If target isn't null, the delta is the first
+	 * event for a newly added delta listener, and is only reported to that listener.
+	 */
+	private static class Delta<T> {
+		final SetDeltaListener<T> target;
+		final Set<T> added;
+		final Set<T> removed;
+
+		Delta(SetDeltaListener<T> target, Set<T> added, Set<T> removed) {
+			this.target = target;
+			this.added = Collections.unmodifiableSet(added);
+			this.removed = Collections.unmodifiableSet(removed);
+		}
+	}
+
+}
@@ -17,6 +17,9 @@ import org.eclipse.swt.widgets.Display;
  * wants to execute upon receiving a 'gotValue' event is required 
  * to run in the UIThread (i.e. typically this is code that needs to
  * update or read widgets in the UI).
+ * <p>
+ * The thread changing the value blocks until the UI thread has processed
+ * it. See {@link AsyncUIValueListener} for a variant that doesn't.
  */
 public abstract class UIValueListener<T> implements ValueListener<T> {
 	
@@ -0,0 +1,19 @@
+package org.springsource.ide.eclipse.commons.quicksearch.test;
+
+import junit.framework.Test;
+import junit.framework.TestSuite;
+
+public class AllQuickSearchTests {
+
+	public static Test suite() {
+		TestSuite suite = new TestSuite(AllQuickSearchTests.class.getName());
+		suite.addTestSuite(PrioriTreeTest.class);
+		suite.addTestSuite(QuickTextQueryTest.class);
+		suite.addTestSuite(MatchStoreTest.class);
+		suite.addTestSuite(ByteLineReaderTest.class);
+		suite.addTestSuite(TrigramIndexTest.class);
+		suite.addTestSuite(ResourceWalkerTest.class);
+		return suite;
+	}
+
+}
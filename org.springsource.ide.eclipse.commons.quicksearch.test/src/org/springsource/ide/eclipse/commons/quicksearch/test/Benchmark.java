@@ -0,0 +1,87 @@
+package org.springsource.ide.eclipse.commons.quicksearch.test;
+
+import java.util.Arrays;
+
+/**
+ * Minimal benchmark harness. Runs an operation a number of times to warm up the JIT, then
+ * times a number of measured runs and reports the median throughput.
+ * <p>
+ * This plays the role JMH would play in a plain Maven build. JMH doesn't fit in a Tycho build
+ * (it needs annotation processing and a shaded executable jar, while the code under test needs an
+ * OSGi runtime and a workspace), so the benchmarks run as a plugin test instead.
+ */
+public class Benchmark {
+
+	/**
+	 * Operation to be measured.
+	 */
+	public interface Operation {
+		/**
+		 * @return The number of units of work done (e.g. lines searched), used to compute throughput.
+		 */
+		long run() throws Exception;
+	}
+
+	private final String name;
+	private int warmups = 5;
+	private int iterations = 10;
+
+	public Benchmark(String name) {
+		this.name = name;
+	}
+
+	public Benchmark warmups(int warmups) {
+		this.warmups = warmups;
+		return this;
+	}
+
+	public Benchmark iterations(int iterations) {
+		this.iterations = iterations;
+		return this;
+	}
+
+	/**
+	 * Measure throughput of an operation.
+	 *
+	 * @return median number of units per second.
+	 */
+	public double throughput(String unit, Operation op) throws Exception {
+		for (int i = 0; i < warmups; i++) {
+			op.run();
+		}
+		double[] rates = new double[iterations];
+		for (int i = 0; i < iterations; i++) {
+			long start = System.nanoTime();
+			long units = op.run();
+			long nanos = Math.max(1, System.nanoTime()-start);
+			rates[i] = units * 1e9 / nanos;
+		}
+		double median = median(rates);
+		report(String.format("%,.0f %s/sec", median, unit));
+		return median;
+	}
+
+	/**
+	 * Report the median of a number of measurements, e.g. latencies measured by the caller.
+	 */
+	public double median(String unit, double[] samples) {
+		double median = median(samples);
+		report(String.format("%,.2f %s", median, unit));
+		return median;
+	}
+
+	private void report(String result) {
+		System.out.println("BENCHMARK " + name + ": " + result);
+	}
+
+	private static double median(double[] samples) {
+		double[] sorted = samples.clone();
+		Arrays.sort(sorted);
+		int mid = sorted.length/2;
+		if (sorted.length%2==0) {
+			return (sorted[mid-1]+sorted[mid])/2;
+		}
+		return sorted[mid];
+	}
+
+}
@@ -0,0 +1,172 @@
+package org.springsource.ide.eclipse.commons.quicksearch.test;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import org.springsource.ide.eclipse.commons.quicksearch.util.ByteLineReader;
+import org.springsource.ide.eclipse.commons.quicksearch.util.LineReader;
+
+/**
+ * Checks that {@link ByteLineReader} finds the same lines, at the same char offsets, as a
+ * {@link LineReader} reading the decoded stream.
+ */
+public class ByteLineReaderTest extends TestCase {
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+	private static final Charset LATIN_1 = Charset.forName("ISO-8859-1");
+
+	private static final int MAX_LINE_LENGTH = 1024 * 1024;
+
+	/**
+	 * Text of a line and the offset of its start, in chars and (for ByteLineReader) in bytes.
+	 */
+	private static class Line {
+		final String text;
+		final int offset;
+		final int byteOffset;
+
+		Line(String text, int offset, int byteOffset) {
+			this.text = text;
+			this.offset = offset;
+			this.byteOffset = byteOffset;
+		}
+
+		@Override
+		public String toString() {
+			return offset+": "+text;
+		}
+	}
+
+	public void testAscii() throws Exception {
+		assertSameLines("");
+		assertSameLines("hello");
+		assertSameLines("hello\nworld\n");
+		assertSameLines("\n\n\nabc\n\n");
+	}
+
+	public void testLineTerminators() throws Exception {
+		assertSameLines("a\r\nb\rc\nd");
+		assertSameLines("\r\n\r\n\r\r\n\n\r");
+		assertSameLines("\u00e9\r\n\u20ac\r\ud83d\ude00\n\r\nx");
+	}
+
+	public void testMultiByte() throws Exception {
+		assertSameLines("caf\u00e9\n\u00e9\u00e8\u00ea\n");
+		assertSameLines("\u20ac 10\nprice: 10\u20ac\n");
+		assertSameLines("\ud83d\ude00 smile\n\ud83d\ude00\ud83d\ude01\nabc\n");
+		assertSameLines("mix \u00e9 \u20ac \ud83d\ude00 \u4e2d\u6587\nend");
+	}
+
+	public void testMalformed() throws Exception {
+		//Lone continuation bytes
+		assertSameLines(bytes(0x80, 0xBF, '\n', 'a', 0x80, 'b', '\n'));
+		//Bytes that can't start a sequence
+		assertSameLines(bytes(0xC0, 0xC1, 0xF5, 0xF8, 0xFE, 0xFF, '\n', 'a', '\n'));
+		//Overlong
+		assertSameLines(bytes(0xC0, 0xAF, '\n', 0xE0, 0x80, 0xAF, '\n', 0xF0, 0x80, 0x80, 0xAF, '\n'));
+		//Surrogates and beyond U+10FFFF
+		assertSameLines(bytes(0xED, 0xA0, 0x80, '\n', 0xF4, 0x90, 0x80, 0x80, '\n'));
+		//Truncated sequences, before a line terminator, another sequence and the end of the stream
+		assertSameLines(bytes(0xE2, 0x82, '\n', 0xF0, 0x9F, 0x98, '\r', '\n', 0xE2, 0xC3, 0xA9, '\n', 0xE2, 0x82));
+		assertSameLines(bytes('a', 0xF0, 0x9F));
+	}
+
+	public void testLinesAcrossBufferBoundary() throws Exception {
+		Random random = new Random(17);
+		String[] pieces = { "a", "xyz", " ", "\u00e9", "\u20ac", "\ud83d\ude00", "\n", "\r\n", "\r" };
+		StringBuilder text = new StringBuilder();
+		while (text.length() < 300000) {
+			text.append(pieces[random.nextInt(pieces.length)]);
+		}
+		assertSameLines(text.toString());
+		//Some lines longer than the buffer.
+		StringBuilder longLines = new StringBuilder();
+		for (int i = 0; i < 3; i++) {
+			for (int j = 0; j < 30000; j++) {
+				longLines.append(pieces[random.nextInt(6)]);
+			}
+			longLines.append('\n');
+		}
+		assertSameLines(longLines.toString());
+	}
+
+	public void testRandomBytes() throws Exception {
+		Random random = new Random(23);
+		for (int i = 0; i < 20; i++) {
+			byte[] bytes = new byte[random.nextInt(200000)];
+			for (int j = 0; j < bytes.length; j++) {
+				int b = random.nextInt(5)==0 ? 0x80+random.nextInt(0x80) : 1+random.nextInt(0x7F);
+				bytes[j] = (byte) b;
+			}
+			assertSameLines(bytes);
+		}
+	}
+
+	public void testSingleByteCharset() throws Exception {
+		byte[] bytes = bytes('a', 0xE9, '\r', '\n', 0x80, 0xFF, '\n', 'b');
+		List<Line> expected = readChars(bytes, LATIN_1, 0);
+		assertLines(expected, readBytes(bytes, LATIN_1, 0, 0));
+	}
+
+	private static byte[] bytes(int... values) {
+		byte[] bytes = new byte[values.length];
+		for (int i = 0; i < values.length; i++) {
+			bytes[i] = (byte) values[i];
+		}
+		return bytes;
+	}
+
+	private void assertSameLines(String text) throws Exception {
+		assertSameLines(text.getBytes(UTF_8));
+	}
+
+	/**
+	 * Check lines and offsets read from the start of some UTF-8 bytes, and after skipping to
+	 * some of the lines.
+	 */
+	private void assertSameLines(byte[] bytes) throws Exception {
+		List<Line> expected = readChars(bytes, UTF_8, 0);
+		List<Line> actual = readBytes(bytes, UTF_8, 0, 0);
+		assertLines(expected, actual);
+		int step = Math.max(1, actual.size()/10);
+		for (int i = 0; i < actual.size(); i += step) {
+			Line from = actual.get(i);
+			assertLines(expected.subList(i, expected.size()), readBytes(bytes, UTF_8, from.byteOffset, from.offset));
+		}
+	}
+
+	private static void assertLines(List<Line> expected, List<Line> actual) {
+		assertEquals(expected.size(), actual.size());
+		for (int i = 0; i < expected.size(); i++) {
+			assertEquals("line "+i, expected.get(i).toString(), actual.get(i).toString());
+		}
+	}
+
+	private static List<Line> readChars(byte[] bytes, Charset charset, int skip) throws Exception {
+		LineReader reader = new LineReader(new InputStreamReader(new ByteArrayInputStream(bytes), charset), MAX_LINE_LENGTH);
+		reader.skipTo(skip);
+		List<Line> lines = new ArrayList<Line>();
+		String text;
+		while ((text = reader.readLine())!=null) {
+			lines.add(new Line(text, reader.getLastLineOffset(), -1));
+		}
+		return lines;
+	}
+
+	private static List<Line> readBytes(byte[] bytes, Charset charset, int skipBytes, int skipChars) throws Exception {
+		ByteLineReader reader = new ByteLineReader(new ByteArrayInputStream(bytes), charset, MAX_LINE_LENGTH);
+		reader.skipTo(skipBytes, skipChars);
+		List<Line> lines = new ArrayList<Line>();
+		while (reader.nextLine()) {
+			lines.add(new Line(reader.getLine(), reader.getLastLineOffset(), reader.getLastLineByteOffset()));
+		}
+		return lines;
+	}
+
+}
@@ -0,0 +1,78 @@
+package org.springsource.ide.eclipse.commons.quicksearch.test;
+
+import java.util.Iterator;
+
+import junit.framework.TestCase;
+
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.ResourcesPlugin;
+import org.eclipse.core.runtime.Path;
+import org.springsource.ide.eclipse.commons.quicksearch.core.LineItem;
+import org.springsource.ide.eclipse.commons.quicksearch.core.MatchStore;
+
+public class MatchStoreTest extends TestCase {
+
+	private IFile fileA = file("/project/a.txt");
+	private IFile fileB = file("/project/b.txt");
+
+	public void testAddAndGet() {
+		MatchStore store = new MatchStore();
+		assertTrue(store.add(new LineItem(fileA, "hello", 3, 20)));
+		assertTrue(store.add(new LineItem(fileB, "world", 3, 10)));
+		assertFalse(store.add(new LineItem(fileA, "hello again", 3, 20)));
+		assertEquals(2, store.size());
+
+		LineItem first = store.get(0);
+		assertEquals(fileA, first.getFile());
+		assertEquals("hello", first.getText());
+		assertEquals(3, first.getLineNumber());
+		assertEquals(20, first.getOffset());
+		assertEquals("world", store.get(1).getText());
+	}
+
+	public void testRemove() {
+		MatchStore store = new MatchStore();
+		for (int line = 1; line <= 100; line++) {
+			store.add(new LineItem(fileA, "line "+line, line, line*10));
+		}
+		for (int line = 1; line <= 100; line+=2) {
+			assertTrue(store.remove(new LineItem(fileA, "", line, 0)));
+		}
+		assertFalse(store.remove(new LineItem(fileA, "", 1, 0)));
+		assertFalse(store.remove(new LineItem(fileB, "", 2, 0)));
+		assertEquals(50, store.size());
+		assertEquals("line 2", store.get(0).getText());
+		assertEquals("line 100", store.get(49).getText());
+
+		//A removed line can be added again.
+		assertTrue(store.add(new LineItem(fileA, "line 1", 1, 10)));
+		assertEquals("line 1", store.get(50).getText());
+	}
+
+	public void testIteratorRemoveAndCopy() {
+		MatchStore store = new MatchStore();
+		for (int line = 1; line <= 10; line++) {
+			store.add(new LineItem(line%2==0 ? fileA : fileB, "line "+line, line, 0));
+		}
+		Iterator<LineItem> iter = store.iterator();
+		while (iter.hasNext()) {
+			if (iter.next().getFile().equals(fileB)) {
+				iter.remove();
+			}
+		}
+		MatchStore copy = new MatchStore(store);
+		store.clear();
+		assertEquals(0, store.size());
+		assertEquals(5, copy.size());
+		int line = 2;
+		for (LineItem item : copy) {
+			assertEquals("line "+line, item.getText());
+			line += 2;
+		}
+	}
+
+	private static IFile file(String path) {
+		return ResourcesPlugin.getWorkspace().getRoot().getFile(new Path(path));
+	}
+
+}
@@ -5,6 +5,7 @@ import static org.springsource.ide.eclipse.commons.quicksearch.core.priority.Pri
 import junit.framework.TestCase;
 
 import org.eclipse.core.runtime.Path;
+import org.springsource.ide.eclipse.commons.quicksearch.core.priority.CompiledPrioriTree;
 import org.springsource.ide.eclipse.commons.quicksearch.core.priority.PrioriTree;
 
 public class PrioriTreeTest extends TestCase {
@@ -141,6 +142,28 @@ public class PrioriTreeTest extends TestCase {
 		checkPriority(PRIORITY_IGNORE,  "/promoted/other/big.zip");
 	}
 	
+	public void testCompiledTreeIsACopy() {
+		setPriority("/foo/bar", 50.0);
+		CompiledPrioriTree compiled = tree.compile();
+		setPriority("/foo/zor", 100.0);
+		assertEquals(50.0, compiled.priority(new MockResource("/foo")));
+		assertEquals(PRIORITY_DEFAULT, compiled.priority(new MockResource("/foo/zor")));
+		assertEquals(PRIORITY_IGNORE, compiled.priority(new MockResource("/foo/bar/big.zip")));
+	}
+
+	public void testCompiledTreeWithManyPaths() {
+		for (int i = 0; i < 100; i++) {
+			setPriority("/project"+i%7+"/src/pkg"+i, i);
+		}
+		for (int i = 0; i < 100; i++) {
+			String path = "/project"+i%7+"/src/pkg"+i;
+			checkPriority(i, path);
+			checkPriority(i, path+"/nested/File.java");
+		}
+		checkPriority(PRIORITY_DEFAULT, "/project1/other");
+		checkPriority(PRIORITY_DEFAULT, "/unrelated/src/pkg1");
+	}
+
 	private void setPriority(String pathStr, double pri) {
 		tree.setPriority(new Path(pathStr), pri);
 	}
@@ -148,6 +171,9 @@ public class PrioriTreeTest extends TestCase {
 	private void checkPriority(double expected, String pathStr) {
 		assertEquals(pathStr,
 				expected, tree.priority(new MockResource(pathStr)));
+		//The compiled form of the tree should always agree with the tree itself.
+		assertEquals("compiled: "+pathStr,
+				expected, tree.compile().priority(new MockResource(pathStr)));
 	}
 	
 }
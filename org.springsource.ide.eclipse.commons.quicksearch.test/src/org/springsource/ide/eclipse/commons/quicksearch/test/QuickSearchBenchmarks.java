@@ -0,0 +1,267 @@
+package org.springsource.ide.eclipse.commons.quicksearch.test;
+
+import java.io.ByteArrayInputStream;
+import java.io.StringReader;
+import java.nio.charset.Charset;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import junit.framework.TestCase;
+
+import org.eclipse.core.resources.IFolder;
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.IWorkspace;
+import org.eclipse.core.resources.IWorkspaceRunnable;
+import org.eclipse.core.resources.ResourcesPlugin;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.Path;
+import org.springsource.ide.eclipse.commons.quicksearch.core.ByteLiteralMatcher;
+import org.springsource.ide.eclipse.commons.quicksearch.core.LineItem;
+import org.springsource.ide.eclipse.commons.quicksearch.core.QuickTextQuery;
+import org.springsource.ide.eclipse.commons.quicksearch.core.QuickTextSearchRequestor;
+import org.springsource.ide.eclipse.commons.quicksearch.core.QuickTextSearcher;
+import org.springsource.ide.eclipse.commons.quicksearch.core.priority.DefaultPriorityFunction;
+import org.springsource.ide.eclipse.commons.quicksearch.core.priority.PrioriTree;
+import org.springsource.ide.eclipse.commons.quicksearch.core.priority.PriorityFunction;
+import org.springsource.ide.eclipse.commons.quicksearch.util.ByteLineReader;
+import org.springsource.ide.eclipse.commons.quicksearch.util.LineReader;
+
+/**
+ * Performance benchmarks for the quicksearch core. These are not part of {@link AllQuickSearchTests}.
+ * Run them with the 'benchmark' profile of this module:
+ * <pre>
+ *    mvn -Pbenchmark integration-test
+ * </pre>
+ * Each benchmark prints a line starting with 'BENCHMARK' to standard output. See {@link Benchmark}.
+ * <p>
+ * The searches run over synthetic text. The end-to-end benchmarks use a generated project
+ * with FILES files of LINES_PER_FILE lines each, on the local file system.
+ */
+public class QuickSearchBenchmarks extends TestCase {
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	private static final String NEEDLE = "quicksearchNeedle";
+
+	/**
+	 * One in this many lines of the synthetic text contains the NEEDLE.
+	 */
+	private static final int NEEDLE_FREQUENCY = 400;
+
+	private static final int TEXT_LINES = 100000;
+
+	private static final String PROJECT_NAME = "quicksearch-benchmark";
+	private static final int FOLDERS = 20;
+	private static final int FILES = 2000;
+	private static final int LINES_PER_FILE = 100;
+
+	/**
+	 * Number of results the end-to-end benchmark waits for. This is the searcher's default result limit.
+	 */
+	private static final int RESULTS = 200;
+
+	private static final String[] WORDS = {
+		"public", "static", "final", "int", "return", "this", "value", "String", "import", "class",
+		"for", "while", "new", "if", "else", "null", "true", "false", "getName", "setValue",
+		"quick", "search", "needle", "haystack", "Lorem", "ipsum", "dolor", "amet", "{", "}", "=", ";"
+	};
+
+	private static String text;
+	private static byte[] bytes;
+
+	/**
+	 * Prevents the JIT from optimizing away the work being measured.
+	 */
+	private static volatile long sink;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		if (text==null) {
+			text = generateText(new Random(42), TEXT_LINES, 0);
+			bytes = text.getBytes(UTF_8);
+		}
+	}
+
+	public void testLiteralLinesPerSecond() throws Exception {
+		charSearch("literal", new QuickTextQuery(NEEDLE, true));
+	}
+
+	public void testCaseInsensitiveLinesPerSecond() throws Exception {
+		charSearch("case-insensitive", new QuickTextQuery(NEEDLE.toUpperCase(), false));
+	}
+
+	public void testWildcardLinesPerSecond() throws Exception {
+		charSearch("wildcard", new QuickTextQuery("quick*Nee?le", true));
+	}
+
+	public void testLiteralBytesLinesPerSecond() throws Exception {
+		final ByteLiteralMatcher matcher = new QuickTextQuery(NEEDLE, true).getByteMatcher(UTF_8);
+		assertNotNull(matcher);
+		new Benchmark("search bytes, literal").throughput("lines", new Benchmark.Operation() {
+			public long run() throws Exception {
+				ByteLineReader lr = new ByteLineReader(new ByteArrayInputStream(bytes), UTF_8, LineReader.DEFAULT_MAX_LINE_LENGTH);
+				long lines = 0;
+				int found = 0;
+				while (lr.nextLine()) {
+					if (matcher.indexOf(lr.getBuffer(), lr.getLineStart(), lr.getLineEnd())>=0) {
+						found++;
+					}
+					lines++;
+				}
+				assertEquals(TEXT_LINES/NEEDLE_FREQUENCY, found);
+				sink += found;
+				return lines;
+			}
+		});
+	}
+
+	public void testPrioriTreeLookup() throws Exception {
+		PrioriTree tree = PrioriTree.create();
+		Random random = new Random(7);
+		for (int i = 0; i < 200; i++) {
+			tree.setPriority(new Path("/project"+random.nextInt(20)+"/src/pkg"+random.nextInt(50)), random.nextInt(100));
+		}
+		final MockResource[] resources = new MockResource[1000];
+		for (int i = 0; i < resources.length; i++) {
+			resources[i] = new MockResource("/project"+random.nextInt(25)+"/src/pkg"+random.nextInt(60)+"/sub/File"+i+".java");
+		}
+		priorityLookups("PrioriTree.priority", tree, resources);
+		priorityLookups("CompiledPrioriTree.priority", tree.compile(), resources);
+	}
+
+	private void priorityLookups(String name, final PriorityFunction priorities, final MockResource[] resources) throws Exception {
+		new Benchmark(name).throughput("lookups", new Benchmark.Operation() {
+			public long run() throws Exception {
+				double total = 0;
+				for (int rep = 0; rep < 100; rep++) {
+					for (MockResource r : resources) {
+						total += priorities.priority(r);
+					}
+				}
+				sink += (long) total;
+				return 100L * resources.length;
+			}
+		});
+	}
+
+	public void testEndToEnd() throws Exception {
+		createSyntheticProject();
+		int threads = Math.min(4, Runtime.getRuntime().availableProcessors());
+		endToEnd(1);
+		if (threads>1) {
+			endToEnd(threads);
+		}
+	}
+
+	private void endToEnd(int threads) throws Exception {
+		int warmups = 2;
+		int iterations = 5;
+		double[] firstResult = new double[iterations];
+		double[] allResults = new double[iterations];
+		for (int i = 0; i < warmups+iterations; i++) {
+			final long start = System.nanoTime();
+			final AtomicLong firstTime = new AtomicLong();
+			final long[] lastTime = new long[1]; //Read after 'done' is counted down, by the thread that wrote it.
+			final AtomicInteger count = new AtomicInteger();
+			final CountDownLatch done = new CountDownLatch(1);
+			QuickTextSearcher searcher = new QuickTextSearcher(new QuickTextQuery(NEEDLE, true), new DefaultPriorityFunction(),
+					LineReader.DEFAULT_MAX_LINE_LENGTH, null, null, threads, new QuickTextSearchRequestor() {
+				@Override
+				public void add(LineItem match) {
+					int n = count.incrementAndGet();
+					if (n==1) {
+						firstTime.set(System.nanoTime());
+					}
+					if (n==RESULTS) {
+						lastTime[0] = System.nanoTime();
+						done.countDown();
+					}
+				}
+			});
+			try {
+				assertTrue("Timed out waiting for results", done.await(5, TimeUnit.MINUTES));
+			} finally {
+				searcher.cancel();
+			}
+			if (i>=warmups) {
+				firstResult[i-warmups] = (firstTime.get()-start) / 1e6;
+				allResults[i-warmups] = (lastTime[0]-start) / 1e6;
+			}
+		}
+		new Benchmark("time to first result, "+threads+" thread(s)").median("ms", firstResult);
+		new Benchmark("time to "+RESULTS+" results, "+threads+" thread(s)").median("ms", allResults);
+	}
+
+	/**
+	 * Create the project used by the end-to-end benchmarks, unless it already exists.
+	 */
+	private void createSyntheticProject() throws CoreException {
+		IWorkspace workspace = ResourcesPlugin.getWorkspace();
+		final IProject project = workspace.getRoot().getProject(PROJECT_NAME);
+		if (project.exists()) {
+			return;
+		}
+		workspace.run(new IWorkspaceRunnable() {
+			public void run(IProgressMonitor monitor) throws CoreException {
+				project.create(null);
+				project.open(null);
+				Random random = new Random(13);
+				int filesPerFolder = FILES/FOLDERS;
+				for (int f = 0; f < FOLDERS; f++) {
+					IFolder folder = project.getFolder("folder"+f);
+					folder.create(true, true, null);
+					for (int i = 0; i < filesPerFolder; i++) {
+						int firstLine = (f*filesPerFolder+i)*LINES_PER_FILE;
+						String contents = generateText(random, LINES_PER_FILE, firstLine);
+						folder.getFile("File"+i+".txt").create(new ByteArrayInputStream(contents.getBytes(UTF_8)), true, null);
+					}
+				}
+			}
+		}, null);
+	}
+
+	private void charSearch(String name, final QuickTextQuery query) throws Exception {
+		new Benchmark("search chars, "+name).throughput("lines", new Benchmark.Operation() {
+			public long run() throws Exception {
+				LineReader lr = new LineReader(new StringReader(text), LineReader.DEFAULT_MAX_LINE_LENGTH);
+				long lines = 0;
+				int found = 0;
+				while (lr.nextLine()) {
+					if (query.matchItem(lr.getBuffer(), lr.getLineStart(), lr.getLineEnd())) {
+						found++;
+					}
+					lines++;
+				}
+				assertEquals(TEXT_LINES/NEEDLE_FREQUENCY, found);
+				sink += found;
+				return lines;
+			}
+		});
+	}
+
+	/**
+	 * Generate lines of random words. Lines whose global line number is a multiple of NEEDLE_FREQUENCY
+	 * contain the NEEDLE.
+	 */
+	private static String generateText(Random random, int lines, int firstLine) {
+		StringBuilder buf = new StringBuilder();
+		for (int i = 0; i < lines; i++) {
+			int words = 2+random.nextInt(12);
+			int needleAt = (firstLine+i)%NEEDLE_FREQUENCY==0 ? random.nextInt(words) : -1;
+			for (int w = 0; w < words; w++) {
+				if (w>0) {
+					buf.append(' ');
+				}
+				buf.append(w==needleAt ? NEEDLE : WORDS[random.nextInt(WORDS.length)]);
+			}
+			buf.append('\n');
+		}
+		return buf.toString();
+	}
+
+}
@@ -0,0 +1,69 @@
+package org.springsource.ide.eclipse.commons.quicksearch.test;
+
+import java.io.StringReader;
+
+import junit.framework.TestCase;
+
+import org.springsource.ide.eclipse.commons.quicksearch.core.QuickTextQuery;
+import org.springsource.ide.eclipse.commons.quicksearch.util.LineReader;
+
+public class QuickTextQueryTest extends TestCase {
+
+	public void testLiteralCaseSensitive() {
+		QuickTextQuery q = new QuickTextQuery("Foo", true);
+		assertMatch(q, "a Foo b");
+		assertMatch(q, "Foo");
+		assertNoMatch(q, "a foo b");
+		assertNoMatch(q, "Fo");
+		assertNoMatch(q, "");
+	}
+
+	public void testLiteralCaseInsensitive() {
+		QuickTextQuery q = new QuickTextQuery("fOO", false);
+		assertMatch(q, "a Foo b");
+		assertMatch(q, "FOO");
+		assertMatch(q, "xxxfoo");
+		assertNoMatch(q, "fo o");
+	}
+
+	public void testWildcards() {
+		QuickTextQuery q = new QuickTextQuery("a*c?e", true);
+		assertMatch(q, "abbbcde");
+		assertMatch(q, "xxacxe");
+		assertNoMatch(q, "abbbce");
+	}
+
+	public void testRegexpCharsAreLiteral() {
+		QuickTextQuery q = new QuickTextQuery("a.b(", true);
+		assertMatch(q, "x a.b( y");
+		assertNoMatch(q, "axb(");
+	}
+
+	public void testMatchInLineReaderBuffer() throws Exception {
+		QuickTextQuery q = new QuickTextQuery("needle", false);
+		LineReader lr = new LineReader(new StringReader("hay\r\nhay NEEDLE hay\nneedl\rneedle"));
+		int matches = 0;
+		String lastMatch = null;
+		while (lr.nextLine()) {
+			if (q.matchItem(lr.getBuffer(), lr.getLineStart(), lr.getLineEnd())) {
+				matches++;
+				lastMatch = lr.getLine() + "@" + lr.getLastLineOffset();
+			}
+		}
+		assertEquals(2, matches);
+		assertEquals("needle@26", lastMatch);
+	}
+
+	private void assertMatch(QuickTextQuery q, String text) {
+		assertTrue(q + " should match '" + text + "'", q.matchItem(text));
+		char[] buf = ("<<" + text + ">>").toCharArray();
+		assertTrue(q + " should match '" + text + "' in buffer", q.matchItem(buf, 2, buf.length - 2));
+	}
+
+	private void assertNoMatch(QuickTextQuery q, String text) {
+		assertFalse(q + " should not match '" + text + "'", q.matchItem(text));
+		char[] buf = ("<<" + text + ">>").toCharArray();
+		assertFalse(q + " should not match '" + text + "' in buffer", q.matchItem(buf, 2, buf.length - 2));
+	}
+
+}
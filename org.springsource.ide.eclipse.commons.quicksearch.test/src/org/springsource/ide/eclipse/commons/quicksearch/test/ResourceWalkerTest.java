@@ -0,0 +1,145 @@
+package org.springsource.ide.eclipse.commons.quicksearch.test;
+
+import java.io.ByteArrayInputStream;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IFolder;
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.resources.ResourcesPlugin;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.springsource.ide.eclipse.commons.quicksearch.core.ResourceWalker;
+import org.springsource.ide.eclipse.commons.quicksearch.core.priority.PriorityFunction;
+
+public class ResourceWalkerTest extends TestCase {
+
+	private static final int THREADS = 4;
+
+	private IProject project;
+	private Set<IFile> files;
+
+	/**
+	 * Counts the visits of each file in the test project. Can be told to suspend itself after
+	 * a number of visits.
+	 */
+	private class CountingWalker extends ResourceWalker {
+		final ConcurrentHashMap<IFile, AtomicInteger> visits = new ConcurrentHashMap<IFile, AtomicInteger>();
+		final Set<Thread> threads = Collections.synchronizedSet(new HashSet<Thread>());
+		final AtomicInteger count = new AtomicInteger();
+		volatile int suspendAfter = -1;
+
+		CountingWalker() {
+			setParallelism(THREADS);
+			setPriorityFun(new PriorityFunction() {
+				@Override
+				public double priority(IResource r) {
+					//Makes listing a folder slow, so other workers often find the queue empty while
+					//more work may still be added.
+					pause();
+					//Stay out of other projects in the test workspace.
+					return project.equals(r.getProject()) ? PRIORITY_DEFAULT : PRIORITY_IGNORE;
+				}
+			});
+		}
+
+		@Override
+		protected void visit(IFile f, IProgressMonitor m) {
+			threads.add(Thread.currentThread());
+			AtomicInteger fileVisits = new AtomicInteger();
+			AtomicInteger existing = visits.putIfAbsent(f, fileVisits);
+			(existing!=null ? existing : fileVisits).incrementAndGet();
+			//Give the other workers a chance to overlap with this one.
+			pause();
+			if (count.incrementAndGet()==suspendAfter) {
+				suspend();
+			}
+		}
+
+		void assertVisitedOnce() {
+			for (IFile f : files) {
+				AtomicInteger n = visits.get(f);
+				assertEquals(f.toString(), 1, n==null ? 0 : n.get());
+			}
+			assertEquals(files.size(), visits.size());
+		}
+	}
+
+	@Override
+	protected void setUp() throws Exception {
+		project = ResourcesPlugin.getWorkspace().getRoot().getProject("ResourceWalkerTest");
+		if (!project.exists()) {
+			project.create(null);
+		}
+		project.open(null);
+		files = new HashSet<IFile>();
+		for (int i = 0; i < 10; i++) {
+			IFolder folder = project.getFolder("folder"+i);
+			folder.create(true, true, null);
+			IFolder nested = folder.getFolder("nested");
+			nested.create(true, true, null);
+			for (int j = 0; j < 30; j++) {
+				files.add(file(folder.getFile("file"+j+".txt")));
+			}
+			for (int j = 0; j < 10; j++) {
+				files.add(file(nested.getFile("file"+j+".txt")));
+			}
+		}
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		project.delete(true, true, null);
+	}
+
+	public void testParallelWalkVisitsEachFileOnce() throws Exception {
+		CountingWalker walker = new CountingWalker();
+		walker.schedule();
+		walker.join();
+		assertTrue(walker.isDone());
+		assertTrue(walker.isComplete());
+		walker.assertVisitedOnce();
+		assertTrue("Expected several worker threads, got "+walker.threads, walker.threads.size()>1);
+	}
+
+	public void testSuspendAndResumeLosesNoWork() throws Exception {
+		CountingWalker walker = new CountingWalker();
+		int suspensions = 0;
+		walker.suspendAfter = 50;
+		walker.schedule();
+		walker.join();
+		while (!walker.isDone()) {
+			suspensions++;
+			assertFalse(walker.isComplete());
+			//Workers finish the file they're visiting, but take no more work.
+			int count = walker.count.get();
+			assertTrue("Visited "+count, count>=walker.suspendAfter && count<walker.suspendAfter+THREADS);
+			walker.suspendAfter = count+50;
+			walker.resume();
+			walker.join();
+		}
+		assertTrue(suspensions>1);
+		assertTrue(walker.isComplete());
+		walker.assertVisitedOnce();
+	}
+
+	private static void pause() {
+		try {
+			Thread.sleep(1);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private static IFile file(IFile file) throws Exception {
+		file.create(new ByteArrayInputStream(file.getName().getBytes("UTF-8")), true, null);
+		return file;
+	}
+
+}
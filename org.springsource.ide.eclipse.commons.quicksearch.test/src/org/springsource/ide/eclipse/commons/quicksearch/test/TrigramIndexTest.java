@@ -0,0 +1,157 @@
+package org.springsource.ide.eclipse.commons.quicksearch.test;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.ResourcesPlugin;
+import org.springsource.ide.eclipse.commons.quicksearch.core.QuickTextQuery;
+import org.springsource.ide.eclipse.commons.quicksearch.core.index.TrigramIndex;
+
+public class TrigramIndexTest extends TestCase {
+
+	private IProject project;
+	private File store;
+
+	@Override
+	protected void setUp() throws Exception {
+		project = ResourcesPlugin.getWorkspace().getRoot().getProject("TrigramIndexTest");
+		if (!project.exists()) {
+			project.create(null);
+		}
+		project.open(null);
+		store = File.createTempFile("trigrams", ".idx");
+		store.delete();
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		project.delete(true, true, null);
+		store.delete();
+		new File(store.getPath()+".tmp").delete();
+	}
+
+	public void testRequiredTrigrams() {
+		assertNull(required(""));
+		assertNull(required("ab"));
+		assertTrigrams(required("abc"), "abc");
+		assertTrigrams(required("abcd"), "abc", "bcd");
+		//Case folded
+		assertTrigrams(required("ABC"), "abc");
+		//Wildcards end a literal segment, segments shorter than 3 chars don't constrain anything.
+		assertNull(required("ab*cd"));
+		assertNull(required("ab?cd"));
+		assertTrigrams(required("abc*de?fgh"), "abc", "fgh");
+		assertTrigrams(required("*abcd?"), "abc", "bcd");
+	}
+
+	public void testMayContain() throws Exception {
+		IFile file = file("a.txt", "hello world\nfoo bar\r\n");
+		TrigramIndex index = new TrigramIndex(null);
+		assertTrue(index.mayContain(file, required("xyz"))); //Not indexed
+		assertTrue(index.mayContain(file, null));
+
+		index.index(file);
+		assertTrue(index.isUpToDate(file));
+		assertTrue(index.mayContain(file, required("world")));
+		assertTrue(index.mayContain(file, required("O W")));
+		assertTrue(index.mayContain(file, required("f*bar")));
+		assertFalse(index.mayContain(file, required("xyz")));
+		//Trigrams don't span line breaks.
+		assertFalse(index.mayContain(file, required("ldf")));
+		assertFalse(index.mayContain(file, required("world*xyz")));
+	}
+
+	public void testStaleEntries() throws Exception {
+		IFile file = file("a.txt", "hello world\n");
+		TrigramIndex index = new TrigramIndex(null);
+		index.index(file);
+		assertFalse(index.mayContain(file, required("xyz")));
+
+		file.setContents(new ByteArrayInputStream("xyz\n".getBytes("UTF-8")), true, false, null);
+		assertFalse(index.isUpToDate(file));
+		assertTrue(index.mayContain(file, required("xyz")));
+
+		index.index(file);
+		assertTrue(index.isUpToDate(file));
+		assertTrue(index.mayContain(file, required("xyz")));
+		assertFalse(index.mayContain(file, required("world")));
+
+		//A different charset doesn't change the stamp but the entry must still be redone.
+		file.setCharset("UTF-16", null);
+		assertFalse(index.isUpToDate(file));
+	}
+
+	public void testRemove() throws Exception {
+		IFile a = file("a.txt", "hello\n");
+		IFile b = file("b.txt", "hello\n");
+		TrigramIndex index = new TrigramIndex(null);
+		index.index(a);
+		index.index(b);
+		assertEquals(2, index.size());
+		index.remove(a.getFullPath());
+		assertFalse(index.isUpToDate(a));
+		assertTrue(index.mayContain(a, required("xyz")));
+		index.removeAll(project.getFullPath());
+		assertEquals(0, index.size());
+	}
+
+	public void testSaveAndLoad() throws Exception {
+		IFile a = file("a.txt", "hello world\n");
+		IFile b = file("b.txt", "foo bar\n");
+		TrigramIndex index = new TrigramIndex(store);
+		index.index(a);
+		index.index(b);
+		index.save();
+		assertTrue(store.isFile());
+
+		TrigramIndex loaded = new TrigramIndex(store);
+		loaded.load();
+		assertEquals(2, loaded.size());
+		assertTrue(loaded.isUpToDate(a));
+		assertTrue(loaded.isUpToDate(b));
+		assertTrue(loaded.mayContain(a, required("world")));
+		assertFalse(loaded.mayContain(a, required("foo")));
+		assertTrue(loaded.mayContain(b, required("foo")));
+		assertFalse(loaded.mayContain(b, required("world")));
+	}
+
+	public void testLoadCorruptStore() throws Exception {
+		FileOutputStream out = new FileOutputStream(store);
+		try {
+			out.write(new byte[] { 0, 0, 0, 2, 0, 0, 0, 5, 1, 2 });
+		} finally {
+			out.close();
+		}
+		TrigramIndex index = new TrigramIndex(store);
+		index.load();
+		assertEquals(0, index.size());
+	}
+
+	private IFile file(String name, String contents) throws Exception {
+		IFile file = project.getFile(name);
+		file.create(new ByteArrayInputStream(contents.getBytes("UTF-8")), true, null);
+		file.setCharset("UTF-8", null);
+		return file;
+	}
+
+	private static int[] required(String query) {
+		return TrigramIndex.requiredTrigrams(new QuickTextQuery(query, true));
+	}
+
+	private static void assertTrigrams(int[] actual, String... expected) {
+		int[] trigrams = new int[expected.length];
+		for (int i = 0; i < expected.length; i++) {
+			String t = expected[i];
+			trigrams[i] = TrigramIndex.trigram(t.charAt(0), t.charAt(1), t.charAt(2));
+		}
+		Arrays.sort(trigrams);
+		assertTrue(Arrays.toString(actual), Arrays.equals(trigrams, actual));
+	}
+
+}
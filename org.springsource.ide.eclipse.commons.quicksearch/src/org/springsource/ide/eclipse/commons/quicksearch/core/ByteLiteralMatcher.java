@@ -0,0 +1,78 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Pivotal Software, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Pivotal Software, Inc. - initial API and implementation
+ *******************************************************************************/
+package org.springsource.ide.eclipse.commons.quicksearch.core;
+
+/**
+ * Like {@link LiteralMatcher} but searches for the encoded form of a literal directly in bytes.
+ * This only gives correct results for charsets where the encoded literal can only occur
+ * at character boundaries, and where US-ASCII characters are encoded as themselves
+ * (see {@link org.springsource.ide.eclipse.commons.quicksearch.util.ByteLineReader#supports(java.nio.charset.Charset)}).
+ * <p>
+ * Case insensitive matching folds only the bytes of US-ASCII letters, the same as
+ * {@link java.util.regex.Pattern#CASE_INSENSITIVE} does for chars.
+ */
+public class ByteLiteralMatcher {
+
+	private final byte[] pattern; //already case folded if case insensitive
+	private final boolean caseSensitive;
+	private final int[] shift = new int[256];
+
+	public ByteLiteralMatcher(byte[] encodedLiteral, boolean caseSensitive) {
+		this.caseSensitive = caseSensitive;
+		this.pattern = new byte[encodedLiteral.length];
+		for (int i = 0; i < pattern.length; i++) {
+			pattern[i] = fold(encodedLiteral[i]);
+		}
+		int m = pattern.length;
+		for (int i = 0; i < shift.length; i++) {
+			shift[i] = m;
+		}
+		for (int j = 0; j < m-1; j++) {
+			shift[pattern[j] & 0xFF] = m-1-j;
+		}
+	}
+
+	private byte fold(byte b) {
+		if (caseSensitive || b<'A' || b>'Z') {
+			return b;
+		}
+		return (byte) (b + ('a'-'A'));
+	}
+
+	/**
+	 * Find the first occurrence of the literal in text[start..end).
+	 * @return The index of the first match, or -1 if there is no match.
+	 */
+	public int indexOf(byte[] text, int start, int end) {
+		int m = pattern.length;
+		if (m==0) {
+			return start;
+		}
+		int last = m-1;
+		byte lastByte = pattern[last];
+		int i = start;
+		while (i+last < end) {
+			byte b = fold(text[i+last]);
+			if (b==lastByte) {
+				int j = last-1;
+				while (j>=0 && fold(text[i+j])==pattern[j]) {
+					j--;
+				}
+				if (j<0) {
+					return i;
+				}
+			}
+			i += shift[b & 0xFF];
+		}
+		return -1;
+	}
+
+}
@@ -0,0 +1,118 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Pivotal Software, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Pivotal Software, Inc. - initial API and implementation
+ *******************************************************************************/
+package org.springsource.ide.eclipse.commons.quicksearch.core;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.core.resources.IFile;
+
+/**
+ * A set of files that can only grow, and of which a read-only {@link Snapshot} can be taken in
+ * constant time. Since files are never removed, a snapshot is just the set together with its
+ * size at the time: the elements added after it have a higher insertion index and are ignored.
+ * <p>
+ * A set can start from a snapshot of another set, which is then shared rather than copied. To keep
+ * lookups fast, the elements of a long chain of snapshots are copied into the new set after all.
+ */
+class GrowingFileSet {
+
+	/**
+	 * Maximum number of snapshots a lookup may have to go through.
+	 */
+	private static final int MAX_DEPTH = 8;
+
+	/**
+	 * A read-only view of a {@link GrowingFileSet} as it was when the snapshot was taken.
+	 */
+	static final class Snapshot {
+		private final GrowingFileSet set;
+		private final int size;
+
+		private Snapshot(GrowingFileSet set, int size) {
+			this.set = set;
+			this.size = size;
+		}
+
+		public boolean contains(IFile f) {
+			return set.contains(f, size);
+		}
+	}
+
+	/**
+	 * Snapshot of the elements this set started with, or null.
+	 */
+	private final Snapshot base;
+	private final int depth;
+
+	/**
+	 * Elements added to this set, in order, and their index in that list.
+	 */
+	private final List<IFile> files = new ArrayList<IFile>();
+	private final Map<IFile, Integer> indexes = new HashMap<IFile, Integer>();
+
+	public GrowingFileSet() {
+		this(null);
+	}
+
+	/**
+	 * @param base Elements the set starts with, or null to start empty.
+	 */
+	public GrowingFileSet(Snapshot base) {
+		if (base!=null && base.set.depth>=MAX_DEPTH) {
+			base.set.addTo(this, base.size);
+			base = null;
+		}
+		this.base = base;
+		this.depth = base==null ? 0 : base.set.depth+1;
+	}
+
+	public synchronized void add(IFile f) {
+		if (!contains(f)) {
+			indexes.put(f, files.size());
+			files.add(f);
+		}
+	}
+
+	public synchronized boolean contains(IFile f) {
+		return contains(f, files.size());
+	}
+
+	public synchronized Snapshot snapshot() {
+		return new Snapshot(this, files.size());
+	}
+
+	/**
+	 * @return Whether the first 'size' elements added to this set, or the base, contain a file.
+	 */
+	private synchronized boolean contains(IFile f, int size) {
+		if (base!=null && base.contains(f)) {
+			return true;
+		}
+		Integer index = indexes.get(f);
+		return index!=null && index<size;
+	}
+
+	/**
+	 * Add the base and the first 'size' elements added to this set to another set.
+	 */
+	private synchronized void addTo(GrowingFileSet other, int size) {
+		if (base!=null) {
+			base.set.addTo(other, base.size);
+		}
+		for (int i = 0; i < size; i++) {
+			other.add(files.get(i));
+		}
+	}
+
+}
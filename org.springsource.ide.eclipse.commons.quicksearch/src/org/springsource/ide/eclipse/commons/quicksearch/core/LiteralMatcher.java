@@ -0,0 +1,115 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Pivotal Software, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Pivotal Software, Inc. - initial API and implementation
+ *******************************************************************************/
+package org.springsource.ide.eclipse.commons.quicksearch.core;
+
+/**
+ * Searches for a literal string using the Boyer-Moore-Horspool algorithm. The matcher
+ * is immutable and doesn't allocate anything while searching, so a single instance can be
+ * shared by multiple threads and used to scan text directly in a reader's char buffer.
+ * <p>
+ * Case insensitive matching folds only US-ASCII letters. This is the same as what
+ * {@link java.util.regex.Pattern#CASE_INSENSITIVE} does, so the results are identical
+ * to the regexp based matching used for queries with wildcards.
+ */
+public class LiteralMatcher {
+
+	private static final int TABLE_SIZE = 256;
+
+	private final char[] pattern; //already case folded if case insensitive
+	private final boolean caseSensitive;
+
+	/**
+	 * Horspool 'bad character' shift table. Characters are hashed into the table using their
+	 * low 8 bits. Where characters collide the table keeps the smallest shift, so collisions
+	 * may make the search a little slower, but never incorrect.
+	 */
+	private final int[] shift = new int[TABLE_SIZE];
+
+	public LiteralMatcher(String literal, boolean caseSensitive) {
+		this.caseSensitive = caseSensitive;
+		this.pattern = new char[literal.length()];
+		for (int i = 0; i < pattern.length; i++) {
+			pattern[i] = fold(literal.charAt(i));
+		}
+		int m = pattern.length;
+		for (int i = 0; i < TABLE_SIZE; i++) {
+			shift[i] = m;
+		}
+		for (int j = 0; j < m-1; j++) {
+			shift[pattern[j] & 0xFF] = m-1-j;
+		}
+	}
+
+	private char fold(char c) {
+		if (caseSensitive || c<'A' || c>'Z') {
+			return c;
+		}
+		return (char) (c + ('a'-'A'));
+	}
+
+	/**
+	 * Find the first occurrence of the literal in text[start..end).
+	 * @return The index of the first match, or -1 if there is no match.
+	 */
+	public int indexOf(char[] text, int start, int end) {
+		int m = pattern.length;
+		if (m==0) {
+			return start;
+		}
+		int last = m-1;
+		char lastChar = pattern[last];
+		int i = start;
+		while (i+last < end) {
+			char c = fold(text[i+last]);
+			if (c==lastChar) {
+				int j = last-1;
+				while (j>=0 && fold(text[i+j])==pattern[j]) {
+					j--;
+				}
+				if (j<0) {
+					return i;
+				}
+			}
+			i += shift[c & 0xFF];
+		}
+		return -1;
+	}
+
+	/**
+	 * Find the first occurrence of the literal in a String.
+	 * @return The index of the first match, or -1 if there is no match.
+	 */
+	public int indexOf(String text) {
+		int m = pattern.length;
+		if (m==0) {
+			return 0;
+		}
+		int last = m-1;
+		char lastChar = pattern[last];
+		int end = text.length();
+		int i = 0;
+		while (i+last < end) {
+			char c = fold(text.charAt(i+last));
+			if (c==lastChar) {
+				int j = last-1;
+				while (j>=0 && fold(text.charAt(i+j))==pattern[j]) {
+					j--;
+				}
+				if (j<0) {
+					return i;
+				}
+			}
+			i += shift[c & 0xFF];
+		}
+		return -1;
+	}
+
+}
@@ -0,0 +1,322 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Pivotal Software, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Pivotal Software, Inc. - initial API and implementation
+ *******************************************************************************/
+package org.springsource.ide.eclipse.commons.quicksearch.core;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+import org.eclipse.core.resources.IFile;
+
+/**
+ * A compact, ordered set of {@link LineItem}s. Like a {@link LineItem} the elements are identified by their file and
+ * line number, so adding an item for the same line twice has no effect.
+ * <p>
+ * Rather than keeping LineItem objects around, their data is stored in a few primitive arrays. Files are
+ * interned in a table and referred to by index, and the text of all lines is appended to a single shared
+ * char buffer. LineItem objects are created only when elements are retrieved, e.g. for the rows of
+ * the result table that are actually visible.
+ * <p>
+ * Removing an element only marks it as removed. The space it occupied is reclaimed the next time an
+ * element is retrieved by its index.
+ * <p>
+ * All methods are synchronized except for {@link #iterator()}. Iterators must not be used while other
+ * threads may modify the store.
+ */
+public class MatchStore implements Iterable<LineItem> {
+
+	private static final int INITIAL_CAPACITY = 64;
+
+	/**
+	 * Interned files. Elements refer to their file by its index in this list.
+	 */
+	private final List<IFile> files = new ArrayList<IFile>();
+	private final Map<IFile, Integer> fileIds = new HashMap<IFile, Integer>();
+
+	/**
+	 * Number of slots in use, including slots of removed elements.
+	 */
+	private int slots = 0;
+	private int removedCount = 0;
+	private BitSet removed = new BitSet();
+
+	private int[] fileId = new int[INITIAL_CAPACITY];
+	private int[] lineNumber = new int[INITIAL_CAPACITY];
+	private int[] lineOffset = new int[INITIAL_CAPACITY];
+
+	/**
+	 * Start of the text of each element in the text buffer. The text of an element ends where the text of
+	 * the next one starts.
+	 */
+	private int[] textStart = new int[INITIAL_CAPACITY];
+	private char[] text = new char[INITIAL_CAPACITY*64];
+	private int textLength = 0;
+
+	/**
+	 * Open addressing hash table that maps (file, line number) keys to slots. 'table' contains slot+1,
+	 * or 0 for unused entries. Entries for removed elements stay in the table until it is rebuilt.
+	 */
+	private long[] keys = new long[INITIAL_CAPACITY*2];
+	private int[] table = new int[INITIAL_CAPACITY*2];
+
+	public MatchStore() {
+	}
+
+	/**
+	 * Creates a copy of another store.
+	 */
+	public MatchStore(MatchStore other) {
+		synchronized (other) {
+			other.compact();
+			files.addAll(other.files);
+			fileIds.putAll(other.fileIds);
+			slots = other.slots;
+			fileId = Arrays.copyOf(other.fileId, Math.max(slots, 1));
+			lineNumber = Arrays.copyOf(other.lineNumber, Math.max(slots, 1));
+			lineOffset = Arrays.copyOf(other.lineOffset, Math.max(slots, 1));
+			textStart = Arrays.copyOf(other.textStart, Math.max(slots, 1));
+			text = Arrays.copyOf(other.text, Math.max(other.textLength, 1));
+			textLength = other.textLength;
+			keys = other.keys.clone();
+			table = other.table.clone();
+		}
+	}
+
+	/**
+	 * Add an item, unless there already is one for the same line.
+	 *
+	 * @return true if the item was added.
+	 */
+	public synchronized boolean add(LineItem item) {
+		int fid = intern(item.getFile());
+		long key = key(fid, item.getLineNumber());
+		int pos = lookup(key);
+		int existing = table[pos]-1;
+		if (existing>=0 && !removed.get(existing)) {
+			return false;
+		}
+		int slot = append(fid, item);
+		keys[pos] = key;
+		table[pos] = slot+1;
+		if (existing<0 && slots*2>table.length) {
+			rehash(table.length*2);
+		}
+		return true;
+	}
+
+	/**
+	 * Remove the element for the same line as the given item, if there is one.
+	 *
+	 * @return true if an element was removed.
+	 */
+	public synchronized boolean remove(LineItem item) {
+		Integer fid = fileIds.get(item.getFile());
+		if (fid==null) {
+			return false;
+		}
+		int slot = table[lookup(key(fid, item.getLineNumber()))]-1;
+		if (slot>=0 && !removed.get(slot)) {
+			markRemoved(slot);
+			return true;
+		}
+		return false;
+	}
+
+	public synchronized int size() {
+		return slots-removedCount;
+	}
+
+	public synchronized boolean isEmpty() {
+		return size()==0;
+	}
+
+	/**
+	 * @return A LineItem for the element at the given position, in the order elements were added.
+	 */
+	public synchronized LineItem get(int index) {
+		compact();
+		if (index<0 || index>=slots) {
+			throw new IndexOutOfBoundsException(index+" >= "+slots);
+		}
+		return materialize(index);
+	}
+
+	public synchronized void clear() {
+		files.clear();
+		fileIds.clear();
+		slots = 0;
+		removedCount = 0;
+		removed.clear();
+		textLength = 0;
+		Arrays.fill(table, 0);
+	}
+
+	public synchronized Object[] toArray() {
+		Object[] result = new Object[size()];
+		int i = 0;
+		for (int slot = 0; slot < slots; slot++) {
+			if (!removed.get(slot)) {
+				result[i++] = materialize(slot);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Iterates the elements in the order they were added. The iterator supports removal.
+	 */
+	public Iterator<LineItem> iterator() {
+		return new Iterator<LineItem>() {
+			int next = skipRemoved(0);
+			int current = -1;
+
+			public boolean hasNext() {
+				return next<slots;
+			}
+
+			public LineItem next() {
+				if (!hasNext()) {
+					throw new NoSuchElementException();
+				}
+				current = next;
+				next = skipRemoved(next+1);
+				return materialize(current);
+			}
+
+			public void remove() {
+				if (current<0 || removed.get(current)) {
+					throw new IllegalStateException();
+				}
+				markRemoved(current);
+			}
+		};
+	}
+
+	private int skipRemoved(int slot) {
+		while (slot<slots && removed.get(slot)) {
+			slot++;
+		}
+		return slot;
+	}
+
+	private LineItem materialize(int slot) {
+		int start = textStart[slot];
+		int end = slot+1<slots ? textStart[slot+1] : textLength;
+		return new LineItem(files.get(fileId[slot]), new String(text, start, end-start), lineNumber[slot], lineOffset[slot]);
+	}
+
+	private void markRemoved(int slot) {
+		removed.set(slot);
+		removedCount++;
+	}
+
+	private int intern(IFile file) {
+		Integer id = fileIds.get(file);
+		if (id==null) {
+			id = files.size();
+			files.add(file);
+			fileIds.put(file, id);
+		}
+		return id;
+	}
+
+	private int append(int fid, LineItem item) {
+		if (slots==fileId.length) {
+			int capacity = slots*2;
+			fileId = Arrays.copyOf(fileId, capacity);
+			lineNumber = Arrays.copyOf(lineNumber, capacity);
+			lineOffset = Arrays.copyOf(lineOffset, capacity);
+			textStart = Arrays.copyOf(textStart, capacity);
+		}
+		String line = item.getText();
+		int len = line.length();
+		if (textLength+len>text.length) {
+			text = Arrays.copyOf(text, Math.max(text.length*2, textLength+len));
+		}
+		line.getChars(0, len, text, textLength);
+		int slot = slots++;
+		fileId[slot] = fid;
+		lineNumber[slot] = item.getLineNumber();
+		lineOffset[slot] = item.getOffset();
+		textStart[slot] = textLength;
+		textLength += len;
+		return slot;
+	}
+
+	/**
+	 * Reclaim the space used by removed elements.
+	 */
+	private void compact() {
+		if (removedCount==0) {
+			return;
+		}
+		int to = 0;
+		int textTo = 0;
+		for (int from = 0; from < slots; from++) {
+			if (!removed.get(from)) {
+				int start = textStart[from];
+				int end = from+1<slots ? textStart[from+1] : textLength;
+				System.arraycopy(text, start, text, textTo, end-start);
+				fileId[to] = fileId[from];
+				lineNumber[to] = lineNumber[from];
+				lineOffset[to] = lineOffset[from];
+				textStart[to] = textTo;
+				textTo += end-start;
+				to++;
+			}
+		}
+		slots = to;
+		textLength = textTo;
+		removed.clear();
+		removedCount = 0;
+		rehash(table.length);
+	}
+
+	private void rehash(int capacity) {
+		keys = new long[capacity];
+		table = new int[capacity];
+		for (int slot = 0; slot < slots; slot++) {
+			if (!removed.get(slot)) {
+				long key = key(fileId[slot], lineNumber[slot]);
+				int pos = lookup(key);
+				keys[pos] = key;
+				table[pos] = slot+1;
+			}
+		}
+	}
+
+	/**
+	 * @return The position of the key in the hash table, or the position where it should be inserted.
+	 */
+	private int lookup(long key) {
+		int mask = table.length-1;
+		int pos = hash(key) & mask;
+		while (table[pos]!=0 && keys[pos]!=key) {
+			pos = (pos+1) & mask;
+		}
+		return pos;
+	}
+
+	private static long key(int fid, int line) {
+		return ((long)fid << 32) | (line & 0xFFFFFFFFL);
+	}
+
+	private static int hash(long key) {
+		long h = key * 0x9E3779B97F4A7C15L;
+		return (int) (h ^ (h >>> 32));
+	}
+
+}
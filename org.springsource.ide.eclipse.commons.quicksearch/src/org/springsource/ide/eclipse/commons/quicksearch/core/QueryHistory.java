@@ -0,0 +1,106 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Pivotal Software, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Pivotal Software, Inc. - initial API and implementation
+ *******************************************************************************/
+package org.springsource.ide.eclipse.commons.quicksearch.core;
+
+import java.util.Iterator;
+import java.util.LinkedList;
+
+/**
+ * Remembers what was found for the most recent queries of a {@link QuickTextSearcher}, so that
+ * changing the query back to an earlier one (e.g. deleting a character that was just typed) doesn't
+ * require searching the whole workspace again.
+ * <p>
+ * For each query we remember the matches found and the files that were searched completely
+ * without finding a match. If the search for a query was complete, the matches for any more specific
+ * query can be computed from its matches alone. Otherwise, the files without a match can still be
+ * skipped when searching for a more specific query.
+ * <p>
+ * The history doesn't track changes to the files. It must be cleared when the workspace changes.
+ */
+class QueryHistory {
+
+	static class Entry {
+		final QuickTextQuery query;
+		final MatchStore matches;
+		final boolean complete;
+		final GrowingFileSet.Snapshot noMatchFiles;
+
+		Entry(QuickTextQuery query, MatchStore matches, boolean complete, GrowingFileSet.Snapshot noMatchFiles) {
+			this.query = query;
+			this.matches = new MatchStore(matches); //Copied, since the searcher keeps changing its own store.
+			this.complete = complete;
+			this.noMatchFiles = noMatchFiles;
+		}
+	}
+
+	private final int size;
+
+	/**
+	 * Most recent entry first.
+	 */
+	private final LinkedList<Entry> entries = new LinkedList<Entry>();
+
+	public QueryHistory(int size) {
+		this.size = size;
+	}
+
+	/**
+	 * Remember the results of a query, replacing any earlier results for the same query.
+	 *
+	 * @param complete Whether all files were searched, i.e. whether 'matches' contains all matches for the query.
+	 * @param noMatchFiles Files that were searched completely without finding a match. Since a snapshot
+	 *    never changes, it is shared rather than copied.
+	 */
+	public synchronized void remember(QuickTextQuery query, MatchStore matches, boolean complete, GrowingFileSet.Snapshot noMatchFiles) {
+		if (query.isTrivial()) {
+			return;
+		}
+		removeEntry(query);
+		entries.addFirst(new Entry(query, matches, complete, noMatchFiles));
+		while (entries.size()>size) {
+			entries.removeLast();
+		}
+	}
+
+	/**
+	 * Find the most useful entry for a query, i.e. an entry for the same query or a more general one.
+	 * Entries with complete results are preferred, since they make it unnecessary to search at all.
+	 *
+	 * @return The entry or null if there is none.
+	 */
+	public synchronized Entry find(QuickTextQuery query) {
+		Entry partial = null;
+		for (Entry e : entries) {
+			if (e.query.equalsFilter(query) || e.query.isSubFilter(query)) {
+				if (e.complete) {
+					return e;
+				} else if (partial==null) {
+					partial = e;
+				}
+			}
+		}
+		return partial;
+	}
+
+	public synchronized void clear() {
+		entries.clear();
+	}
+
+	private void removeEntry(QuickTextQuery query) {
+		Iterator<Entry> iter = entries.iterator();
+		while (iter.hasNext()) {
+			if (iter.next().query.equalsFilter(query)) {
+				iter.remove();
+			}
+		}
+	}
+
+}
@@ -10,13 +10,20 @@
  *******************************************************************************/
 package org.springsource.ide.eclipse.commons.quicksearch.core;
 
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import org.eclipse.jface.text.IRegion;
+import org.springsource.ide.eclipse.commons.quicksearch.util.ByteLineReader;
 
 
 /**
@@ -48,6 +55,18 @@ public class QuickTextQuery {
 	private Matcher matcher;
 	private Pattern pattern;
 
+	/**
+	 * Fast matcher used instead of the regexp when the pattern doesn't contain any wildcards.
+	 * Null if the pattern does contain wildcards.
+	 */
+	private LiteralMatcher literal;
+
+	/**
+	 * Byte matchers for the literal pattern, created on demand for each charset.
+	 * A null value means the literal can't be searched for in bytes for that charset.
+	 */
+	private Map<Charset, ByteLiteralMatcher> byteMatchers = null;
+
 	/**
 	 * A query that matches anything.
 	 */
@@ -105,6 +124,9 @@ public class QuickTextQuery {
 		
 		this.pattern = Pattern.compile(regexp.toString(), caseSensitive?0:Pattern.CASE_INSENSITIVE);
 		this.matcher = pattern.matcher("");
+		if (patString.indexOf('*')<0 && patString.indexOf('?')<0) {
+			this.literal = new LiteralMatcher(patString, caseSensitive);
+		}
 	}
 
 	private void appendSegment(StringBuilder segment, StringBuilder regexp) {
@@ -173,12 +195,57 @@ public class QuickTextQuery {
 	 * LineItem instances for non-matching lines.
 	 */
 	public boolean matchItem(String item) {
+		if (literal!=null) {
+			return literal.indexOf(item)>=0;
+		}
 		//Alternate implementation. This is thread safe without synchronized,
 		// but it creates some garbage.
 		Matcher matcher = pattern.matcher(item); //Creating garbage here
 		return matcher.find();
 	}
 
+	/**
+	 * Same as matchItem except it takes the text as a region of a char buffer. This is
+	 * used to search lines directly in a {@link org.springsource.ide.eclipse.commons.quicksearch.util.LineReader}'s
+	 * buffer. For queries without wildcards, this doesn't allocate anything.
+	 */
+	public boolean matchItem(char[] buf, int start, int end) {
+		if (literal!=null) {
+			return literal.indexOf(buf, start, end)>=0;
+		}
+		return pattern.matcher(CharBuffer.wrap(buf, start, end-start)).find();
+	}
+
+	/**
+	 * Get a matcher that searches for this query directly in bytes encoded with a given charset.
+	 *
+	 * @return A matcher or null if that isn't possible, either because the query contains wildcards,
+	 *    or because the charset isn't supported by {@link ByteLineReader}.
+	 */
+	public synchronized ByteLiteralMatcher getByteMatcher(Charset charset) {
+		if (literal==null || charset==null) {
+			return null;
+		}
+		if (byteMatchers==null) {
+			byteMatchers = new HashMap<Charset, ByteLiteralMatcher>(4);
+		} else if (byteMatchers.containsKey(charset)) {
+			return byteMatchers.get(charset);
+		}
+		ByteLiteralMatcher matcher = null;
+		if (ByteLineReader.supports(charset)) {
+			try {
+				ByteBuffer encoded = charset.newEncoder().encode(CharBuffer.wrap(orgPattern));
+				byte[] bytes = new byte[encoded.remaining()];
+				encoded.get(bytes);
+				matcher = new ByteLiteralMatcher(bytes, caseSensitive);
+			} catch (CharacterCodingException e) {
+				//Pattern can't be encoded in this charset. Let the regular (char based) search deal with it.
+			}
+		}
+		byteMatchers.put(charset, matcher);
+		return matcher;
+	}
+
 	/**
 	 * A trivial query is one that either 
 	 *  - matches anything
@@ -49,4 +49,14 @@ public class QuickTextSearchRequestor {
 	 * incrementally but needs to be completely restarted.
 	 */
 	public void clear() {}
+
+	/**
+	 * Called by the searcher after each {@link #add(LineItem)}. A requestor that can't keep up
+	 * with the rate at which matches are found (e.g. because it only displays them periodically, in
+	 * batches) can return true to pause the search. The search stays paused until the requestor
+	 * calls {@link QuickTextSearcher#backlogCleared()}.
+	 */
+	public boolean isBacklogged() {
+		return false;
+	}
 }
@@ -11,19 +11,30 @@
 package org.springsource.ide.eclipse.commons.quicksearch.core;
 
 import java.io.InputStreamReader;
-import java.util.HashSet;
+import java.nio.charset.Charset;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.Iterator;
-import java.util.Set;
+import java.util.Map;
 
 import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.resources.IResourceChangeEvent;
+import org.eclipse.core.resources.IResourceChangeListener;
+import org.eclipse.core.resources.IResourceDelta;
+import org.eclipse.core.resources.ResourcesPlugin;
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.IStatus;
 import org.eclipse.core.runtime.Status;
 import org.eclipse.core.runtime.jobs.ISchedulingRule;
 import org.eclipse.core.runtime.jobs.Job;
+import org.springsource.ide.eclipse.commons.quicksearch.core.index.SkippedFilesCache;
+import org.springsource.ide.eclipse.commons.quicksearch.core.index.TrigramIndex;
 import org.springsource.ide.eclipse.commons.quicksearch.core.priority.PriorityFunction;
+import org.springsource.ide.eclipse.commons.quicksearch.util.ByteLineReader;
 import org.springsource.ide.eclipse.commons.quicksearch.util.JobUtil;
 import org.springsource.ide.eclipse.commons.quicksearch.util.LineReader;
+import org.springsource.ide.eclipse.commons.quicksearch.util.UnsearchableContentException;
 
 public class QuickTextSearcher {
 	private final QuickTextSearchRequestor requestor;
@@ -33,7 +44,18 @@ public class QuickTextSearcher {
 	 * Keeps track of currently found matches. Items are added as they are found and may also
 	 * be removed when the query changed and they become invalid.
 	 */
-	private Set<LineItem> matches = new HashSet<LineItem>(2000);
+	private final MatchStore matches = new MatchStore();
+
+	/**
+	 * Number of recent queries for which results are remembered.
+	 */
+	private static final int HISTORY_SIZE = 4;
+
+	/**
+	 * Results of recent queries. Used to avoid searching all files again when the query changes
+	 * in a way that can't be handled by an incremental update (e.g. a character is deleted).
+	 */
+	private final QueryHistory history = new QueryHistory(HISTORY_SIZE);
 
 	/**
 	 * Scheduling rule used by Jobs that work on the matches collection.
@@ -53,22 +75,38 @@ public class QuickTextSearcher {
 	/**
 	 * If number of accumulated results reaches maxResults the search will be suspended.
 	 * <p>
-	 * Note that more results may still arrive beyond the limit since the searcher does not (yet) have the
-	 * capability to suspend/resume a search in the middle of a file.
+	 * The search is suspended in the middle of a file if necessary, and continues from the same
+	 * position when it is resumed. When searching with multiple threads, each of the other threads
+	 * may still add a result before it notices the suspension, so the limit can be exceeded slightly.
 	 */
 	private int maxResults = 200;
 
 	/**
 	 * If a line of text is encountered longer than this, the searcher will stop searching
 	 * that file (this rule avoids searching machine generated text files, like minified javascript).
+	 * If the long line is near the start of the file, the file is also remembered in the
+	 * skippedFiles cache, so it won't even be opened by future searches.
 	 */
 	private int MAX_LINE_LEN;
 
 	/**
 	 * While searching in a file, this field will be set. This can be used to show the name
 	 * of the 'current file' in the progress area of the quicksearch dialog.
+	 * <p>
+	 * When searching with multiple threads, this is just one of the files being searched.
+	 */
+	private volatile IFile currentFile = null;
+
+	/**
+	 * Optional index used to skip files that can not possibly contain a match. May be null.
+	 */
+	private final TrigramIndex index;
+
+	/**
+	 * Optional cache of files found to contain binary or minified content. Such files are
+	 * skipped without reading them. May be null.
 	 */
-	private IFile currentFile = null;
+	private final SkippedFilesCache skippedFiles;
 
 	/**
 	 * Retrieves the current result limit.
@@ -82,15 +120,29 @@ public class QuickTextSearcher {
 	}
 
 	public QuickTextSearcher(QuickTextQuery query, PriorityFunction priorities, int maxLineLen, QuickTextSearchRequestor requestor) {
+		this(query, priorities, maxLineLen, null, null, 1, requestor);
+	}
+
+	/**
+	 * @param index Optional index used to avoid reading files that can't match. May be null.
+	 * @param skippedFiles Optional cache of files not worth searching. May be null.
+	 * @param threads Number of threads used to search files (see {@link ResourceWalker#setParallelism(int)}).
+	 */
+	public QuickTextSearcher(QuickTextQuery query, PriorityFunction priorities, int maxLineLen,
+			TrigramIndex index, SkippedFilesCache skippedFiles, int threads, QuickTextSearchRequestor requestor) {
 		this.requestor = requestor;
 		this.query = query;
-		this.walker = createWalker(priorities);
+		this.index = index;
+		this.skippedFiles = skippedFiles;
+		this.walker = createWalker(priorities, threads);
 		this.MAX_LINE_LEN = maxLineLen;
+		ResourcesPlugin.getWorkspace().addResourceChangeListener(historyInvalidator, IResourceChangeEvent.POST_CHANGE);
 	}
 
-	private SearchInFilesWalker createWalker(PriorityFunction priorities) {
+	private SearchInFilesWalker createWalker(PriorityFunction priorities, int threads) {
 		final SearchInFilesWalker job = new SearchInFilesWalker();
 		job.setPriorityFun(priorities);
+		job.setParallelism(threads);
 		job.setRule(matchesRule);
 		job.schedule();
 		return job;
@@ -98,43 +150,201 @@ public class QuickTextSearcher {
 
 	private final class SearchInFilesWalker extends ResourceWalker {
 
+		/**
+		 * The query for which 'requiredTrigrams' was computed.
+		 */
+		private QuickTextQuery trigramsQuery = null;
+		private int[] requiredTrigrams = null;
+
+		/**
+		 * Files in which searching stopped part way because the walker was suspended.
+		 */
+		private final Map<IFile, FileCursor> cursors = Collections.synchronizedMap(new HashMap<IFile, FileCursor>());
+
+		/**
+		 * Files that were searched completely for the current query, without finding a match. These
+		 * can't match any more specific query either, so the set stays valid when the query is updated
+		 * incrementally.
+		 */
+		private volatile GrowingFileSet noMatchFiles = new GrowingFileSet();
+
+		/**
+		 * Reinitialize the work queue to its starting state, forgetting about any partially
+		 * searched files.
+		 *
+		 * @param skip Files known not to contain a match for the current query, or null. These will not be searched.
+		 */
+		public void restart(GrowingFileSet.Snapshot skip) {
+			cursors.clear();
+			noMatchFiles = new GrowingFileSet(skip);
+			init();
+		}
+
+		/**
+		 * @return The files known not to contain a match for the current query so far.
+		 */
+		public GrowingFileSet.Snapshot getNoMatchFiles() {
+			return noMatchFiles.snapshot();
+		}
 
 		@Override
 		protected void visit(IFile f, IProgressMonitor mon) {
 			if (checkCanceled(mon)) {
 				return;
 			}
+			if (index!=null && !index.mayContain(f, getRequiredTrigrams())) {
+				return;
+			}
+			if (skippedFiles!=null && skippedFiles.shouldSkip(f, MAX_LINE_LEN)) {
+				return;
+			}
+			if (noMatchFiles.contains(f)) {
+				return;
+			}
 
+			currentFile = f;
+			long stamp = f.getModificationStamp();
+			FileCursor cursor = cursors.remove(f);
+			if (cursor!=null && cursor.stamp!=stamp) {
+				cursor = null; //File changed, search it again from the start.
+			}
+			try {
+				Charset charset = charset(f);
+				ByteLiteralMatcher byteMatcher = query.getByteMatcher(charset);
+				boolean noMatch;
+				if (byteMatcher!=null) {
+					noMatch = searchBytes(f, stamp, cursor, charset, byteMatcher, mon);
+				} else {
+					noMatch = searchChars(f, stamp, cursor, mon);
+				}
+				if (noMatch && cursor==null) {
+					//Note: when resuming from a cursor, matches may have been found before the cursor.
+					noMatchFiles.add(f);
+				}
+			} catch (UnsearchableContentException e) {
+				if (skippedFiles!=null && e.isConclusive()) {
+					skippedFiles.remember(f, stamp, e.isBinary() ? -1 : MAX_LINE_LEN);
+				}
+			} catch (Exception e) {
+			} finally {
+				currentFile = null;
+			}
+		}
 
+		/**
+		 * Search a file by decoding it into chars. This works for any charset and any query.
+		 *
+		 * @param cursor Where to continue searching, or null to search from the start.
+		 * @return true if the file was searched to the end without finding a match.
+		 */
+		private boolean searchChars(IFile f, long stamp, FileCursor cursor, IProgressMonitor mon) throws Exception {
 			LineReader lr = null;
-			currentFile = f;
 			try {
 				lr = new LineReader(new InputStreamReader(f.getContents(true), f.getCharset()), MAX_LINE_LEN);
-				String line = null;
 				int lineIndex = 1;
-				while ((line = lr.readLine()) != null) {
-					int offset = lr.getLastLineOffset();
+				boolean noMatch = true;
+				if (cursor!=null) {
+					lr.skipTo(cursor.charOffset);
+					lineIndex = cursor.lineIndex;
+				}
+				while (lr.nextLine()) {
 					if (checkCanceled(mon)) {
-						return;
+						return false;
+					}
+					if (isSuspended()) {
+						stopAt(f, new FileCursor(stamp, lineIndex, lr.getLastLineOffset(), -1));
+						return false;
 					}
 
-					boolean found = query.matchItem(line);
+					//Match directly against the reader's buffer. Only create a String for matching lines.
+					boolean found = query.matchItem(lr.getBuffer(), lr.getLineStart(), lr.getLineEnd());
 					if (found) {
-						LineItem lineItem = new LineItem(f, line, lineIndex, offset);
+						LineItem lineItem = new LineItem(f, lr.getLine(), lineIndex, lr.getLastLineOffset());
 						add(lineItem);
+						noMatch = false;
 					}
 
 					lineIndex++;
 				}
-			} catch (Exception e) {
+				return noMatch;
+			} finally {
+				if (lr != null) {
+					lr.close();
+				}
+			}
+		}
+
+		/**
+		 * Search a file without decoding it. Only the lines containing a match are decoded.
+		 *
+		 * @param cursor Where to continue searching, or null to search from the start.
+		 * @return true if the file was searched to the end without finding a match.
+		 */
+		private boolean searchBytes(IFile f, long stamp, FileCursor cursor, Charset charset, ByteLiteralMatcher matcher, IProgressMonitor mon) throws Exception {
+			ByteLineReader lr = null;
+			try {
+				lr = new ByteLineReader(f.getContents(true), charset, MAX_LINE_LEN);
+				int lineIndex = 1;
+				boolean noMatch = true;
+				int skipLines = 0;
+				if (cursor!=null) {
+					if (cursor.byteOffset>=0) {
+						lr.skipTo(cursor.byteOffset, cursor.charOffset);
+						lineIndex = cursor.lineIndex;
+					} else {
+						//Searching stopped while the file was searched as chars (i.e. the query had wildcards
+						// at the time). Only the lines already searched can be skipped, without matching them.
+						skipLines = cursor.lineIndex-1;
+					}
+				}
+				while (lr.nextLine()) {
+					if (checkCanceled(mon)) {
+						return false;
+					}
+					if (skipLines>0) {
+						skipLines--;
+						lineIndex++;
+						continue;
+					}
+					if (isSuspended()) {
+						stopAt(f, new FileCursor(stamp, lineIndex, lr.getLastLineOffset(), lr.getLastLineByteOffset()));
+						return false;
+					}
+					if (matcher.indexOf(lr.getBuffer(), lr.getLineStart(), lr.getLineEnd())>=0) {
+						LineItem lineItem = new LineItem(f, lr.getLine(), lineIndex, lr.getLastLineOffset());
+						add(lineItem);
+						noMatch = false;
+					}
+					lineIndex++;
+				}
+				return noMatch;
 			} finally {
-				currentFile = null;
 				if (lr != null) {
 					lr.close();
 				}
 			}
 		}
 
+		/**
+		 * Remember where searching a file stopped and make sure it's the first thing
+		 * searched when the walker is resumed.
+		 */
+		private void stopAt(IFile f, FileCursor cursor) {
+			cursors.put(f, cursor);
+			revisitFirst(f);
+		}
+
+		/**
+		 * @return The charset of a file or null if it can't be determined.
+		 */
+		private Charset charset(IFile f) {
+			try {
+				return Charset.forName(f.getCharset());
+			} catch (Exception e) {
+				return null;
+			}
+		}
+
 //		@Override
 //		protected void visit(IFile f, IProgressMonitor mon) {
 //			if (checkCanceled(mon)) {
@@ -159,12 +369,25 @@ public class QuickTextSearcher {
 
 		@Override
 		public void resume() {
-			//Only resume if we don't already exceed the maxResult limit.
-			if (matches.size()<maxResults) {
+			//Only resume if we don't already exceed the maxResult limit and the requestor is keeping up.
+			if (matches.size()<maxResults && !requestor.isBacklogged()) {
 				super.resume();
 			}
 		}
 
+		/**
+		 * Trigrams any matching file must contain according to the current query. Only called
+		 * from the walker, which never runs at the same time as the update job changing
+		 * the query (they share the same scheduling rule).
+		 */
+		private synchronized int[] getRequiredTrigrams() {
+			if (trigramsQuery!=query) {
+				trigramsQuery = query;
+				requiredTrigrams = TrigramIndex.requiredTrigrams(query);
+			}
+			return requiredTrigrams;
+		}
+
 		private boolean checkCanceled(IProgressMonitor mon) {
 			return mon.isCanceled();
 		}
@@ -177,6 +400,30 @@ public class QuickTextSearcher {
 
 	}
 
+	/**
+	 * Position in a file where searching stopped because the walker was suspended. Points at the
+	 * start of the first line that wasn't searched yet.
+	 */
+	private static final class FileCursor {
+		/**
+		 * Modification stamp of the file when it was read. The cursor isn't valid for other versions of the file.
+		 */
+		final long stamp;
+		final int lineIndex;
+		final int charOffset;
+		/**
+		 * Offset in bytes, or -1 if the file was decoded into chars while it was searched.
+		 */
+		final int byteOffset;
+
+		FileCursor(long stamp, int lineIndex, int charOffset, int byteOffset) {
+			this.stamp = stamp;
+			this.lineIndex = lineIndex;
+			this.charOffset = charOffset;
+			this.byteOffset = byteOffset;
+		}
+	}
+
 	/**
 	 * This job updates already found matches when the query is changed.
 	 * Both the walker job and this job share the same scheduling rule so
@@ -198,6 +445,7 @@ public class QuickTextSearcher {
 			QuickTextQuery nq = newQuery; //Copy into local variable to avoid
 										  // problems if another thread changes newQuery while we
 										  // are still mucking with it.
+			rememberResults();
 			if (query.isSubFilter(nq)) {
 				query = nq;
 				performIncrementalUpdate(monitor);
@@ -227,9 +475,21 @@ public class QuickTextSearcher {
 			}
 		}
 
+		/**
+		 * Save the results for the current query in the history, before they are changed to
+		 * reflect the new query.
+		 */
+		private void rememberResults() {
+			SearchInFilesWalker walker = QuickTextSearcher.this.walker;
+			if (walker!=null) {
+				history.remember(query, matches, walker.isComplete(), walker.getNoMatchFiles());
+			}
+		}
+
 		private void performRestart(IProgressMonitor mon) {
 			//walker may be null if dialog got closed already before we managed to
 			// 'performRestart'.
+			SearchInFilesWalker walker = QuickTextSearcher.this.walker;
 			if (walker!=null) {
 				//since we are inside Job here that uses same scheduling rule as walker, we
 				//know walker is not currently executing. so walker cancel should be instantenous
@@ -237,18 +497,61 @@ public class QuickTextSearcher {
 				requestor.clear();
 				walker.cancel();
 				if (!query.isTrivial()) {
-					walker.init(); //Reinitialize the walker work queue to its starting state
-					walker.resume(); //Allow walker to resume when we release the scheduling rule.
+					//Reuse what was found for an earlier query that was the same or more general, if any.
+					QueryHistory.Entry previous = history.find(query);
+					if (previous==null) {
+						walker.restart(null); //Reinitialize the walker work queue to its starting state
+						walker.resume(); //Allow walker to resume when we release the scheduling rule.
+					} else if (previous.complete) {
+						//All matches for the current query are among the earlier matches. No need to search at all.
+						walker.restart(previous.noMatchFiles);
+						walker.discardWork();
+						for (LineItem item : previous.matches) {
+							if (query.matchItem(item) && matches.add(item)) {
+								requestor.add(item);
+							}
+						}
+					} else {
+						walker.restart(previous.noMatchFiles);
+						walker.resume();
+					}
 				}
 			}
 		}
 
 	}
 
-	private void add(LineItem line) {
+	/**
+	 * Files changing invalidate the query history.
+	 */
+	private final IResourceChangeListener historyInvalidator = new IResourceChangeListener() {
+		public void resourceChanged(IResourceChangeEvent event) {
+			IResourceDelta delta = event.getDelta();
+			if (delta!=null && changesFiles(delta)) {
+				history.clear();
+			}
+		}
+
+		private boolean changesFiles(IResourceDelta delta) {
+			if (delta.getResource().getType()==IResource.FILE) {
+				int kind = delta.getKind();
+				return kind==IResourceDelta.ADDED || kind==IResourceDelta.REMOVED
+						|| (delta.getFlags() & (IResourceDelta.CONTENT | IResourceDelta.REPLACED | IResourceDelta.ENCODING))!=0;
+			}
+			for (IResourceDelta child : delta.getAffectedChildren()) {
+				if (changesFiles(child)) {
+					return true;
+				}
+			}
+			return false;
+		}
+	};
+
+	private synchronized void add(LineItem line) {
+		//synchronized because the walker may be visiting files in several threads at once.
 		if (matches.add(line)) {
 			requestor.add(line);
-			if (matches.size() >= maxResults) {
+			if (matches.size() >= maxResults || requestor.isBacklogged()) {
 				walker.suspend();
 			}
 		}
@@ -293,7 +596,25 @@ public class QuickTextSearcher {
 		}
 	}
 
+	/**
+	 * Called by a requestor that paused the search (see {@link QuickTextSearchRequestor#isBacklogged()})
+	 * once it has caught up with the matches it was given.
+	 * <p>
+	 * Synchronized with {@link #add(LineItem)}, so that the walker can't get paused because of a backlog
+	 * right after the requestor cleared it.
+	 */
+	public synchronized void backlogCleared() {
+		SearchInFilesWalker walker = this.walker;
+		//If an incremental update is pending, leave the walker alone. The update job resumes it when it's done.
+		boolean updatePending = incrementalUpdate!=null && incrementalUpdate.getState()!=Job.NONE;
+		if (walker!=null && !walker.isDone() && !updatePending) {
+			walker.resume();
+		}
+	}
+
 	public void cancel() {
+		ResourcesPlugin.getWorkspace().removeResourceChangeListener(historyInvalidator);
+		history.clear();
 		if (walker!=null) {
 			walker.cancel();
 			walker = null;
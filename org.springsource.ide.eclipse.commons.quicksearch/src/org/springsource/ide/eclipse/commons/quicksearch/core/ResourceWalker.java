@@ -11,6 +11,11 @@
 package org.springsource.ide.eclipse.commons.quicksearch.core;
 
 import java.util.PriorityQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import org.eclipse.core.resources.IContainer;
 import org.eclipse.core.resources.IFile;
@@ -31,6 +36,13 @@ import org.springsource.ide.eclipse.commons.quicksearch.ui.QuickSearchActivator;
  * to the resources to decide the ordering and completely ignore some resources.
  * <p>
  * The walker can also be paused and resumed.
+ * <p>
+ * By default, resources are visited one at a time in the walker's Job. Optionally, a number of
+ * worker threads can be used (see {@link #setParallelism(int)}). Workers all take work from the same
+ * priority queue so the order of visiting still roughly follows the priorities. When the walker
+ * is suspended, workers stop taking work from the queue and the Job terminates only after
+ * all workers finished visiting their current resource. The worker threads are kept by the walker
+ * and reused each time it resumes. They stop when they have been idle for a while.
  * 
  * @author Kris De Volder
  */
@@ -56,34 +68,124 @@ public abstract class ResourceWalker extends Job {
 	}
 
 	protected void init() {
-		queue = new PriorityQueue<ResourceWalker.QItem>();
-		queue.add(new QItem(0, ResourcesPlugin.getWorkspace().getRoot()));
+		synchronized (lock) {
+			queue = new PriorityQueue<ResourceWalker.QItem>();
+			complete = false;
+			queue.add(new QItem(0, ResourcesPlugin.getWorkspace().getRoot()));
+		}
 	}
 
+	/**
+	 * Guards the queue and the count of busy workers.
+	 */
+	private final Object lock = new Object();
+
 	/**
 	 * Queue of work to do. When all work is done this will be set to null. So it
 	 * can also be used to determine 'done' status. 
 	 */
-	private PriorityQueue<QItem> queue = null;
+	private volatile PriorityQueue<QItem> queue = null;
+
+	/**
+	 * Set when the walker ran out of work, i.e. all resources were visited. Unlike 'queue==null' this
+	 * stays false when the walker was canceled.
+	 */
+	private volatile boolean complete = false;
 	
 	/**
 	 * Setting this to true will cause the ResourceWalker to stop walking. If the walker is running
 	 * as a scheduled job, then this Job will terminate. However it is possible to 'resume' the
 	 * later since pending list of workitems will be retained. 
 	 */
-	private boolean suspend = false;
+	private volatile boolean suspend = false;
+
+	/**
+	 * Number of threads used to visit resources.
+	 */
+	private volatile int parallelism = 1;
+
+	/**
+	 * Number of workers currently visiting a resource. New work may still be added to the
+	 * queue as long as this isn't 0.
+	 */
+	private int busy = 0;
+
+	/**
+	 * Threads visiting resources when parallelism is more than 1. Created when first needed. Guarded by 'lock'.
+	 */
+	private ThreadPoolExecutor workers = null;
+
+	/**
+	 * Time in milliseconds after which an idle worker thread stops.
+	 */
+	private static final long WORKER_KEEP_ALIVE = 30000;
 
 	private PriorityFunction prioritFun = new DefaultPriorityFunction();
 	
 	public boolean isDone() {
 		return queue==null;
 	}
+
+	/**
+	 * @return true if the walker is done because it visited everything, rather than because
+	 *    it was canceled.
+	 */
+	public boolean isComplete() {
+		return complete;
+	}
 	
 	/**
 	 * Request that the walker stops walking at the next reasonable opportunity.
 	 */
 	public void suspend() {
-		this.suspend = true;
+		synchronized (lock) {
+			this.suspend = true;
+			lock.notifyAll(); //wake up idle workers so they can stop.
+		}
+	}
+
+	/**
+	 * Drop all remaining work because its outcome is already known some other way. The walker
+	 * is done, and counts as complete, until it is reinitialized.
+	 */
+	protected void discardWork() {
+		synchronized (lock) {
+			queue = null;
+			complete = true;
+			lock.notifyAll();
+		}
+	}
+
+	/**
+	 * @return true if the walker was asked to stop walking. Subclasses that take a long time to
+	 *    visit a single file can check this to stop visiting early (see {@link #revisitFirst(IFile)}).
+	 */
+	protected boolean isSuspended() {
+		return suspend;
+	}
+
+	/**
+	 * Put a file back into the work queue, ahead of everything else. A subclass that stopped
+	 * visiting a file part way because the walker was suspended can use this to make sure
+	 * the file is visited again, first thing, when the walker resumes.
+	 */
+	protected void revisitFirst(IFile f) {
+		synchronized (lock) {
+			PriorityQueue<QItem> q = queue;
+			if (q!=null) {
+				q.add(new QItem(PriorityFunction.PRIORITY_HIGHEST, f));
+			}
+		}
+	}
+
+	/**
+	 * Set the number of threads used to visit resources. The setting takes effect the next
+	 * time the walker Job starts running (i.e. when it is scheduled or resumed).
+	 * A value of 1 means resources are visited sequentially in the walker Job itself.
+	 */
+	public void setParallelism(int threads) {
+		Assert.isLegal(threads>0, "Parallelism must be at least 1");
+		this.parallelism = threads;
 	}
 	
 	/**
@@ -118,35 +220,40 @@ public abstract class ResourceWalker extends Job {
 		return false;
 	}
 	
-	public IStatus run(IProgressMonitor monitor) {
+	public IStatus run(final IProgressMonitor monitor) {
 		//TODO: progress reporting?
-		while (!suspend && queue!=null) {
-			if (monitor.isCanceled()) {
-				queue = null;
-			} else {
-				IResource r = getWork();
-				if (r!=null) {
-					if (!ignore(r)) {
-						if (r instanceof IFile) {
-							IFile f = (IFile) r;
-							visit(f, monitor);
-						} else if (r instanceof IContainer) {
-							IContainer f = (IContainer) r;
-							if (f.isAccessible()) {
-    							try {
-    								for (IResource child : f.members()) {
-    									enqueue(child);
-    								}
-    							} catch (CoreException e) {
-    								QuickSearchActivator.log(e);
-    							}
-							}
+		int threads = parallelism;
+		if (threads<=1) {
+			work(monitor);
+		} else {
+			ThreadPoolExecutor workers = getWorkers(threads);
+			final CountDownLatch finished = new CountDownLatch(threads);
+			for (int i = 0; i < threads; i++) {
+				workers.execute(new Runnable() {
+					public void run() {
+						try {
+							work(monitor);
+						} finally {
+							finished.countDown();
 						}
 					}
-				} else {
-					queue = null;
+				});
+			}
+			//Workers check for cancelation themselves so this terminates soon after being canceled.
+			boolean interrupted = false;
+			while (true) {
+				try {
+					finished.await();
+					break;
+				} catch (InterruptedException e) {
+					//The workers must be finished before the Job ends, so they don't overlap with its next run.
+					interrupted = true;
+					monitor.setCanceled(true);
 				}
 			}
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
 		}
 		if (monitor.isCanceled()) {
 			return Status.CANCEL_STATUS;
@@ -155,17 +262,86 @@ public abstract class ResourceWalker extends Job {
 		}
 	}
 
+	/**
+	 * @return The pool of worker threads, with room for the given number of threads.
+	 */
+	private ThreadPoolExecutor getWorkers(int threads) {
+		synchronized (lock) {
+			if (workers==null) {
+				workers = new ThreadPoolExecutor(threads, threads, WORKER_KEEP_ALIVE, TimeUnit.MILLISECONDS,
+						new LinkedBlockingQueue<Runnable>(), WORKER_FACTORY);
+				workers.allowCoreThreadTimeOut(true);
+			} else if (threads>workers.getMaximumPoolSize()) {
+				//The core size may never be more than the maximum size, so the order matters.
+				workers.setMaximumPoolSize(threads);
+				workers.setCorePoolSize(threads);
+			} else if (threads<workers.getMaximumPoolSize()) {
+				workers.setCorePoolSize(threads);
+				workers.setMaximumPoolSize(threads);
+			}
+			return workers;
+		}
+	}
+
+	private static final ThreadFactory WORKER_FACTORY = new ThreadFactory() {
+		public Thread newThread(Runnable r) {
+			Thread t = new Thread(r, "QuickSearch Worker");
+			t.setDaemon(true);
+			return t;
+		}
+	};
+
+	/**
+	 * Take work from the queue and process it until either the queue is exhausted, or the
+	 * walker is suspended or canceled. This may be executing in several threads at once.
+	 */
+	private void work(IProgressMonitor monitor) {
+		IResource r;
+		while ((r = getWork(monitor))!=null) {
+			try {
+				process(r, monitor);
+			} finally {
+				synchronized (lock) {
+					busy--;
+					lock.notifyAll(); //Either more work got queued or, if busy==0, we may be done.
+				}
+			}
+		}
+	}
+
+	private void process(IResource r, IProgressMonitor monitor) {
+		if (!ignore(r)) {
+			if (r instanceof IFile) {
+				IFile f = (IFile) r;
+				visit(f, monitor);
+			} else if (r instanceof IContainer) {
+				IContainer f = (IContainer) r;
+				if (f.isAccessible()) {
+					try {
+						for (IResource child : f.members()) {
+							enqueue(child);
+						}
+					} catch (CoreException e) {
+						QuickSearchActivator.log(e);
+					}
+				}
+			}
+		}
+	}
+
 	/**
 	 * Add a resource to the work queue taking account the priority of the resource.
 	 */
 	private void enqueue(IResource child) {
-		PriorityQueue<QItem> q = queue;
-		if (q!=null) {
-			double p = priority(child);
-			if (p==PriorityFunction.PRIORITY_IGNORE) {
-				return;
+		double p = priority(child);
+		if (p==PriorityFunction.PRIORITY_IGNORE) {
+			return;
+		}
+		synchronized (lock) {
+			PriorityQueue<QItem> q = queue;
+			if (q!=null) {
+				q.add(new QItem(p, child));
 			}
-			q.add(new QItem(p, child));
 		}
 	}
 
@@ -203,13 +379,42 @@ public abstract class ResourceWalker extends Job {
 		this.prioritFun = f;
 	}
 	
-	private IResource getWork() {
-		PriorityQueue<QItem> q = queue;
-		if (q!=null && !q.isEmpty()) {
-			return q.remove().resource;
+	/**
+	 * Take the next resource to process from the queue. If the queue is empty but other
+	 * workers are still busy, this waits for them since they may add more work.
+	 *
+	 * @return the resource, or null if the worker should stop (i.e. the walker is suspended, canceled or done).
+	 */
+	private IResource getWork(IProgressMonitor monitor) {
+		synchronized (lock) {
+			while (true) {
+				PriorityQueue<QItem> q = queue;
+				if (suspend || q==null) {
+					return null;
+				}
+				if (monitor.isCanceled()) {
+					queue = null;
+					lock.notifyAll();
+					return null;
+				}
+				if (!q.isEmpty()) {
+					busy++;
+					return q.remove().resource;
+				}
+				if (busy==0) {
+					//Nothing in the queue and nobody who can add to it.
+					queue = null;
+					complete = true;
+					lock.notifyAll();
+					return null;
+				}
+				try {
+					lock.wait();
+				} catch (InterruptedException e) {
+					return null;
+				}
+			}
 		}
-		return null;
 	}
 
-	
 }
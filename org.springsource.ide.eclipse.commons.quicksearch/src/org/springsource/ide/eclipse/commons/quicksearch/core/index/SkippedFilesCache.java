@@ -0,0 +1,169 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Pivotal Software, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Pivotal Software, Inc. - initial API and implementation
+ *******************************************************************************/
+package org.springsource.ide.eclipse.commons.quicksearch.core.index;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IWorkspaceRoot;
+import org.eclipse.core.resources.ResourcesPlugin;
+import org.eclipse.core.runtime.Path;
+import org.springsource.ide.eclipse.commons.quicksearch.ui.QuickSearchActivator;
+
+/**
+ * Remembers files that were found not to be worth searching (binary or minified content).
+ * Entries are keyed by the file's full path and are only valid as long as the file's
+ * modification stamp doesn't change. Files with long lines are only skipped as long as the
+ * maximum line length isn't raised above the one that was exceeded.
+ * <p>
+ * The cache can be saved to and loaded from a file, so that files are remembered across
+ * sessions.
+ */
+public class SkippedFilesCache {
+
+	private static final int FORMAT_VERSION = 2;
+
+	private static class Entry {
+		/**
+		 * Modification stamp of the file at the time it was found unsearchable.
+		 */
+		final long stamp;
+		/**
+		 * The maximum line length that was exceeded, or -1 if the file is binary.
+		 */
+		final int maxLineLen;
+
+		Entry(long stamp, int maxLineLen) {
+			this.stamp = stamp;
+			this.maxLineLen = maxLineLen;
+		}
+	}
+
+	/**
+	 * Entries by full path of the skipped file.
+	 */
+	private final Map<String, Entry> skipped = new HashMap<String, Entry>();
+
+	private final File store;
+	private boolean dirty = false;
+
+	public SkippedFilesCache(File store) {
+		this.store = store;
+	}
+
+	/**
+	 * @param maxLineLen The maximum line length the search uses.
+	 * @return true if the file was found to be unsearchable with that maximum line length
+	 *   (or a larger one) and hasn't changed since.
+	 */
+	public synchronized boolean shouldSkip(IFile file, int maxLineLen) {
+		Entry e = skipped.get(file.getFullPath().toString());
+		return e!=null && e.stamp==file.getModificationStamp() && (e.maxLineLen<0 || maxLineLen<=e.maxLineLen);
+	}
+
+	/**
+	 * Remember that a file should be skipped.
+	 *
+	 * @param stamp The modification stamp of the file when its contents was read.
+	 * @param maxLineLen The maximum line length that a line of the file exceeded, or -1 if the file is binary.
+	 */
+	public synchronized void remember(IFile file, long stamp, int maxLineLen) {
+		skipped.put(file.getFullPath().toString(), new Entry(stamp, maxLineLen));
+		dirty = true;
+	}
+
+	public synchronized void load() {
+		skipped.clear();
+		dirty = false;
+		if (store==null || !store.isFile()) {
+			return;
+		}
+		DataInputStream in = null;
+		try {
+			in = new DataInputStream(new BufferedInputStream(new FileInputStream(store)));
+			if (in.readInt()!=FORMAT_VERSION) {
+				return;
+			}
+			IWorkspaceRoot root = ResourcesPlugin.getWorkspace().getRoot();
+			int count = in.readInt();
+			for (int i = 0; i < count; i++) {
+				String path = in.readUTF();
+				long stamp = in.readLong();
+				int maxLineLen = in.readInt();
+				//Drop entries for files that were deleted or changed, so the cache doesn't grow forever.
+				IFile file = root.getFile(new Path(path));
+				if (file.exists() && file.getModificationStamp()==stamp) {
+					skipped.put(path, new Entry(stamp, maxLineLen));
+				} else {
+					dirty = true;
+				}
+			}
+		} catch (IOException e) {
+			skipped.clear();
+			QuickSearchActivator.log(e);
+		} finally {
+			if (in!=null) {
+				try {
+					in.close();
+				} catch (IOException e) {
+					//ignore
+				}
+			}
+		}
+	}
+
+	public synchronized void save() {
+		if (store==null || !dirty) {
+			return;
+		}
+		File tmp = new File(store.getPath()+".tmp");
+		DataOutputStream out = null;
+		try {
+			out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+			out.writeInt(FORMAT_VERSION);
+			out.writeInt(skipped.size());
+			for (Map.Entry<String, Entry> e : skipped.entrySet()) {
+				out.writeUTF(e.getKey());
+				out.writeLong(e.getValue().stamp);
+				out.writeInt(e.getValue().maxLineLen);
+			}
+			out.close();
+			out = null;
+			if (store.exists() && !store.delete()) {
+				throw new IOException("Couldn't replace "+store);
+			}
+			if (!tmp.renameTo(store)) {
+				throw new IOException("Couldn't rename "+tmp+" to "+store);
+			}
+			dirty = false;
+		} catch (IOException e) {
+			QuickSearchActivator.log(e);
+		} finally {
+			if (out!=null) {
+				try {
+					out.close();
+				} catch (IOException e) {
+					//ignore
+				}
+			}
+		}
+	}
+
+}
@@ -0,0 +1,417 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Pivotal Software, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Pivotal Software, Inc. - initial API and implementation
+ *******************************************************************************/
+package org.springsource.ide.eclipse.commons.quicksearch.core.index;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.net.URI;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IPath;
+import org.springsource.ide.eclipse.commons.quicksearch.core.QuickTextQuery;
+import org.springsource.ide.eclipse.commons.quicksearch.ui.QuickSearchActivator;
+
+/**
+ * A trigram index remembers, for every indexed file, the set of three-character sequences
+ * that occur on any of its lines. Before a file is opened by the searcher, the index can
+ * tell whether the file may possibly contain a match for a given query. Files that can not
+ * contain a match are skipped without reading them.
+ * <p>
+ * The index is 'conservative'. It only ever answers 'no' when it knows for certain that a file
+ * can not match. Files that are not (yet) indexed, or whose index entry is out of date, are always
+ * treated as potential matches.
+ * <p>
+ * Trigrams are case folded, so the same index serves both case sensitive and case
+ * insensitive queries. Trigrams are packed into an int in a way that may cause collisions
+ * for non-ascii characters. Collisions only result in false positives, which is safe.
+ * <p>
+ * The index can be saved to and loaded from a file. Typically the file lives in the plugin's
+ * state location. Keeping it up-to-date is the responsibility of a {@link TrigramIndexUpdater}.
+ */
+public class TrigramIndex {
+
+	private static final int FORMAT_VERSION = 2;
+
+	/**
+	 * Files larger than this are not indexed. Such files are always considered potential matches.
+	 */
+	public static final long MAX_INDEXED_FILE_SIZE = 4 * 1024 * 1024;
+
+	private static class Entry {
+		final long stamp;
+		final String charset; //Used to decode the contents. Changing it doesn't change the stamp.
+		final int[] trigrams; //sorted, without duplicates
+
+		Entry(long stamp, String charset, int[] trigrams) {
+			this.stamp = stamp;
+			this.charset = charset;
+			this.trigrams = trigrams;
+		}
+	}
+
+	/**
+	 * Index entries keyed by the full path of the file (as a String, to keep
+	 * the persisted form simple).
+	 */
+	private final Map<String, Entry> entries = new HashMap<String, Entry>();
+
+	/**
+	 * Location where the index is saved / loaded from. May be null, in which case the index
+	 * is only kept in memory.
+	 */
+	private final File store;
+
+	/**
+	 * Set whenever the index is changed since last being saved.
+	 */
+	private boolean dirty = false;
+
+	public TrigramIndex(File store) {
+		this.store = store;
+	}
+
+	/**
+	 * Compute the trigram key for three consecutive characters.
+	 */
+	public static int trigram(char a, char b, char c) {
+		return ((Character.toLowerCase(a) & 0x3FF) << 20)
+			| ((Character.toLowerCase(b) & 0x3FF) << 10)
+			| (Character.toLowerCase(c) & 0x3FF);
+	}
+
+	/**
+	 * Determine the trigrams that must occur in any line matching the given query.
+	 *
+	 * @return A sorted array of trigrams, or null if the query doesn't contain any literal text
+	 *   long enough to narrow down the search.
+	 */
+	public static int[] requiredTrigrams(QuickTextQuery query) {
+		if (query==null || query.isTrivial()) {
+			return null;
+		}
+		String pattern = query.getPatternString();
+		IntSet trigrams = new IntSet();
+		int segmentStart = 0;
+		for (int i = 0; i <= pattern.length(); i++) {
+			if (i==pattern.length() || pattern.charAt(i)=='*' || pattern.charAt(i)=='?') {
+				//End of a literal segment
+				for (int j = segmentStart; j+2 < i; j++) {
+					trigrams.add(trigram(pattern.charAt(j), pattern.charAt(j+1), pattern.charAt(j+2)));
+				}
+				segmentStart = i+1;
+			}
+		}
+		if (trigrams.isEmpty()) {
+			return null;
+		}
+		return trigrams.toSortedArray();
+	}
+
+	/**
+	 * Compute the trigrams for all the lines in some text. Trigrams never span
+	 * across line terminators since quicksearch only matches text inside a single line.
+	 */
+	static int[] computeTrigrams(Reader input) throws IOException {
+		IntSet trigrams = new IntSet();
+		char[] buf = new char[8192];
+		char a = 0, b = 0; //The two chars preceding the current char
+		int window = 0; //Number of valid chars in the window (a, b)
+		int read;
+		while ((read = input.read(buf))>=0) {
+			for (int i = 0; i < read; i++) {
+				char c = buf[i];
+				if (c=='\n' || c=='\r') {
+					window = 0;
+				} else {
+					if (window>=2) {
+						trigrams.add(trigram(a, b, c));
+					} else {
+						window++;
+					}
+					a = b;
+					b = c;
+				}
+			}
+		}
+		return trigrams.toSortedArray();
+	}
+
+	/**
+	 * Determine whether a file may contain a line matching all of the given trigrams.
+	 * <p>
+	 * Only the modification stamp is checked here, looking up the charset of every file searched
+	 * is too costly. When the charset of a file changes, its entry must be removed instead (the
+	 * {@link TrigramIndexUpdater} does this).
+	 *
+	 * @param required Sorted array of trigrams as returned by {@link #requiredTrigrams(QuickTextQuery)}.
+	 *   A null value means there are no constraints.
+	 */
+	public boolean mayContain(IFile file, int[] required) {
+		if (required==null) {
+			return true;
+		}
+		Entry e;
+		synchronized (this) {
+			e = entries.get(key(file));
+		}
+		if (e==null || e.stamp!=file.getModificationStamp()) {
+			//Not indexed or stale. Have to assume it might be a match.
+			return true;
+		}
+		for (int t : required) {
+			if (Arrays.binarySearch(e.trigrams, t)<0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @return true if the file has an index entry that corresponds to its current modification stamp
+	 *   and charset.
+	 */
+	public boolean isUpToDate(IFile file) {
+		Entry e;
+		synchronized (this) {
+			e = entries.get(key(file));
+		}
+		if (e==null || e.stamp!=file.getModificationStamp()) {
+			return false;
+		}
+		try {
+			return e.charset.equals(file.getCharset());
+		} catch (CoreException ex) {
+			return false;
+		}
+	}
+
+	/**
+	 * Read a file's contents and (re)create its index entry.
+	 */
+	public void index(IFile file) throws CoreException, IOException {
+		long stamp = file.getModificationStamp();
+		URI location = file.getLocationURI();
+		if (location!=null && "file".equals(location.getScheme())) {
+			File ioFile = new File(location);
+			if (ioFile.length()>MAX_INDEXED_FILE_SIZE) {
+				remove(file.getFullPath());
+				return;
+			}
+		}
+		String charset = file.getCharset();
+		Reader reader = new BufferedReader(new InputStreamReader(file.getContents(true), charset));
+		int[] trigrams;
+		try {
+			trigrams = computeTrigrams(reader);
+		} finally {
+			reader.close();
+		}
+		synchronized (this) {
+			entries.put(key(file), new Entry(stamp, charset, trigrams));
+			dirty = true;
+		}
+	}
+
+	/**
+	 * Remove the index entry of a single file.
+	 */
+	public synchronized void remove(IPath file) {
+		if (entries.remove(file.toString())!=null) {
+			dirty = true;
+		}
+	}
+
+	/**
+	 * Remove the index entries of all the files nested inside of a folder or project.
+	 */
+	public synchronized void removeAll(IPath container) {
+		String key = container.toString();
+		String prefix = key.endsWith("/") ? key : key + "/";
+		Iterator<String> keys = entries.keySet().iterator();
+		while (keys.hasNext()) {
+			if (keys.next().startsWith(prefix)) {
+				keys.remove();
+				dirty = true;
+			}
+		}
+	}
+
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	private static String key(IFile file) {
+		return file.getFullPath().toString();
+	}
+
+	/**
+	 * Load index contents from the store. If the store doesn't exist or can not be read
+	 * the index will simply be empty.
+	 */
+	public synchronized void load() {
+		entries.clear();
+		dirty = false;
+		if (store==null || !store.isFile()) {
+			return;
+		}
+		DataInputStream in = null;
+		try {
+			in = new DataInputStream(new BufferedInputStream(new FileInputStream(store)));
+			if (in.readInt()!=FORMAT_VERSION) {
+				return;
+			}
+			int count = in.readInt();
+			for (int i = 0; i < count; i++) {
+				String key = in.readUTF();
+				long stamp = in.readLong();
+				String charset = in.readUTF();
+				int[] trigrams = new int[in.readInt()];
+				for (int j = 0; j < trigrams.length; j++) {
+					trigrams[j] = in.readInt();
+				}
+				entries.put(key, new Entry(stamp, charset, trigrams));
+			}
+		} catch (IOException e) {
+			//Corrupt or truncated. Start over with an empty index.
+			entries.clear();
+			QuickSearchActivator.log(e);
+		} finally {
+			if (in!=null) {
+				try {
+					in.close();
+				} catch (IOException e) {
+					//ignore
+				}
+			}
+		}
+	}
+
+	/**
+	 * Save index contents to the store, if anything has changed since last save / load.
+	 */
+	public synchronized void save() {
+		if (store==null || !dirty) {
+			return;
+		}
+		File tmp = new File(store.getPath()+".tmp");
+		DataOutputStream out = null;
+		try {
+			out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+			out.writeInt(FORMAT_VERSION);
+			out.writeInt(entries.size());
+			for (Map.Entry<String, Entry> e : entries.entrySet()) {
+				out.writeUTF(e.getKey());
+				out.writeLong(e.getValue().stamp);
+				out.writeUTF(e.getValue().charset);
+				int[] trigrams = e.getValue().trigrams;
+				out.writeInt(trigrams.length);
+				for (int t : trigrams) {
+					out.writeInt(t);
+				}
+			}
+			out.close();
+			out = null;
+			if (store.exists() && !store.delete()) {
+				throw new IOException("Couldn't replace "+store);
+			}
+			if (!tmp.renameTo(store)) {
+				throw new IOException("Couldn't rename "+tmp+" to "+store);
+			}
+			dirty = false;
+		} catch (IOException e) {
+			QuickSearchActivator.log(e);
+		} finally {
+			if (out!=null) {
+				try {
+					out.close();
+				} catch (IOException e) {
+					//ignore
+				}
+			}
+		}
+	}
+
+	/**
+	 * Minimal open addressing hash set of ints. Used to collect trigrams without
+	 * boxing every one of them.
+	 */
+	private static class IntSet {
+		private static final int EMPTY = -1; //Trigram keys are always positive so -1 can't be a key
+
+		private int[] table = newTable(256);
+		private int size = 0;
+
+		private static int[] newTable(int capacity) {
+			int[] t = new int[capacity];
+			Arrays.fill(t, EMPTY);
+			return t;
+		}
+
+		void add(int value) {
+			if (insert(table, value)) {
+				size++;
+				if (size*2 > table.length) {
+					int[] old = table;
+					table = newTable(old.length*2);
+					for (int v : old) {
+						if (v!=EMPTY) {
+							insert(table, v);
+						}
+					}
+				}
+			}
+		}
+
+		private static boolean insert(int[] table, int value) {
+			int mask = table.length-1;
+			int i = (value * 0x9E3779B9) >>> 1 & mask;
+			while (table[i]!=EMPTY) {
+				if (table[i]==value) {
+					return false;
+				}
+				i = (i+1) & mask;
+			}
+			table[i] = value;
+			return true;
+		}
+
+		boolean isEmpty() {
+			return size==0;
+		}
+
+		int[] toSortedArray() {
+			int[] result = new int[size];
+			int n = 0;
+			for (int v : table) {
+				if (v!=EMPTY) {
+					result[n++] = v;
+				}
+			}
+			Arrays.sort(result);
+			return result;
+		}
+	}
+
+}
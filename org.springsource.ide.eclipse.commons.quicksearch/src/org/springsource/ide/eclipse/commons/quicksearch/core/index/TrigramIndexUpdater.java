@@ -0,0 +1,224 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Pivotal Software, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Pivotal Software, Inc. - initial API and implementation
+ *******************************************************************************/
+package org.springsource.ide.eclipse.commons.quicksearch.core.index;
+
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+
+import org.eclipse.core.resources.IContainer;
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.resources.IResourceChangeEvent;
+import org.eclipse.core.resources.IResourceChangeListener;
+import org.eclipse.core.resources.IResourceDelta;
+import org.eclipse.core.resources.IResourceDeltaVisitor;
+import org.eclipse.core.resources.ResourcesPlugin;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
+import org.springsource.ide.eclipse.commons.quicksearch.core.priority.PriorityFunction;
+import org.springsource.ide.eclipse.commons.quicksearch.ui.QuickSearchActivator;
+
+/**
+ * Keeps a {@link TrigramIndex} up-to-date. When started, it scans the workspace once
+ * for files that are not yet indexed (or whose entry is stale) and then listens for
+ * resource changes to (re)index or remove the entries of changed files.
+ * <p>
+ * A change of encoding leaves the modification stamp alone, so the entries of the affected
+ * files are removed right away rather than left for the searcher to trust until reindexed.
+ * <p>
+ * All the actual indexing work happens in the background, in this Job.
+ */
+public class TrigramIndexUpdater extends Job implements IResourceChangeListener {
+
+	/**
+	 * Delay before processing changes. Resource changes tend to come in bursts (e.g.
+	 * during a build or a 'git checkout') so it pays to wait a little.
+	 */
+	private static final long DELAY = 1000;
+
+	private final TrigramIndex index;
+
+	/**
+	 * Used to skip files that would never be searched anyway.
+	 */
+	private final PriorityFunction filter;
+
+	/**
+	 * Files waiting to be (re)indexed.
+	 */
+	private final LinkedHashSet<IFile> pending = new LinkedHashSet<IFile>();
+
+	/**
+	 * Containers waiting to be scanned for files that need indexing. Guarded by 'pending'.
+	 */
+	private final LinkedHashSet<IContainer> pendingScans = new LinkedHashSet<IContainer>();
+
+	public TrigramIndexUpdater(TrigramIndex index, PriorityFunction filter) {
+		super("Indexing workspace for Quick Search");
+		this.index = index;
+		this.filter = filter;
+		setSystem(true);
+		setPriority(Job.DECORATE);
+	}
+
+	public void start() {
+		ResourcesPlugin.getWorkspace().addResourceChangeListener(this, IResourceChangeEvent.POST_CHANGE);
+		synchronized (pending) {
+			pendingScans.add(ResourcesPlugin.getWorkspace().getRoot());
+		}
+		schedule(DELAY);
+	}
+
+	public void stop() {
+		ResourcesPlugin.getWorkspace().removeResourceChangeListener(this);
+		cancel();
+		synchronized (pending) {
+			pending.clear();
+			pendingScans.clear();
+		}
+	}
+
+	public void resourceChanged(IResourceChangeEvent event) {
+		IResourceDelta delta = event.getDelta();
+		if (delta==null) {
+			return;
+		}
+		try {
+			delta.accept(new IResourceDeltaVisitor() {
+				public boolean visit(IResourceDelta delta) throws CoreException {
+					IResource r = delta.getResource();
+					if (delta.getKind()==IResourceDelta.REMOVED) {
+						if (r instanceof IFile) {
+							index.remove(r.getFullPath());
+						} else {
+							index.removeAll(r.getFullPath());
+						}
+						return false;
+					}
+					boolean recoded = (delta.getFlags() & (IResourceDelta.REPLACED | IResourceDelta.ENCODING))!=0;
+					if (r instanceof IFile) {
+						if (recoded) {
+							//Entry may be stale while the stamp is still the same.
+							index.remove(r.getFullPath());
+						}
+						if (delta.getKind()==IResourceDelta.ADDED || recoded || (delta.getFlags() & IResourceDelta.CONTENT)!=0) {
+							request((IFile) r);
+						}
+					} else if (recoded && r instanceof IContainer) {
+						//Default encoding of a folder or project changed, affecting any files inheriting it.
+						index.removeAll(r.getFullPath());
+						requestScan((IContainer) r);
+					}
+					return true;
+				}
+			});
+		} catch (CoreException e) {
+			QuickSearchActivator.log(e);
+		}
+	}
+
+	/**
+	 * Request a file to be (re)indexed in the background.
+	 */
+	public void request(IFile file) {
+		synchronized (pending) {
+			pending.add(file);
+		}
+		schedule(DELAY);
+	}
+
+	/**
+	 * Request a container to be scanned in the background for files that need (re)indexing.
+	 */
+	private void requestScan(IContainer container) {
+		synchronized (pending) {
+			pendingScans.add(container);
+		}
+		schedule(DELAY);
+	}
+
+	@Override
+	protected IStatus run(IProgressMonitor monitor) {
+		IContainer container;
+		while ((container = nextPendingScan())!=null && !monitor.isCanceled()) {
+			scan(container, monitor);
+		}
+		IFile file;
+		while ((file = nextPending())!=null && !monitor.isCanceled()) {
+			if (file.isAccessible() && !index.isUpToDate(file) && filter.priority(file)!=PriorityFunction.PRIORITY_IGNORE) {
+				try {
+					index.index(file);
+				} catch (Exception e) {
+					//Probably file got deleted or is out of sync. Make sure it isn't trusted.
+					index.remove(file.getFullPath());
+				}
+			}
+		}
+		index.save();
+		return monitor.isCanceled() ? Status.CANCEL_STATUS : Status.OK_STATUS;
+	}
+
+	private IContainer nextPendingScan() {
+		synchronized (pending) {
+			Iterator<IContainer> iter = pendingScans.iterator();
+			if (iter.hasNext()) {
+				IContainer container = iter.next();
+				iter.remove();
+				return container;
+			}
+			return null;
+		}
+	}
+
+	private IFile nextPending() {
+		synchronized (pending) {
+			Iterator<IFile> iter = pending.iterator();
+			if (iter.hasNext()) {
+				IFile file = iter.next();
+				iter.remove();
+				return file;
+			}
+			return null;
+		}
+	}
+
+	/**
+	 * Walk a container and add any files to the pending queue that don't have up-to-date
+	 * index entries.
+	 */
+	private void scan(IContainer container, IProgressMonitor monitor) {
+		if (monitor.isCanceled() || !container.isAccessible()) {
+			return;
+		}
+		try {
+			for (IResource r : container.members()) {
+				if (filter.priority(r)!=PriorityFunction.PRIORITY_IGNORE) {
+					if (r instanceof IFile) {
+						IFile f = (IFile) r;
+						if (!index.isUpToDate(f)) {
+							synchronized (pending) {
+								pending.add(f);
+							}
+						}
+					} else if (r instanceof IContainer) {
+						scan((IContainer) r, monitor);
+					}
+				}
+			}
+		} catch (CoreException e) {
+			QuickSearchActivator.log(e);
+		}
+	}
+
+}
@@ -28,6 +28,14 @@ public class QuickSearchPreferences {
 	public static final String IGNORED_NAMES = "ignored.names";
 	public static final String IGNORED_PREFIXES = "ignored.prefixes";
 	public static final String MAX_LINE_LEN = "LineReader.MAX_LINE_LEN";
+	public static final String USE_INDEX = "index.enabled";
+	public static final String SEARCH_THREADS = "search.threads";
+
+	/**
+	 * Default number of threads used to search files. Searching is mostly bound by reading
+	 * files so using more than a handful of threads doesn't help much.
+	 */
+	public static final int DEFAULT_SEARCH_THREADS = Math.min(4, Runtime.getRuntime().availableProcessors());
 
 	private IEclipsePreferences store;
 
@@ -55,6 +63,18 @@ public class QuickSearchPreferences {
 		return store.getInt(MAX_LINE_LEN, LineReader.DEFAULT_MAX_LINE_LENGTH);
 	}
 
+	public int getSearchThreads() {
+		return Math.max(1, store.getInt(SEARCH_THREADS, DEFAULT_SEARCH_THREADS));
+	}
+
+	/**
+	 * Whether a persistent trigram index should be maintained and used to avoid reading files
+	 * that can not match a query.
+	 */
+	public boolean getUseIndex() {
+		return store.getBoolean(USE_INDEX, false);
+	}
+
 	private String[] getAndParseStringList(String key) {
 		String raw = store.get(key, null);
 		if (raw!=null) {
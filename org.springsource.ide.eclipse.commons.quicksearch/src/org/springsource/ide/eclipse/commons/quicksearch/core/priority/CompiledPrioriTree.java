@@ -0,0 +1,126 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Pivotal Software, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Pivotal Software, Inc. - initial API and implementation
+ *******************************************************************************/
+package org.springsource.ide.eclipse.commons.quicksearch.core.priority;
+
+import java.util.HashSet;
+
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.runtime.IPath;
+
+/**
+ * A read-only copy of a {@link PrioriTree}, created with {@link PrioriTree#compile()}.
+ * <p>
+ * The nodes of the tree are numbered and their priorities are kept in flat arrays. The edges of the tree
+ * are kept in a single hash table, keyed by parent node number and path segment. A lookup walks
+ * the segments of the resource's path by index, so it doesn't allocate anything. This matters because
+ * the walker computes the priority of every file and folder in the workspace.
+ */
+public class CompiledPrioriTree extends DefaultPriorityFunction {
+
+	private final double[] priority;
+	private final double[] childPriority;
+	private int nodeCount = 0;
+
+	/**
+	 * Open addressing hash table of edges. An entry maps (edgeParent, edgeSegment) to edgeChild.
+	 * Unused entries have edgeChild -1.
+	 */
+	private final int[] edgeParent;
+	private final String[] edgeSegment;
+	private final int[] edgeChild;
+
+	/**
+	 * @param config Priority function from which to copy the configuration of resources to be ignored.
+	 * @param nodes Number of nodes of the tree.
+	 */
+	CompiledPrioriTree(DefaultPriorityFunction config, int nodes) {
+		this.ignoreDerived = config.ignoreDerived;
+		this.ignoredExtensions = config.ignoredExtensions.clone();
+		this.ignoredPrefixes = config.ignoredPrefixes.clone();
+		this.ignoredNames = config.ignoredNames.clone();
+		if (config.ignoredResources!=null) {
+			this.ignoredResources = new HashSet<IResource>(config.ignoredResources);
+		}
+		this.priority = new double[nodes];
+		this.childPriority = new double[nodes];
+		int capacity = 2;
+		while (capacity < 2*nodes) {
+			capacity *= 2;
+		}
+		edgeParent = new int[capacity];
+		edgeSegment = new String[capacity];
+		edgeChild = new int[capacity];
+		for (int i = 0; i < capacity; i++) {
+			edgeChild[i] = -1;
+		}
+	}
+
+	/**
+	 * Add a node. The first node added is the root.
+	 *
+	 * @return The number of the node.
+	 */
+	int addNode(double priority, double childPriority) {
+		int node = nodeCount++;
+		this.priority[node] = priority;
+		this.childPriority[node] = childPriority;
+		return node;
+	}
+
+	void addEdge(int parent, String segment, int child) {
+		int pos = find(parent, segment);
+		edgeParent[pos] = parent;
+		edgeSegment[pos] = segment;
+		edgeChild[pos] = child;
+	}
+
+	@Override
+	public double priority(IResource r) {
+		double result = super.priority(r);
+		if (result==PRIORITY_IGNORE) {
+			//Ignored paths shouldn't be changed ... ever.
+			return PRIORITY_IGNORE;
+		}
+		IPath path = r.getFullPath();
+		int segments = path.segmentCount();
+		int node = 0;
+		int depth = 0;
+		while (depth<segments) {
+			int child = edgeChild[find(node, path.segment(depth))];
+			if (child<0) {
+				break;
+			}
+			node = child;
+			depth++;
+		}
+		if (depth==segments) {
+			//exact node found
+			return priority[node];
+		} else {
+			//ancestor node found
+			return childPriority[node];
+		}
+	}
+
+	/**
+	 * @return The position of the edge in the hash table, or the position where it should be added.
+	 */
+	private int find(int parent, String segment) {
+		int mask = edgeChild.length-1;
+		int h = parent*31 + segment.hashCode();
+		int pos = (h ^ (h >>> 16)) & mask;
+		while (edgeChild[pos]>=0 && (edgeParent[pos]!=parent || !edgeSegment[pos].equals(segment))) {
+			pos = (pos+1) & mask;
+		}
+		return pos;
+	}
+
+}
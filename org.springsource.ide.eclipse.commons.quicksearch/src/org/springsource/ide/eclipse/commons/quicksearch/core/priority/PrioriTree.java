@@ -202,6 +202,38 @@ public class PrioriTree extends DefaultPriorityFunction {
 		return null;
 	}
 
+	/**
+	 * Create a read-only copy of this tree that is optimized for fast lookups. The copy doesn't
+	 * change when priorities are set in this tree afterwards.
+	 */
+	public CompiledPrioriTree compile() {
+		CompiledPrioriTree compiled = new CompiledPrioriTree(this, countNodes());
+		int root = compiled.addNode(priority, childPriority);
+		addChildren(compiled, root);
+		return compiled;
+	}
+
+	private void addChildren(CompiledPrioriTree compiled, int node) {
+		if (children!=null) {
+			for (Entry<String, PrioriTree> c : children.entrySet()) {
+				PrioriTree child = c.getValue();
+				int childNode = compiled.addNode(child.priority, child.childPriority);
+				compiled.addEdge(node, c.getKey(), childNode);
+				child.addChildren(compiled, childNode);
+			}
+		}
+	}
+
+	private int countNodes() {
+		int count = 1;
+		if (children!=null) {
+			for (PrioriTree child : children.values()) {
+				count += child.countNodes();
+			}
+		}
+		return count;
+	}
+
 	/**
 	 * For debugging purposes. Dumps tree data onto System.out
 	 */
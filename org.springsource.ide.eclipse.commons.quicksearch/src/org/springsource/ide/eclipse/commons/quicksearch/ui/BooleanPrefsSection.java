@@ -0,0 +1,78 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Pivotal Software, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Pivotal Software, Inc. - initial API and implementation
+ *******************************************************************************/
+package org.springsource.ide.eclipse.commons.quicksearch.ui;
+
+import org.eclipse.core.runtime.preferences.IEclipsePreferences;
+import org.eclipse.jface.layout.GridDataFactory;
+import org.eclipse.swt.SWT;
+import org.eclipse.swt.widgets.Button;
+import org.eclipse.swt.widgets.Composite;
+import org.osgi.service.prefs.BackingStoreException;
+import org.springsource.ide.eclipse.commons.livexp.core.LiveExpression;
+import org.springsource.ide.eclipse.commons.livexp.core.ValidationResult;
+import org.springsource.ide.eclipse.commons.livexp.core.Validator;
+import org.springsource.ide.eclipse.commons.livexp.ui.IPageWithSections;
+import org.springsource.ide.eclipse.commons.livexp.ui.PrefsPageSection;
+
+/**
+ * Prefs page section with a single checkbox, backed by a boolean preference in the
+ * quicksearch preferences store.
+ */
+public class BooleanPrefsSection extends PrefsPageSection {
+
+	private final IEclipsePreferences store = QuickSearchActivator.getDefault().getPreferences().getStore();
+
+	private final String label;
+	private final String prefsKey;
+	private final boolean defaultValue;
+	private final String tooltip;
+
+	private Button checkbox;
+
+	public BooleanPrefsSection(IPageWithSections owner, String label, String prefsKey, boolean defaultValue, String tooltip) {
+		super(owner);
+		this.label = label;
+		this.prefsKey = prefsKey;
+		this.defaultValue = defaultValue;
+		this.tooltip = tooltip;
+	}
+
+	@Override
+	public boolean performOK() {
+		store.putBoolean(prefsKey, checkbox.getSelection());
+		try {
+			store.flush();
+		} catch (BackingStoreException e) {
+			QuickSearchActivator.log(e);
+		}
+		return true;
+	}
+
+	@Override
+	public void performDefaults() {
+		checkbox.setSelection(defaultValue);
+	}
+
+	@Override
+	public LiveExpression<ValidationResult> getValidator() {
+		return Validator.constant(ValidationResult.OK);
+	}
+
+	@Override
+	public void createContents(Composite page) {
+		checkbox = new Button(page, SWT.CHECK);
+		checkbox.setText(label);
+		checkbox.setToolTipText(tooltip);
+		checkbox.setSelection(store.getBoolean(prefsKey, defaultValue));
+		GridDataFactory.fillDefaults().grab(true, false).applyTo(checkbox);
+	}
+
+}
@@ -6,7 +6,11 @@ import org.eclipse.core.runtime.preferences.InstanceScope;
 import org.eclipse.jface.resource.ImageDescriptor;
 import org.eclipse.ui.plugin.AbstractUIPlugin;
 import org.osgi.framework.BundleContext;
+import org.springsource.ide.eclipse.commons.quicksearch.core.index.SkippedFilesCache;
+import org.springsource.ide.eclipse.commons.quicksearch.core.index.TrigramIndex;
+import org.springsource.ide.eclipse.commons.quicksearch.core.index.TrigramIndexUpdater;
 import org.springsource.ide.eclipse.commons.quicksearch.core.preferences.QuickSearchPreferences;
+import org.springsource.ide.eclipse.commons.quicksearch.core.priority.DefaultPriorityFunction;
 
 /**
  * The activator class controls the plug-in life cycle
@@ -19,7 +23,15 @@ public class QuickSearchActivator extends AbstractUIPlugin {
 	// The shared instance
 	private static QuickSearchActivator plugin;
 
+	private static final String INDEX_FILE = "trigram.idx";
+	private static final String SKIPPED_FILES_FILE = "skipped.files";
+
 	private QuickSearchPreferences prefs = null; //Lazy initialized
+
+	private TrigramIndex index = null; //Lazy initialized, only when enabled in the preferences
+	private TrigramIndexUpdater indexUpdater = null;
+
+	private SkippedFilesCache skippedFiles = null; //Lazy initialized
 	
 	/**
 	 * The constructor
@@ -41,6 +53,13 @@ public class QuickSearchActivator extends AbstractUIPlugin {
 	 * @see org.eclipse.ui.plugin.AbstractUIPlugin#stop(org.osgi.framework.BundleContext)
 	 */
 	public void stop(BundleContext context) throws Exception {
+		disposeIndex();
+		synchronized (this) {
+			if (skippedFiles!=null) {
+				skippedFiles.save();
+				skippedFiles = null;
+			}
+		}
 		plugin = null;
 		super.stop(context);
 	}
@@ -89,4 +108,50 @@ public class QuickSearchActivator extends AbstractUIPlugin {
 		return prefs;
 	}
 	
+	/**
+	 * Gets the trigram index used to narrow down the files that need to be searched.
+	 * The index is created and loaded from the plugin state location the first time
+	 * it is requested, and kept up-to-date from then on.
+	 *
+	 * @return The index or null if use of the index is disabled in the preferences.
+	 */
+	public synchronized TrigramIndex getIndex() {
+		if (getPreferences().getUseIndex()) {
+			if (index==null) {
+				index = new TrigramIndex(getStateLocation().append(INDEX_FILE).toFile());
+				index.load();
+				DefaultPriorityFunction filter = new DefaultPriorityFunction();
+				filter.configure(getPreferences());
+				indexUpdater = new TrigramIndexUpdater(index, filter);
+				indexUpdater.start();
+			}
+		} else {
+			disposeIndex();
+		}
+		return index;
+	}
+
+	/**
+	 * Gets the cache of files that were found to contain binary or minified content
+	 * and should be skipped by future searches.
+	 */
+	public synchronized SkippedFilesCache getSkippedFiles() {
+		if (skippedFiles==null) {
+			skippedFiles = new SkippedFilesCache(getStateLocation().append(SKIPPED_FILES_FILE).toFile());
+			skippedFiles.load();
+		}
+		return skippedFiles;
+	}
+
+	private synchronized void disposeIndex() {
+		if (indexUpdater!=null) {
+			indexUpdater.stop();
+			indexUpdater = null;
+		}
+		if (index!=null) {
+			index.save();
+			index = null;
+		}
+	}
+
 }
@@ -85,7 +85,7 @@ public class QuickSearchContext {
 			for (IFile file : openFiles) {
 				priorities.setPriority(file.getFullPath(), PriorityFunction.PRIORITY_INTERESTING);
 			}
-			return priorities;
+			return priorities.compile();
 		} catch (Throwable e) {
 			QuickSearchActivator.log(e);
 		}
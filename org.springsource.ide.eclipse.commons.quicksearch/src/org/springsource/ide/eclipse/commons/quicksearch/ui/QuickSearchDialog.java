@@ -17,10 +17,9 @@
  *******************************************************************************/
 package org.springsource.ide.eclipse.commons.quicksearch.ui;
 
-import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.eclipse.core.commands.AbstractHandler;
 import org.eclipse.core.commands.ExecutionEvent;
@@ -30,6 +29,7 @@ import org.eclipse.core.runtime.IPath;
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.IStatus;
 import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
 import org.eclipse.jdt.ui.PreferenceConstants;
 import org.eclipse.jface.action.Action;
 import org.eclipse.jface.action.IAction;
@@ -110,6 +110,7 @@ import org.eclipse.ui.internal.WorkbenchMessages;
 import org.eclipse.ui.internal.ide.IDEWorkbenchPlugin;
 import org.eclipse.ui.progress.UIJob;
 import org.springsource.ide.eclipse.commons.quicksearch.core.LineItem;
+import org.springsource.ide.eclipse.commons.quicksearch.core.MatchStore;
 import org.springsource.ide.eclipse.commons.quicksearch.core.QuickTextQuery;
 import org.springsource.ide.eclipse.commons.quicksearch.core.QuickTextQuery.TextRange;
 import org.springsource.ide.eclipse.commons.quicksearch.core.QuickTextSearchRequestor;
@@ -303,6 +304,18 @@ public class QuickSearchDialog extends SelectionStatusDialog {
 	private static final String CASE_SENSITIVE = "CASE_SENSITIVE";
 	private static final boolean CASE_SENSITIVE_DEFAULT = true;
 
+	/**
+	 * Matches arriving from the searcher are shown in batches. A batch is shown when it has been
+	 * waiting for REFRESH_DELAY milliseconds, or as soon as it contains BATCH_SIZE matches.
+	 */
+	private static final long REFRESH_DELAY = 100;
+	private static final int BATCH_SIZE = 100;
+
+	/**
+	 * If this many matches are waiting to be shown, the searcher is paused until the UI catches up.
+	 */
+	private static final int MAX_BACKLOG = 1000;
+
 	/**
 	 * Represents an empty selection in the pattern input field (used only for
 	 * initial pattern).
@@ -349,6 +362,11 @@ public class QuickSearchDialog extends SelectionStatusDialog {
 
 	private final int MAX_LINE_LEN;
 
+	/**
+	 * Number of threads used by the searcher to search files.
+	 */
+	private final int searchThreads;
+
 	private IHandlerActivation showViewHandler;
 
 	private QuickTextSearcher searcher;
@@ -384,6 +402,7 @@ public class QuickSearchDialog extends SelectionStatusDialog {
 		contentProvider = new ContentProvider();
 		selectionMode = NONE;
 		MAX_LINE_LEN = QuickSearchActivator.getDefault().getPreferences().getMaxLineLen();
+		searchThreads = QuickSearchActivator.getDefault().getPreferences().getSearchThreads();
 	}
 
 //	/**
@@ -1130,19 +1149,29 @@ public class QuickSearchDialog extends SelectionStatusDialog {
 
 	/**
 	 * Refreshes the dialog - has to be called in UI thread.
+	 * <p>
+	 * If the only changes since the last refresh are newly added items, only the item count of the virtual
+	 * table is updated. The new rows are filled in by the ContentProvider when they become visible.
 	 */
 	public void refresh() {
 		if (list != null && !list.getTable().isDisposed()) {
+			boolean wasBacklogged = contentProvider.startRefresh();
+			boolean fullRefresh = contentProvider.takeFullRefresh();
 			ScrollBar sb = list.getTable().getVerticalBar();
 			int oldScroll = sb.getSelection();
 			int itemCount = contentProvider.getNumberOfElements();
 			list.setItemCount(itemCount);
-			list.refresh(true, false);
+			if (fullRefresh) {
+				list.refresh(true, false);
+			}
 			int newScroll = sb.getSelection();
 			if (oldScroll!=newScroll) {
 				System.out.println("Scroll moved in refresh: "+oldScroll+ " => " + newScroll);
 			}
 			//sb.setSelection((int) Math.floor(oldScroll*sb.getMaximum()));
+			if (wasBacklogged && searcher!=null) {
+				searcher.backlogCleared();
+			}
 		}
 //
 // The code below attempts to preserve selection, but it also messes up the
@@ -1180,6 +1209,20 @@ public class QuickSearchDialog extends SelectionStatusDialog {
 //		refreshCacheJob.schedule();
 	}
 
+	/**
+	 * Schedule refresh job to run after a delay, unless it is already scheduled. Unlike
+	 * {@link #scheduleRefresh()} this doesn't postpone an already scheduled refresh, so a steady
+	 * stream of requests still results in a refresh every 'delay' milliseconds.
+	 */
+	private void scheduleRefresh(long delay) {
+		int state = refreshJob.getState();
+		if (state==Job.NONE || state==Job.RUNNING) {
+			//Note: if the job is running, it will be rescheduled when it finishes. This is needed
+			// because the running job may already have missed the changes we are scheduling for.
+			refreshJob.schedule(delay);
+		}
+	}
+
 	/*
 	 * (non-Javadoc)
 	 *
@@ -1302,7 +1345,9 @@ public class QuickSearchDialog extends SelectionStatusDialog {
 		if (this.searcher==null) {
 			if (!newFilter.isTrivial()) {
 				//Create the QuickTextSearcher with the inital query.
-				this.searcher = new QuickTextSearcher(newFilter, context.createPriorityFun(), MAX_LINE_LEN, new QuickTextSearchRequestor() {
+				this.searcher = new QuickTextSearcher(newFilter, context.createPriorityFun(), MAX_LINE_LEN,
+						QuickSearchActivator.getDefault().getIndex(), QuickSearchActivator.getDefault().getSkippedFiles(),
+						searchThreads, new QuickTextSearchRequestor() {
 					@Override
 					public void add(LineItem match) {
 						contentProvider.add(match);
@@ -1320,8 +1365,13 @@ public class QuickSearchDialog extends SelectionStatusDialog {
 					}
 					@Override
 					public void update(LineItem match) {
+						contentProvider.update(match);
 						contentProvider.refresh();
 					}
+					@Override
+					public boolean isBacklogged() {
+						return contentProvider.isBacklogged();
+					}
 				});
 				refresh();
 			}
@@ -1369,13 +1419,24 @@ public class QuickSearchDialog extends SelectionStatusDialog {
 	 */
 	private class ContentProvider implements IStructuredContentProvider, ILazyContentProvider {
 
-		private List items;
+		private final MatchStore items = new MatchStore();
+
+		/**
+		 * Number of items added since the viewer was last refreshed.
+		 */
+		private final AtomicInteger pending = new AtomicInteger();
+
+		/**
+		 * Set when items were removed or changed since the viewer was last refreshed. Newly added
+		 * items are always at the end of the list, so showing them only requires an update of the viewer's
+		 * item count. Anything else requires a full refresh.
+		 */
+		private volatile boolean needsFullRefresh = true;
 
 		/**
 		 * Creates new instance of <code>ContentProvider</code>.
 		 */
 		public ContentProvider() {
-			this.items = Collections.synchronizedList(new ArrayList(2048));
 //			this.duplicates = Collections.synchronizedSet(new HashSet(256));
 //			this.lastSortedItems = Collections.synchronizedList(new ArrayList(
 //					2048));
@@ -1383,6 +1444,7 @@ public class QuickSearchDialog extends SelectionStatusDialog {
 
 		public void remove(LineItem match) {
 			this.items.remove(match);
+			needsFullRefresh = true;
 		}
 
 		/**
@@ -1390,6 +1452,8 @@ public class QuickSearchDialog extends SelectionStatusDialog {
 		 */
 		public void reset() {
 			this.items.clear();
+			pending.set(0);
+			needsFullRefresh = true;
 		}
 
 		/**
@@ -1399,13 +1463,55 @@ public class QuickSearchDialog extends SelectionStatusDialog {
 		 */
 		public void add(LineItem match) {
 			this.items.add(match);
+			pending.incrementAndGet();
+		}
+
+		/**
+		 * Called when an item's label needs updating.
+		 */
+		public void update(LineItem match) {
+			needsFullRefresh = true;
 		}
 
 		/**
-		 * Refresh dialog.
+		 * Refresh dialog. Changes are batched: the refresh happens right away only if a full batch
+		 * of new items is waiting.
 		 */
 		public void refresh() {
-			scheduleRefresh();
+			if (pending.get()>=BATCH_SIZE) {
+				scheduleRefresh();
+			} else {
+				scheduleRefresh(REFRESH_DELAY);
+			}
+		}
+
+		/**
+		 * Called at the start of a refresh of the viewer.
+		 * <p>
+		 * Note: the searcher may add items at any time, and it pauses itself as soon as it sees a backlog.
+		 * So checking for a backlog and resetting the count must be a single step, or the searcher could
+		 * pause in between and never be told that the backlog was cleared.
+		 *
+		 * @return true if the viewer was backlogged, so that the searcher must be told it can continue.
+		 */
+		public boolean startRefresh() {
+			return pending.getAndSet(0)>=MAX_BACKLOG;
+		}
+
+		/**
+		 * @return true if a full refresh is needed, false if it's enough to update the viewer's item count.
+		 */
+		public boolean takeFullRefresh() {
+			boolean full = needsFullRefresh;
+			needsFullRefresh = false;
+			return full;
+		}
+
+		/**
+		 * @return true if the viewer has fallen so far behind that the searcher should be paused.
+		 */
+		public boolean isBacklogged() {
+			return pending.get()>=MAX_BACKLOG;
 		}
 
 //		/**
@@ -1516,11 +1622,13 @@ public class QuickSearchDialog extends SelectionStatusDialog {
 		 * @see org.eclipse.jface.viewers.ILazyContentProvider#updateElement(int)
 		 */
 		public void updateElement(int index) {
-
-			QuickSearchDialog.this.list.replace((items
-					.size() > index) ? items.get(index) : null,
-					index);
-
+			LineItem item = null;
+			synchronized (items) {
+				if (items.size() > index) {
+					item = items.get(index);
+				}
+			}
+			QuickSearchDialog.this.list.replace(item, index);
 		}
 
 	}
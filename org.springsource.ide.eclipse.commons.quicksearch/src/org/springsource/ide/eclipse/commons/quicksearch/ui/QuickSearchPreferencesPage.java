@@ -15,6 +15,7 @@ import java.util.List;
 
 import org.springsource.ide.eclipse.commons.livexp.ui.PreferencePageWithSections;
 import org.springsource.ide.eclipse.commons.livexp.ui.PrefsPageSection;
+import org.springsource.ide.eclipse.commons.quicksearch.core.preferences.QuickSearchPreferences;
 
 public class QuickSearchPreferencesPage extends PreferencePageWithSections {
 
@@ -23,6 +24,11 @@ public class QuickSearchPreferencesPage extends PreferencePageWithSections {
 		List<PrefsPageSection> sections = new ArrayList<PrefsPageSection>();
 		sections.add(new QuickSearchIgnoreSection(this));
 		sections.add(new MaxLineLengthSection(this));
+		sections.add(new BooleanPrefsSection(this, "Use a persistent index to speed up searches",
+				QuickSearchPreferences.USE_INDEX, false,
+				"Maintain an index of the text in workspace files (in the background). Quick Search uses "
+				+ "the index to skip files that can not contain a match without reading them."
+		));
 		return sections;
 	}
 
@@ -0,0 +1,371 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Pivotal Software, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *   Pivotal Software, Inc. - initial API and implementation
+ *******************************************************************************/
+package org.springsource.ide.eclipse.commons.quicksearch.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+
+/**
+ * Splits a stream of bytes into lines without decoding it. The stream is read in large
+ * blocks and lines are exposed as slices of the reader's byte buffer. Only lines that
+ * are actually needed (typically because they contain a match) have to be decoded
+ * into a String, with {@link #getLine()}.
+ * <p>
+ * This only works for charsets where line terminators can be recognized by looking
+ * at bytes alone. See {@link #supports(Charset)}.
+ * <p>
+ * Like {@link LineReader}, this keeps track of the offset (in chars, not bytes!) of
+ * the start of the last line read.
+ */
+public class ByteLineReader {
+
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	private InputStream input;
+	private final Charset charset;
+
+	/**
+	 * True if the charset uses exactly one byte per char. If false, the charset is UTF-8 and
+	 * char offsets are computed by counting the bytes that start a character.
+	 */
+	private final boolean singleByte;
+
+	/**
+	 * Max length of a line, in bytes.
+	 */
+	private final int MAX_LINE_LENGTH;
+
+	private byte[] buf = new byte[BUFFER_SIZE];
+	private int pos = 0; //position of next unread byte in buf.
+	private int limit = 0; //end of valid data in buf.
+	private boolean eof = false;
+	private boolean sniffed = false; //Set once the start of the stream was checked for binary content.
+	private boolean skipLF = false;
+
+	private int lineStart = 0;
+	private int lineEnd = 0;
+
+	/**
+	 * Offset in the stream of buf[0], in bytes.
+	 */
+	private int bufOffset = 0;
+
+	/**
+	 * Number of chars in the stream before buf[counted]. Only used for UTF-8, where
+	 * chars are counted lazily, only as far as needed to determine the offset of lines
+	 * for which {@link #getLastLineOffset()} is called.
+	 */
+	private int chars = 0;
+	private int counted = 0;
+
+	private int lineOffset = -1;
+	private boolean lineOffsetKnown = true;
+
+	/**
+	 * Determines whether the given charset can be handled. This is the case for charsets
+	 * that encode US-ASCII chars as themselves and where the bytes of US-ASCII chars can never
+	 * be part of the encoding of another char. I.e. UTF-8 and single byte charsets such as
+	 * ISO-8859-1 or windows-1252.
+	 */
+	public static boolean supports(Charset charset) {
+		if (UTF_8.equals(charset)) {
+			return true;
+		}
+		try {
+			CharsetEncoder encoder = charset.newEncoder();
+			if (encoder.maxBytesPerChar()!=1.0f) {
+				return false;
+			}
+			char[] ascii = new char[128];
+			for (int i = 0; i < ascii.length; i++) {
+				ascii[i] = (char) i;
+			}
+			ByteBuffer encoded = encoder.encode(CharBuffer.wrap(ascii));
+			for (int i = 0; i < ascii.length; i++) {
+				if (encoded.get(i)!=i) {
+					return false;
+				}
+			}
+			return true;
+		} catch (CharacterCodingException e) {
+			return false;
+		} catch (UnsupportedOperationException e) {
+			//Charset that can only decode.
+			return false;
+		}
+	}
+
+	public ByteLineReader(InputStream input, Charset charset, int maxLineLength) {
+		this.input = input;
+		this.charset = charset;
+		this.singleByte = !UTF_8.equals(charset);
+		this.MAX_LINE_LENGTH = maxLineLength;
+	}
+
+	/**
+	 * Skip the start of the stream and continue reading from the given offset, as if everything
+	 * before it was already read. Offsets of lines read after this are still relative to the start of
+	 * the stream. This must be called before reading any lines.
+	 *
+	 * @param byteOffset The offset in bytes of the start of a line, as returned by {@link #getLastLineByteOffset()}
+	 *    while reading the same stream earlier.
+	 * @param charOffset The offset in chars of the same line, as returned by {@link #getLastLineOffset()}.
+	 */
+	public void skipTo(int byteOffset, int charOffset) throws IOException {
+		int todo = byteOffset;
+		while (todo>0) {
+			long skipped = input.skip(todo);
+			if (skipped<=0) {
+				eof = true;
+				break;
+			}
+			todo -= skipped;
+		}
+		bufOffset = byteOffset-todo;
+		chars = charOffset;
+		sniffed = true; //The start of the stream was already checked when it was read before.
+	}
+
+	/**
+	 * Advance to the next line. The bytes of the line can be accessed via {@link #getBuffer()},
+	 * {@link #getLineStart()} and {@link #getLineEnd()} until the next call to nextLine.
+	 *
+	 * @return false if there are no more lines.
+	 */
+	public boolean nextLine() throws IOException {
+		if (!sniffed) {
+			sniff();
+		}
+		if (skipLF) {
+			skipLF = false;
+			if (pos>=limit) {
+				fill();
+			}
+			if (pos<limit && buf[pos]=='\n') {
+				pos++;
+			}
+		}
+		int scan = pos;
+		while (true) {
+			while (scan<limit) {
+				byte b = buf[scan];
+				if (b=='\n' || b=='\r') {
+					setLine(scan);
+					pos = scan+1;
+					skipLF = b=='\r';
+					return true;
+				}
+				scan++;
+			}
+			if (scan-pos>MAX_LINE_LENGTH) {
+				throw UnsearchableContentException.longLine(bufOffset+pos);
+			}
+			if (eof) {
+				if (scan>pos) {
+					setLine(scan);
+					pos = scan;
+					return true;
+				}
+				return false;
+			}
+			scan -= fill();
+		}
+	}
+
+	/**
+	 * Check the first block of the stream for NUL bytes. Text files never contain those, so
+	 * if we find one, the content is binary.
+	 */
+	private void sniff() throws IOException {
+		sniffed = true;
+		while (!eof && limit<UnsearchableContentException.SNIFF_LENGTH) {
+			fill();
+		}
+		int end = Math.min(limit, UnsearchableContentException.SNIFF_LENGTH);
+		for (int i = 0; i < end; i++) {
+			if (buf[i]==0) {
+				throw UnsearchableContentException.binary();
+			}
+		}
+	}
+
+	private void setLine(int end) throws IOException {
+		if (end-pos>MAX_LINE_LENGTH) {
+			throw UnsearchableContentException.longLine(bufOffset+pos);
+		}
+		lineStart = pos;
+		lineEnd = end;
+		lineOffsetKnown = false; //computed lazily
+	}
+
+	private int fill() {
+		int shift = pos;
+		if (shift>0) {
+			if (!singleByte) {
+				//Must count chars in the discarded part of the buffer before it's gone.
+				countChars(shift);
+				counted = 0;
+			}
+			bufOffset += shift;
+			System.arraycopy(buf, pos, buf, 0, limit-pos);
+			limit -= pos;
+			pos = 0;
+		}
+		if (limit==buf.length) {
+			byte[] bigger = new byte[buf.length*2];
+			System.arraycopy(buf, 0, bigger, 0, limit);
+			buf = bigger;
+		}
+		try {
+			int read = input.read(buf, limit, buf.length-limit);
+			if (read<0) {
+				eof = true;
+			} else {
+				limit += read;
+			}
+		} catch (IOException e) {
+			//pretend errors are like EOF.
+			eof = true;
+		}
+		return shift;
+	}
+
+	/**
+	 * Advance the char count up to the given position in the buffer. This counts the number of
+	 * chars the UTF-8 decoder produces. Chars outside the basic multilingual plane take 4 bytes and
+	 * are decoded as a surrogate pair, so they count as 2 chars. Malformed input counts like the
+	 * decoder's replacement chars: one for each byte that can't start a sequence, and one for each
+	 * sequence that is cut short or encodes something that isn't a char.
+	 * <p>
+	 * The given position must be the start of a line. Sequences are never cut off there, since
+	 * line terminators can't be part of a valid sequence.
+	 */
+	private void countChars(int upTo) {
+		int n = chars;
+		int i = counted;
+		while (i < upTo) {
+			int b = buf[i++] & 0xFF;
+			n++;
+			if (b>=0x80) {
+				//Number of continuation bytes and range of the first one (stricter for some lead bytes).
+				int more, min = 0x80, max = 0xBF;
+				if (b<0xC2) {
+					continue; //Continuation byte, or lead byte of an overlong 2 byte sequence.
+				} else if (b<0xE0) {
+					more = 1;
+				} else if (b<0xF0) {
+					more = 2;
+					if (b==0xE0) {
+						min = 0xA0; //overlong
+					}
+				} else if (b<0xF5) {
+					more = 3;
+					if (b==0xF0) {
+						min = 0x90; //overlong
+					} else if (b==0xF4) {
+						max = 0x8F; //beyond U+10FFFF
+					}
+				} else {
+					continue;
+				}
+				int valid = 0;
+				while (valid<more && i<upTo) {
+					int c = buf[i] & 0xFF;
+					if (c<min || c>max) {
+						break;
+					}
+					i++;
+					valid++;
+					min = 0x80;
+					max = 0xBF;
+				}
+				if (valid==3) {
+					n++; //surrogate pair
+				}
+			}
+		}
+		chars = n;
+		counted = upTo;
+	}
+
+	/**
+	 * @return The buffer containing the bytes of the last line read.
+	 */
+	public byte[] getBuffer() {
+		return buf;
+	}
+
+	public int getLineStart() {
+		return lineStart;
+	}
+
+	public int getLineEnd() {
+		return lineEnd;
+	}
+
+	/**
+	 * Decode the last line read into a String.
+	 */
+	public String getLine() {
+		return charset.decode(ByteBuffer.wrap(buf, lineStart, lineEnd-lineStart)).toString();
+	}
+
+	/**
+	 * @return The offset (in chars) of the start of the last line read relative to beginning of the stream; or -1 if
+	 * no line has been read yet.
+	 */
+	public int getLastLineOffset() {
+		if (!lineOffsetKnown) {
+			if (singleByte) {
+				lineOffset = bufOffset + lineStart;
+			} else {
+				countChars(lineStart);
+				lineOffset = chars;
+			}
+			lineOffsetKnown = true;
+		}
+		return lineOffset;
+	}
+
+	/**
+	 * @return The offset in bytes of the start of the last line read relative to beginning of the stream.
+	 */
+	public int getLastLineByteOffset() {
+		return bufOffset + lineStart;
+	}
+
+	/**
+	 * Close the underlying stream. Does nothing if already closed.
+	 */
+	public void close() {
+		InputStream toClose;
+		synchronized (this) {
+			if (input==null) {
+				return;
+			}
+			toClose = input;
+			input = null;
+		}
+		try {
+			toClose.close();
+		} catch (IOException e) {
+			//Ignore.
+		}
+	}
+
+}
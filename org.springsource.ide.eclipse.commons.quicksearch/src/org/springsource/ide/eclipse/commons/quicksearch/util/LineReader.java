@@ -10,7 +10,6 @@
  *******************************************************************************/
 package org.springsource.ide.eclipse.commons.quicksearch.util;
 
-import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.Reader;
 
@@ -20,53 +19,54 @@ import java.io.Reader;
  * track of character position while reading. This is needed to
  * ease translation from line-relative offsets into stream-relative
  * offsets.
+ * <p>
+ * Besides {@link #readLine()}, lines can also be read with {@link #nextLine()}, which doesn't
+ * create a String. Instead, the text of the line can be accessed directly in the reader's buffer.
+ * This allows searching for matches without allocating anything for lines that don't match.
  *
  * @author Kris De Volder
  */
 public class LineReader {
 
-	private static final int EXPECTED_LINE_LENGTH = 160;
+	private static final int BUFFER_SIZE = 8192;
 	public static final int DEFAULT_MAX_LINE_LENGTH = 1000;
 
-	private BufferedReader input;
-
-	//This simple implementation just wraps a BufferedReader and StringBuilder
-	//to do the buffering and String building.
-	//It may be more efficient to implement our own buffering like BufferedReader
-	//does.
+	private Reader input;
 
 	public LineReader(Reader reader) {
 		this(reader, DEFAULT_MAX_LINE_LENGTH);
 	}
 
 	public LineReader(Reader reader, int maxLineLength) {
-		input = buffered(reader);
+		input = reader;
 		MAX_LINE_LENGTH = maxLineLength;
 	}
 
+	private final int MAX_LINE_LENGTH;
 
-	private StringBuilder line = new StringBuilder(EXPECTED_LINE_LENGTH);
+	private char[] buf = new char[BUFFER_SIZE];
+	private int pos = 0; //position of next unread char in buf.
+	private int limit = 0; //end of valid data in buf.
+	private int bufOffset = 0; //offset in the stream of buf[0].
+	private boolean eof = false;
+	private boolean sniffed = false; //Set once the start of the stream was checked for binary content.
 
-	private final int MAX_LINE_LENGTH;
+	/**
+	 * Set when the last line was terminated by a CR. If the next char is a LF
+	 * it belongs to the same line terminator and must be skipped.
+	 */
+	private boolean skipLF = false;
+
+	private int lineStart = 0; //Start of last line read in buf.
+	private int lineEnd = 0; //End of last line read in buf (exclusive, terminator not included).
 	private int lineOffset = -1; //Start pos of last line read.
-	private int offset = 0; //position of next char in input.
-	private int mark = 0; //mark offset in underlying stream
-
-	private BufferedReader buffered(Reader reader) {
-		//If already buffered don't wrap it again.
-		if (reader instanceof BufferedReader) {
-			return (BufferedReader) reader;
-		} else {
-			return new BufferedReader(reader);
-		}
-	}
 
 	/**
 	 * Close the underlying stream. Does nothing if already closed.
 	 */
 	public void close() {
-		BufferedReader toClose = null;
-		synchronized (input) {
+		Reader toClose = null;
+		synchronized (this) {
 			if (input==null) {
 				return;
 			}
@@ -80,57 +80,168 @@ public class LineReader {
 		}
 	}
 
+	/**
+	 * Skip the start of the stream and continue reading from the given offset, as if everything
+	 * before it was already read. Offsets of lines read after this are still relative to the start of
+	 * the stream. This must be called before reading any lines.
+	 *
+	 * @param offset The offset (in chars) of the start of a line, typically obtained from
+	 *    {@link #getLastLineOffset()} while reading the same stream earlier.
+	 */
+	public void skipTo(int offset) throws IOException {
+		int todo = offset;
+		while (todo>0) {
+			long skipped = input.skip(todo);
+			if (skipped<=0) {
+				eof = true;
+				break;
+			}
+			todo -= skipped;
+		}
+		bufOffset = offset-todo;
+		sniffed = true; //The start of the stream was already checked when it was read before.
+	}
+
 	public String readLine() throws IOException {
-		lineOffset = offset; //remember start of line
-		int maxOffset = offset + MAX_LINE_LENGTH;
-		//Read text until we see either a CR, CR LF or LF.
-		int c = read();
-		if (c==-1) {
-			return null;
+		if (nextLine()) {
+			return getLine();
 		}
-		//read until newline
-		while (c!='\r' && c!='\n' && c!=-1) {
-			line.append((char)c);
-			c = read();
-			if (offset>maxOffset) {
-				throw new IOException("Very long lines of text. Minified file?");
-			}
+		return null;
+	}
+
+	/**
+	 * Advance to the next line without creating a String for it. The text of the line
+	 * can be accessed via {@link #getBuffer()}, {@link #getLineStart()} and {@link #getLineEnd()}
+	 * until the next call to nextLine or readLine.
+	 *
+	 * @return false if there are no more lines.
+	 */
+	public boolean nextLine() throws IOException {
+		if (!sniffed) {
+			sniff();
 		}
-		//Last char read was some kind of line terminator. But only read first char of it.
-		if (c=='\r') {
-			mark(); //next char may be part of next line. May need to 'unread' it.
-			int next = read();
-			if (next == '\n') {
-				//skip
-			} else {
-				unread();
+		if (skipLF) {
+			skipLF = false;
+			if (pos>=limit) {
+				fill();
+			}
+			if (pos<limit && buf[pos]=='\n') {
+				pos++;
 			}
 		}
-		try {
-			return line.toString();
-		} finally {
-			line.setLength(0);
+		int scan = pos;
+		while (true) {
+			while (scan<limit) {
+				char c = buf[scan];
+				if (c=='\n' || c=='\r') {
+					setLine(scan);
+					pos = scan+1;
+					skipLF = c=='\r';
+					return true;
+				}
+				scan++;
+			}
+			if (scan-pos>MAX_LINE_LENGTH) {
+				throw UnsearchableContentException.longLine(bufOffset+pos);
+			}
+			if (eof) {
+				if (scan>pos) {
+					//Last line without a terminator.
+					setLine(scan);
+					pos = scan;
+					return true;
+				}
+				return false;
+			}
+			scan -= fill();
 		}
 	}
 
-	private void unread() throws IOException {
-		offset = mark;
-		input.reset();
+	/**
+	 * Check the first block of the stream for NUL chars. Text files never contain those, so
+	 * if we find one, the content is binary.
+	 */
+	private void sniff() throws IOException {
+		sniffed = true;
+		while (!eof && limit<UnsearchableContentException.SNIFF_LENGTH) {
+			fill();
+		}
+		int end = Math.min(limit, UnsearchableContentException.SNIFF_LENGTH);
+		for (int i = 0; i < end; i++) {
+			if (buf[i]=='\0') {
+				throw UnsearchableContentException.binary();
+			}
+		}
 	}
 
-	private void mark() throws IOException {
-		mark = offset;
-		input.mark(1);
+	private void setLine(int end) throws IOException {
+		if (end-pos>MAX_LINE_LENGTH) {
+			throw UnsearchableContentException.longLine(bufOffset+pos);
+		}
+		lineStart = pos;
+		lineEnd = end;
+		lineOffset = bufOffset+pos;
 	}
 
-	private int read() throws IOException {
+	/**
+	 * Read more data into the buffer. Any unread data is first moved to the start of the buffer.
+	 *
+	 * @return The number of positions the unread data was shifted to the left.
+	 */
+	private int fill() {
+		int shift = pos;
+		if (shift>0) {
+			System.arraycopy(buf, pos, buf, 0, limit-pos);
+			limit -= pos;
+			bufOffset += pos;
+			pos = 0;
+		}
+		if (limit==buf.length) {
+			char[] bigger = new char[buf.length*2];
+			System.arraycopy(buf, 0, bigger, 0, limit);
+			buf = bigger;
+		}
 		try {
-			offset++;
-			return input.read();
+			int read = input.read(buf, limit, buf.length-limit);
+			if (read<0) {
+				eof = true;
+			} else {
+				limit += read;
+			}
 		} catch (IOException e) {
 			//pretend errors are like EOF.
-			return -1;
+			eof = true;
 		}
+		return shift;
+	}
+
+	/**
+	 * @return Buffer containing the text of the last line read. The buffer contents is only valid until
+	 *   the next line is read.
+	 */
+	public char[] getBuffer() {
+		return buf;
+	}
+
+	/**
+	 * @return Start position of the last line read in the buffer.
+	 */
+	public int getLineStart() {
+		return lineStart;
+	}
+
+	/**
+	 * @return End position (exclusive) of the last line read in the buffer. Line terminators are not included.
+	 */
+	public int getLineEnd() {
+		return lineEnd;
+	}
+
+	/**
+	 * @return The text of the last line read as a String.
+	 */
+	public String getLine() {
+		return new String(buf, lineStart, lineEnd-lineStart);
 	}
 
 	/**
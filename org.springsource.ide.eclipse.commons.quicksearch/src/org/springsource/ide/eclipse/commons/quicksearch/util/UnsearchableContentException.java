@@ -0,0 +1,65 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Pivotal Software, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *   Pivotal Software, Inc. - initial API and implementation
+ *******************************************************************************/
+package org.springsource.ide.eclipse.commons.quicksearch.util;
+
+import java.io.IOException;
+
+/**
+ * Thrown by the line readers when they detect content that isn't worth searching, i.e.
+ * binary content or very long lines of (typically machine generated) text.
+ */
+public class UnsearchableContentException extends IOException {
+
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * Only the first block of a file is examined to determine whether it is binary.
+	 * Also, only files with a very long line starting in this block are considered 'minified'.
+	 */
+	public static final int SNIFF_LENGTH = 4096;
+
+	private final boolean conclusive;
+	private final boolean binary;
+
+	private UnsearchableContentException(String message, boolean conclusive, boolean binary) {
+		super(message);
+		this.conclusive = conclusive;
+		this.binary = binary;
+	}
+
+	public static UnsearchableContentException binary() {
+		return new UnsearchableContentException("Binary content", true, true);
+	}
+
+	/**
+	 * @param lineOffset Offset of the start of the long line.
+	 */
+	public static UnsearchableContentException longLine(int lineOffset) {
+		return new UnsearchableContentException("Very long lines of text. Minified file?", lineOffset < SNIFF_LENGTH, false);
+	}
+
+	/**
+	 * @return true if the problem was detected near the start of the file. Such files can be skipped
+	 *   entirely in future searches, losing at most a few lines of results.
+	 */
+	public boolean isConclusive() {
+		return conclusive;
+	}
+
+	/**
+	 * @return true if the content is binary, false if it has a line that is too long. Unlike a long
+	 *   line, binary content is unsearchable no matter what the maximum line length is.
+	 */
+	public boolean isBinary() {
+		return binary;
+	}
+
+}
@@ -0,0 +1,372 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Pivotal Software, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Pivotal Software, Inc. - initial API and implementation
+ *******************************************************************************/
+package org.springsource.ide.eclipse.commons.completions.externaltype.indexing;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import junit.framework.TestCase;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.jdt.core.IJavaProject;
+import org.springsource.ide.eclipse.commons.completions.externaltype.ExternalType;
+import org.springsource.ide.eclipse.commons.completions.externaltype.ExternalTypeDiscovery;
+import org.springsource.ide.eclipse.commons.completions.externaltype.ExternalTypeEntry;
+import org.springsource.ide.eclipse.commons.completions.externaltype.ExternalTypeSource;
+import org.springsource.ide.eclipse.commons.completions.externaltype.JarTypeDiscovery;
+import org.springsource.ide.eclipse.commons.completions.util.Requestor;
+import org.springsource.ide.eclipse.commons.frameworks.core.util.FileUtil;
+
+/**
+ * Checks the indexers built on {@link TypeTable} against {@link SimpleExternalTypeIndexer} and
+ * the naive implementations in {@link ExternalTypeIndexer}.
+ */
+public class CompactExternalTypeIndexerTest extends TestCase {
+
+	private static final String[] HUMPS = { "Rest", "Template", "Re", "A", "Ab", "Abc", "Bean", "Factory",
+		"X", "Url", "URL", "Http", "Client", "Map", "a", "x", "list", "2" };
+
+	private static final String[] PACKAGES = { "a.b", "org.foo", "com.bar.baz" };
+
+	private File tempDir;
+
+	@Override
+	protected void tearDown() throws Exception {
+		if (tempDir!=null) {
+			delete(tempDir);
+		}
+	}
+
+	/**
+	 * A discovery of a fixed list of types.
+	 */
+	private static class TestDiscovery implements ExternalTypeDiscovery {
+		private final List<ExternalTypeEntry> entries;
+
+		TestDiscovery(List<ExternalTypeEntry> entries) {
+			this.entries = entries;
+		}
+
+		public void getTypes(Requestor<ExternalTypeEntry> requestor) {
+			requestor.receive(entries);
+		}
+	}
+
+	public void testEmpty() throws Exception {
+		CompactExternalTypeIndexer index = new CompactExternalTypeIndexer();
+		assertEquals(0, index.size());
+		assertEquals(0, getAll(index).size());
+		assertEquals(0, getByPrefix(index, "").size());
+		assertEquals(0, getByPrefix(index, "A").size());
+		assertEquals(0, getByCamelCase(index, "AB").size());
+		assertEquals(0, getBySubstring(index, "a").size());
+		index.buildNameIndex();
+		assertEquals(0, getByCamelCase(index, "AB").size());
+		assertEquals(0, getBySubstring(index, "a").size());
+		assertSame(ExternalTypeSource.UNKNOWN, index.getSource(new ExternalType("A", "a.b")));
+	}
+
+	/**
+	 * Names are stored in blocks of 16. Check prefix queries for tables that end at, just before and
+	 * just after a block boundary, for prefixes matching ranges that start and end anywhere.
+	 */
+	public void testPrefixAtBlockBoundaries() throws Exception {
+		for (int size : new int[] { 1, 15, 16, 17, 31, 32, 33, 100 }) {
+			List<ExternalTypeEntry> entries = new ArrayList<ExternalTypeEntry>();
+			for (int i = 0; i < size; i++) {
+				//Names sharing long prefixes, with some of them in two packages.
+				String name = "Name" + (i / 10) + (i % 10 < 5 ? "" : "Sub") + (i % 10);
+				entries.add(entry(name, PACKAGES[i % 2]));
+				if (i % 7 == 0) {
+					entries.add(entry(name, PACKAGES[2]));
+				}
+			}
+			CompactExternalTypeIndexer index = compact(entries);
+			SimpleExternalTypeIndexer oracle = simple(entries);
+			assertEquals(getAll(oracle), getAll(index));
+
+			List<String> prefixes = new ArrayList<String>(Arrays.asList("", "A", "Name", "Nama", "Namf", "Z"));
+			for (ExternalTypeEntry e : entries) {
+				String name = e.getType().getName();
+				for (int i = 0; i <= name.length(); i++) {
+					prefixes.add(name.substring(0, i));
+				}
+				prefixes.add(name + "x");
+				prefixes.add(name.substring(0, name.length() - 1) + "~");
+			}
+			for (String prefix : prefixes) {
+				List<ExternalType> expected = getByPrefix(oracle, prefix);
+				assertEquals(prefix, expected, getByPrefix(index, prefix));
+				//Stopping early
+				int limit = expected.size() / 2;
+				assertEquals(prefix, expected.subList(0, limit), getByPrefix(index, prefix, limit));
+			}
+		}
+	}
+
+	public void testCamelCaseAndSubstring() throws Exception {
+		Random random = new Random(7);
+		List<ExternalTypeEntry> entries = new ArrayList<ExternalTypeEntry>();
+		List<String> patterns = new ArrayList<String>(Arrays.asList("", "R", "RT", "ReTe", "RestTemplate",
+				"URL", "UR", "AB", "ABC", "AbBe", "XY", "a", "xList", "Q"));
+		for (int i = 0; i < 2000; i++) {
+			String name = randomName(random);
+			entries.add(entry(name, PACKAGES[random.nextInt(PACKAGES.length)]));
+			if (i % 50 == 0) {
+				patterns.add(initials(name));
+				patterns.add(name.substring(0, Math.min(name.length(), 3)));
+				patterns.add(name.substring(name.length() / 2));
+			}
+		}
+		CompactExternalTypeIndexer index = compact(entries);
+		SimpleExternalTypeIndexer oracle = simple(entries);
+		for (int round = 0; round < 2; round++) {
+			if (round == 1) {
+				index.buildNameIndex();
+			}
+			for (String pattern : patterns) {
+				assertEquals(pattern, sorted(getByCamelCase(oracle, pattern)), sorted(getByCamelCase(index, pattern)));
+				String substring = pattern.toLowerCase();
+				assertEquals(pattern, sorted(getBySubstring(oracle, substring)), sorted(getBySubstring(index, substring)));
+				assertEquals(pattern, sorted(getBySubstring(oracle, pattern)), sorted(getBySubstring(index, pattern)));
+			}
+		}
+	}
+
+	/**
+	 * When the same type is added more than once, the last one added wins.
+	 */
+	public void testSameTypeAddedAgain() throws Exception {
+		ExternalTypeSource first = new TestSource("first");
+		ExternalTypeSource second = new TestSource("second");
+		CompactExternalTypeIndexer index = new CompactExternalTypeIndexer();
+		index.addFrom(new TestDiscovery(Arrays.asList(
+				new ExternalTypeEntry("a.b.Foo", first),
+				new ExternalTypeEntry("a.b.Bar", first),
+				new ExternalTypeEntry("a.b.Foo", second)
+		)));
+		assertEquals(2, index.size());
+		assertSame(second, index.getSource(new ExternalType("a.b.Foo")));
+		index.addFrom(new TestDiscovery(Arrays.asList(new ExternalTypeEntry("a.b.Bar", second))));
+		assertEquals(2, index.size());
+		assertSame(second, index.getSource(new ExternalType("a.b.Bar")));
+		assertSame(ExternalTypeSource.UNKNOWN, index.getSource(new ExternalType("c.d.Foo")));
+	}
+
+	public void testComposite() throws Exception {
+		Random random = new Random(11);
+		List<ExternalTypeEntry> all = new ArrayList<ExternalTypeEntry>();
+		List<CompactExternalTypeIndexer> parts = new ArrayList<CompactExternalTypeIndexer>();
+		List<ExternalTypeEntry> shared = new ArrayList<ExternalTypeEntry>();
+		for (int i = 0; i < 100; i++) {
+			shared.add(entry(randomName(random), PACKAGES[random.nextInt(PACKAGES.length)]));
+		}
+		for (int p = 0; p < 3; p++) {
+			List<ExternalTypeEntry> entries = new ArrayList<ExternalTypeEntry>(shared);
+			for (int i = 0; i < 300; i++) {
+				entries.add(entry(randomName(random), PACKAGES[random.nextInt(PACKAGES.length)]));
+			}
+			parts.add(compact(entries));
+			all.addAll(entries);
+		}
+		parts.get(0).buildNameIndex();
+		CompositeExternalTypeIndexer composite = new CompositeExternalTypeIndexer(parts);
+		SimpleExternalTypeIndexer oracle = simple(all);
+
+		assertEquals(getAll(oracle), getAll(composite));
+		for (String prefix : new String[] { "", "A", "Ab", "Re", "Rest", "U", "Z" }) {
+			assertEquals(prefix, getByPrefix(oracle, prefix), getByPrefix(composite, prefix));
+		}
+		for (String pattern : new String[] { "RT", "AB", "UC", "abc", "rest", "Q" }) {
+			assertEquals(pattern, sorted(getByCamelCase(oracle, pattern)), sorted(getByCamelCase(composite, pattern)));
+			assertEquals(pattern, sorted(getBySubstring(oracle, pattern)), sorted(getBySubstring(composite, pattern)));
+		}
+		for (ExternalType type : getAll(oracle)) {
+			assertNotSame(ExternalTypeSource.UNKNOWN, composite.getSource(type));
+		}
+	}
+
+	public void testStore() throws Exception {
+		tempDir = FileUtil.createTempDirectory();
+		File storeDir = new File(tempDir, "store");
+		File jar = new File(tempDir, "test.jar");
+		writeJar(jar, "com/foo/Bar.class", "com/foo/Bar$Inner.class", "com/foo/sub/Baz.class", "org/x/Y.class");
+		long lastModified = jar.lastModified();
+
+		CompactExternalTypeIndexer original = new CompactExternalTypeIndexer(storeDir);
+		assertFalse(original.addFromStore(new JarTypeDiscovery(jar)));
+		original.addFrom(new JarTypeDiscovery(jar));
+		assertEquals(3, original.size());
+
+		JarTypeDiscovery discovery = new JarTypeDiscovery(jar);
+		CompactExternalTypeIndexer restored = new CompactExternalTypeIndexer(storeDir);
+		assertTrue(restored.addFromStore(discovery));
+		assertEquals(getAll(original), getAll(restored));
+		//Types are attributed to the discovery they are loaded for.
+		assertSame(discovery, restored.getSource(new ExternalType("com.foo.sub.Baz")));
+
+		//Modified jar
+		assertTrue(jar.setLastModified(lastModified - 10000));
+		assertFalse(new CompactExternalTypeIndexer(storeDir).addFromStore(new JarTypeDiscovery(jar)));
+
+		//Jar of a different size, with the same modification time
+		writeJar(jar, "com/foo/Bar.class", "com/foo/sub/Baz.class", "org/x/Y.class", "org/x/Z.class");
+		assertTrue(jar.setLastModified(lastModified));
+		assertFalse(new CompactExternalTypeIndexer(storeDir).addFromStore(new JarTypeDiscovery(jar)));
+
+		//Jar that no longer exists
+		assertTrue(storeDir.list().length > 0);
+		assertTrue(jar.delete());
+		CompactExternalTypeIndexer.pruneStore(storeDir);
+		assertEquals(0, storeDir.list().length);
+	}
+
+	private static class TestSource implements ExternalTypeSource {
+		private final String name;
+
+		TestSource(String name) {
+			this.name = name;
+		}
+
+		public void addToClassPath(IJavaProject project, IProgressMonitor mon) {
+			//Not used
+		}
+
+		public String getDescription() {
+			return null;
+		}
+
+		@Override
+		public String toString() {
+			return name;
+		}
+	}
+
+	private static ExternalTypeEntry entry(String name, String pkg) {
+		return new ExternalTypeEntry(new ExternalType(name, pkg), new TestSource(pkg + "." + name));
+	}
+
+	private static String randomName(Random random) {
+		StringBuilder name = new StringBuilder();
+		int humps = 1 + random.nextInt(4);
+		for (int i = 0; i < humps; i++) {
+			name.append(HUMPS[random.nextInt(HUMPS.length)]);
+		}
+		return name.toString();
+	}
+
+	private static String initials(String name) {
+		StringBuilder initials = new StringBuilder();
+		for (int i = 0; i < name.length(); i++) {
+			if (i == 0 || Character.isUpperCase(name.charAt(i))) {
+				initials.append(name.charAt(i));
+			}
+		}
+		return initials.toString();
+	}
+
+	private static CompactExternalTypeIndexer compact(List<ExternalTypeEntry> entries) {
+		CompactExternalTypeIndexer index = new CompactExternalTypeIndexer();
+		index.addFrom(new TestDiscovery(entries));
+		return index;
+	}
+
+	private static SimpleExternalTypeIndexer simple(List<ExternalTypeEntry> entries) {
+		SimpleExternalTypeIndexer index = new SimpleExternalTypeIndexer();
+		index.addFrom(new TestDiscovery(entries));
+		return index;
+	}
+
+	/**
+	 * A requestor collecting types, up to a limit.
+	 */
+	private static class Collector extends Requestor<ExternalType> {
+		final List<ExternalType> types = new ArrayList<ExternalType>();
+		private final int limit;
+
+		Collector(int limit) {
+			this.limit = limit;
+		}
+
+		@Override
+		public boolean receive(ExternalType element) {
+			assertTrue(types.size() < limit);
+			types.add(element);
+			return types.size() < limit;
+		}
+	}
+
+	private static List<ExternalType> getAll(ExternalTypeIndexer index) {
+		Collector collector = new Collector(Integer.MAX_VALUE);
+		index.getAll(collector);
+		return collector.types;
+	}
+
+	private static List<ExternalType> getByPrefix(ExternalTypeIndexer index, String prefix) {
+		return getByPrefix(index, prefix, Integer.MAX_VALUE);
+	}
+
+	private static List<ExternalType> getByPrefix(ExternalTypeIndexer index, String prefix, int limit) {
+		Collector collector = new Collector(limit);
+		if (limit > 0) {
+			index.getByPrefix(prefix, collector);
+		}
+		return collector.types;
+	}
+
+	private static List<ExternalType> getByCamelCase(ExternalTypeIndexer index, String pattern) {
+		Collector collector = new Collector(Integer.MAX_VALUE);
+		index.getByCamelCase(pattern, collector);
+		return collector.types;
+	}
+
+	private static List<ExternalType> getBySubstring(ExternalTypeIndexer index, String substring) {
+		Collector collector = new Collector(Integer.MAX_VALUE);
+		index.getBySubstring(substring, collector);
+		return collector.types;
+	}
+
+	private static List<ExternalType> sorted(List<ExternalType> types) {
+		Collections.sort(types);
+		return types;
+	}
+
+	private static void writeJar(File jar, String... entries) throws Exception {
+		ZipOutputStream out = new ZipOutputStream(new FileOutputStream(jar));
+		try {
+			for (String entry : entries) {
+				out.putNextEntry(new ZipEntry(entry));
+				out.write(new byte[] { (byte) 0xCA, (byte) 0xFE });
+				out.closeEntry();
+			}
+		} finally {
+			out.close();
+		}
+	}
+
+	private static void delete(File file) {
+		File[] children = file.listFiles();
+		if (children != null) {
+			for (File child : children) {
+				delete(child);
+			}
+		}
+		file.delete();
+	}
+
+}
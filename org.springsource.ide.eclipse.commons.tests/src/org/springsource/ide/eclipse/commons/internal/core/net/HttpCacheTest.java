@@ -0,0 +1,125 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Pivotal Software, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Pivotal Software, Inc. - initial API and implementation
+ *******************************************************************************/
+package org.springsource.ide.eclipse.commons.internal.core.net;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.net.URI;
+
+import junit.framework.TestCase;
+
+import org.springsource.ide.eclipse.commons.frameworks.core.util.FileUtil;
+import org.springsource.ide.eclipse.commons.tests.TestHttpServer;
+
+public class HttpCacheTest extends TestCase {
+
+	private TestHttpServer server;
+	private File cacheDir;
+
+	@Override
+	protected void setUp() throws Exception {
+		server = new TestHttpServer();
+		cacheDir = FileUtil.createTempDirectory();
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		server.stop();
+		File[] files = cacheDir.listFiles();
+		if (files != null) {
+			for (File f : files) {
+				f.delete();
+			}
+		}
+		cacheDir.delete();
+	}
+
+	public void testRevalidate() throws Exception {
+		assertRevalidates(new JDKTransportService());
+	}
+
+	public void testRevalidateWithHttpClient() throws Exception {
+		assertRevalidates(new HttpClientTransportService());
+	}
+
+	public void testRevalidateWithP2() throws Exception {
+		P2TransportService transport;
+		try {
+			transport = new P2TransportService();
+		}
+		catch (ClassNotFoundException e) {
+			//P2 isn't part of this runtime
+			return;
+		}
+		TestHttpServer.Resource resource = server.serve("/descriptor.xml", "<descriptor/>".getBytes("UTF-8"), null);
+		resource.lastModified = "Thu, 01 Jan 2015 00:00:00 GMT";
+		URI uri = server.url("/descriptor.xml").toURI();
+		HttpCache cache = new HttpCache(cacheDir);
+
+		assertEquals("<descriptor/>", read(transport.stream(uri, cache, null)));
+		assertEquals("<descriptor/>", read(transport.stream(uri, cache, null)));
+		//Not modified: the content was only fetched once, the other requests only asked for the date.
+		assertEquals(1, countRequests(resource, "GET"));
+		assertEquals("<descriptor/>".length(), resource.bytesSent);
+
+		resource.content = "<descriptor changed='true'/>".getBytes("UTF-8");
+		resource.lastModified = "Fri, 02 Jan 2015 00:00:00 GMT";
+		assertEquals("<descriptor changed='true'/>", read(transport.stream(uri, cache, null)));
+		assertEquals(2, countRequests(resource, "GET"));
+	}
+
+	private static int countRequests(TestHttpServer.Resource resource, String method) {
+		int count = 0;
+		synchronized (resource.requests) {
+			for (TestHttpServer.Request request : resource.requests) {
+				if (method.equals(request.getMethod())) {
+					count++;
+				}
+			}
+		}
+		return count;
+	}
+
+	private void assertRevalidates(ITransportService transport) throws Exception {
+		TestHttpServer.Resource resource = server.serve("/descriptor.xml", "<descriptor/>".getBytes("UTF-8"), "\"v1\"");
+		URI uri = server.url("/descriptor.xml").toURI();
+		HttpCache cache = new HttpCache(cacheDir);
+
+		assertEquals("<descriptor/>", read(transport.stream(uri, cache, null)));
+		assertEquals("<descriptor/>", read(transport.stream(uri, cache, null)));
+		assertEquals(2, resource.requests.size());
+		assertEquals("\"v1\"", resource.requests.get(1).getFirst("If-None-Match"));
+		//Not modified: the content was only sent once.
+		assertEquals("<descriptor/>".length(), resource.bytesSent);
+
+		resource.content = "<descriptor changed='true'/>".getBytes("UTF-8");
+		resource.etag = "\"v2\"";
+		assertEquals("<descriptor changed='true'/>", read(transport.stream(uri, cache, null)));
+		assertEquals("\"v2\"", cache.get(uri).getETag());
+	}
+
+	private static String read(InputStream in) throws Exception {
+		try {
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			byte[] buf = new byte[1024];
+			int len;
+			while ((len = in.read(buf)) != -1) {
+				out.write(buf, 0, len);
+			}
+			return out.toString("UTF-8");
+		}
+		finally {
+			in.close();
+		}
+	}
+
+}
@@ -0,0 +1,133 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Pivotal Software, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Pivotal Software, Inc. - initial API and implementation
+ *******************************************************************************/
+package org.springsource.ide.eclipse.commons.livexp.core;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.eclipse.swt.widgets.Display;
+
+public class AsyncUIValueListenerTest extends TestCase {
+
+	/**
+	 * Remembers the values it got as "name=value", where the name is the expression's toString.
+	 */
+	private static class Recorder extends AsyncUIValueListener<Integer> {
+		final List<String> values = new ArrayList<String>();
+		boolean wrongThread = false;
+
+		@Override
+		protected void uiGotValue(LiveExpression<Integer> exp, Integer value) {
+			wrongThread = wrongThread || Display.getCurrent()==null;
+			values.add(exp+"="+value);
+		}
+	}
+
+	private static class Variable extends LiveVariable<Integer> {
+		private final String name;
+
+		Variable(String name) {
+			super(0);
+			this.name = name;
+		}
+
+		@Override
+		public String toString() {
+			return name;
+		}
+	}
+
+	private Display display;
+
+	@Override
+	protected void setUp() throws Exception {
+		display = Display.getDefault();
+	}
+
+	/**
+	 * Changes made before the UI thread gets to them are delivered once per expression, with
+	 * the latest value, in the order the expressions first changed.
+	 */
+	public void testCoalesceToLatestValue() throws Exception {
+		final Variable a = new Variable("a");
+		final Variable b = new Variable("b");
+		final Recorder recorder = new Recorder();
+		//Keep the UI thread busy while changing, so it can't deliver anything in between.
+		display.syncExec(new Runnable() {
+			public void run() {
+				a.addListener(recorder);
+				b.addListener(recorder);
+				for (int i = 1; i <= 100; i++) {
+					b.setValue(i*10);
+					a.setValue(i);
+				}
+			}
+		});
+		flushUI();
+		assertEquals(Arrays.asList("a=100", "b=1000"), recorder.values);
+
+		//Changes after delivery are delivered again.
+		display.syncExec(new Runnable() {
+			public void run() {
+				b.setValue(1);
+				b.setValue(2);
+			}
+		});
+		flushUI();
+		assertEquals(Arrays.asList("a=100", "b=1000", "b=2"), recorder.values);
+		assertFalse(recorder.wrongThread);
+	}
+
+	/**
+	 * The final value set by a background thread always reaches the UI.
+	 */
+	public void testLatestValueFromBackgroundThread() throws Exception {
+		final Variable a = new Variable("a");
+		Recorder recorder = new Recorder();
+		a.addListener(recorder);
+		Thread writer = new Thread() {
+			@Override
+			public void run() {
+				for (int i = 1; i <= 10000; i++) {
+					a.setValue(i);
+				}
+			}
+		};
+		writer.start();
+		while (writer.isAlive()) {
+			flushUI();
+			writer.join(1);
+		}
+		flushUI();
+		assertEquals("a=10000", recorder.values.get(recorder.values.size()-1));
+		assertFalse(recorder.wrongThread);
+	}
+
+	/**
+	 * Wait until the runnables posted to the UI thread so far have run.
+	 */
+	private void flushUI() {
+		if (display.getThread()==Thread.currentThread()) {
+			while (display.readAndDispatch()) {
+				//keep going
+			}
+		} else {
+			display.syncExec(new Runnable() {
+				public void run() {
+				}
+			});
+		}
+	}
+
+}
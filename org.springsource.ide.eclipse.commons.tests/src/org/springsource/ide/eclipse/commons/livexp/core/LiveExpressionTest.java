@@ -0,0 +1,131 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Pivotal Software, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Pivotal Software, Inc. - initial API and implementation
+ *******************************************************************************/
+package org.springsource.ide.eclipse.commons.livexp.core;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+public class LiveExpressionTest extends TestCase {
+
+	/**
+	 * The sum of some live expressions, counting how often it is computed.
+	 */
+	private static class Sum extends LiveExpression<Integer> {
+		private final LiveExpression<Integer>[] inputs;
+		int computeCount = 0;
+
+		Sum(LiveExpression<Integer>... inputs) {
+			super(0);
+			this.inputs = inputs;
+			for (LiveExpression<Integer> input : inputs) {
+				dependsOn(input);
+			}
+			computeCount = 0;
+		}
+
+		@Override
+		protected Integer compute() {
+			computeCount++;
+			int sum = 0;
+			for (LiveExpression<Integer> input : inputs) {
+				sum += input.getValue();
+			}
+			return sum;
+		}
+	}
+
+	/**
+	 * A listener remembering the values it got.
+	 */
+	private static class Recorder<T> implements ValueListener<T> {
+		final List<T> values = new ArrayList<T>();
+
+		public void gotValue(LiveExpression<T> exp, T value) {
+			values.add(value);
+		}
+	}
+
+	/**
+	 * An expression depending on another expression along two paths is refreshed once per change.
+	 */
+	@SuppressWarnings("unchecked")
+	public void testRefreshedOncePerChange() throws Exception {
+		LiveVariable<Integer> a = new LiveVariable<Integer>(1);
+		Sum b = new Sum(a);
+		Sum c = new Sum(a, b);
+		c.computeCount = 0;
+
+		a.setValue(2);
+		assertEquals(1, c.computeCount);
+		assertEquals(4, (int) c.getValue());
+	}
+
+	/**
+	 * An expression depending on several expressions changed in a batch is refreshed once, at the end.
+	 */
+	@SuppressWarnings("unchecked")
+	public void testRefreshedOncePerBatch() throws Exception {
+		final LiveVariable<Integer> a = new LiveVariable<Integer>(1);
+		final LiveVariable<Integer> b = new LiveVariable<Integer>(1);
+		final Sum sum = new Sum(a, b);
+		LiveExpression.batch(new Runnable() {
+			public void run() {
+				a.setValue(2);
+				b.setValue(3);
+				assertEquals(0, sum.computeCount);
+			}
+		});
+		assertEquals(1, sum.computeCount);
+		assertEquals(5, (int) sum.getValue());
+	}
+
+	/**
+	 * A listener that isn't a dependency is notified after the dependents of the expression were refreshed.
+	 */
+	@SuppressWarnings("unchecked")
+	public void testListenersSeeRefreshedDependents() throws Exception {
+		final LiveVariable<Integer> a = new LiveVariable<Integer>(1);
+		final List<Integer> seen = new ArrayList<Integer>();
+		final Sum[] sum = new Sum[1];
+		//Added before the dependent expression, so it comes first in the list of listeners.
+		a.addListener(new ValueListener<Integer>() {
+			public void gotValue(LiveExpression<Integer> exp, Integer value) {
+				if (sum[0]!=null) {
+					seen.add(sum[0].getValue());
+				}
+			}
+		});
+		sum[0] = new Sum(a, LiveExpression.constant(10));
+
+		a.setValue(2);
+		assertEquals(Arrays.asList(12), seen);
+	}
+
+	/**
+	 * A listener that isn't a dependency is notified once per batch, with the final value.
+	 */
+	public void testListenersNotifiedOncePerBatch() throws Exception {
+		final LiveVariable<Integer> a = new LiveVariable<Integer>(1);
+		Recorder<Integer> recorder = new Recorder<Integer>();
+		a.addListener(recorder);
+		LiveExpression.batch(new Runnable() {
+			public void run() {
+				a.setValue(2);
+				a.setValue(3);
+			}
+		});
+		assertEquals(Arrays.asList(1, 3), recorder.values);
+	}
+
+}
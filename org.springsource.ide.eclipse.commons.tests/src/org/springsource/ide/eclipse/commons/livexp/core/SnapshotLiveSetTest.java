@@ -0,0 +1,167 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Pivotal Software, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Pivotal Software, Inc. - initial API and implementation
+ *******************************************************************************/
+package org.springsource.ide.eclipse.commons.livexp.core;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+public class SnapshotLiveSetTest extends TestCase {
+
+	/**
+	 * A delta listener that applies the deltas it gets to its own copy of the set, checking
+	 * that every delta makes sense for the contents seen so far.
+	 */
+	private static class Mirror implements SetDeltaListener<Integer> {
+		final Set<Integer> elements = new HashSet<Integer>();
+		final List<Set<Integer>> added = new ArrayList<Set<Integer>>();
+		String error = null;
+
+		public synchronized void setChanged(SnapshotLiveSet<Integer> set, Set<Integer> added, Set<Integer> removed) {
+			this.added.add(new HashSet<Integer>(added));
+			for (Integer e : added) {
+				if (!elements.add(e) && error==null) {
+					error = e+" added twice";
+				}
+			}
+			for (Integer e : removed) {
+				if (!elements.remove(e) && error==null) {
+					error = e+" removed but not present";
+				}
+			}
+		}
+	}
+
+	/**
+	 * A value listener remembering the values it got.
+	 */
+	private static class Recorder implements ValueListener<Set<Integer>> {
+		final List<Set<Integer>> values = new ArrayList<Set<Integer>>();
+
+		public void gotValue(LiveExpression<Set<Integer>> exp, Set<Integer> value) {
+			values.add(value);
+		}
+	}
+
+	public void testFirstDeltaReportsContents() throws Exception {
+		SnapshotLiveSet<Integer> set = new SnapshotLiveSet<Integer>(Arrays.asList(1, 2));
+		set.add(3);
+		Mirror mirror = new Mirror();
+		set.addDeltaListener(mirror);
+		assertEquals(Arrays.asList(set(1, 2, 3)), mirror.added);
+
+		set.add(4);
+		set.remove(1);
+		set.add(4); //No change, no event
+		assertEquals(Arrays.asList(set(1, 2, 3), set(4), set()), mirror.added);
+		assertNull(mirror.error);
+		assertEquals(set(2, 3, 4), mirror.elements);
+
+		set.removeDeltaListener(mirror);
+		set.add(5);
+		assertEquals(3, mirror.added.size());
+	}
+
+	/**
+	 * A delta listener added while another thread changes the set sees every change exactly once.
+	 */
+	public void testAddDeltaListenerWhileChanging() throws Exception {
+		for (int round = 0; round < 20; round++) {
+			final SnapshotLiveSet<Integer> set = new SnapshotLiveSet<Integer>();
+			Thread writer = new Thread() {
+				@Override
+				public void run() {
+					for (int i = 0; i < 2000; i++) {
+						set.add(i);
+						if (i%3==0) {
+							set.remove(i/2);
+						}
+					}
+				}
+			};
+			writer.start();
+			Mirror[] mirrors = new Mirror[5];
+			for (int i = 0; i < mirrors.length; i++) {
+				mirrors[i] = new Mirror();
+				set.addDeltaListener(mirrors[i]);
+				Thread.yield();
+			}
+			writer.join();
+			for (Mirror mirror : mirrors) {
+				synchronized (mirror) {
+					assertNull(mirror.error, mirror.error);
+					assertEquals(set.getValue(), mirror.elements);
+				}
+			}
+		}
+	}
+
+	public void testSnapshotIsImmutable() throws Exception {
+		SnapshotLiveSet<Integer> set = new SnapshotLiveSet<Integer>(Arrays.asList(1, 2));
+		Set<Integer> snapshot = set.getValue();
+		set.add(3);
+		set.remove(1);
+		assertEquals(set(1, 2), snapshot);
+		assertEquals(set(2, 3), set.getValue());
+		assertSame(set.getValue(), set.getValue());
+		try {
+			snapshot.add(4);
+			fail("Snapshot shouldn't be modifiable");
+		} catch (UnsupportedOperationException e) {
+			//expected
+		}
+	}
+
+	public void testValueListeners() throws Exception {
+		SnapshotLiveSet<Integer> set = new SnapshotLiveSet<Integer>();
+		Recorder a = new Recorder();
+		Recorder b = new Recorder();
+		set.addListener(a);
+		set.addListener(b);
+		set.add(1);
+		assertEquals(set(1), last(a));
+		assertEquals(set(1), last(b));
+
+		//Removing a listener that was never added doesn't affect the others.
+		set.removeListener(new Recorder());
+		set.removeListener(b);
+		set.add(2);
+		assertEquals(set(1, 2), last(a));
+		assertEquals(set(1), last(b));
+
+		//Adding a listener twice doesn't mean it must be removed twice.
+		set.addListener(a);
+		set.removeListener(a);
+		int count = a.values.size();
+		set.add(3);
+		assertEquals(count, a.values.size());
+
+		//A listener added later gets the current value, and the following changes.
+		Recorder c = new Recorder();
+		set.addListener(c);
+		assertEquals(set(1, 2, 3), last(c));
+		set.remove(2);
+		assertEquals(set(1, 3), last(c));
+	}
+
+	private static Set<Integer> set(Integer... elements) {
+		return new HashSet<Integer>(Arrays.asList(elements));
+	}
+
+	private static Set<Integer> last(Recorder r) {
+		return r.values.get(r.values.size()-1);
+	}
+
+}
@@ -18,13 +18,18 @@ import org.junit.runners.Suite;
 import org.junit.runners.Suite.SuiteClasses;
 import org.osgi.framework.Bundle;
 import org.osgi.framework.Version;
+import org.springsource.ide.eclipse.commons.completions.externaltype.indexing.CompactExternalTypeIndexerTest;
 import org.springsource.ide.eclipse.commons.core.CommandHistoryTest;
 import org.springsource.ide.eclipse.commons.core.ResourceProviderTest;
 import org.springsource.ide.eclipse.commons.internal.configurator.ConfiguratorImporterTest;
 import org.springsource.ide.eclipse.commons.internal.configurator.touchpoint.ConfiguratorActionTest;
 import org.springsource.ide.eclipse.commons.internal.content.core.DescriptorMatcherTest;
+import org.springsource.ide.eclipse.commons.internal.core.net.HttpCacheTest;
 import org.springsource.ide.eclipse.commons.internal.help.HelpPluginTest;
 import org.springsource.ide.eclipse.commons.internal.ui.editors.UpdateNotificationTest;
+import org.springsource.ide.eclipse.commons.livexp.core.AsyncUIValueListenerTest;
+import org.springsource.ide.eclipse.commons.livexp.core.LiveExpressionTest;
+import org.springsource.ide.eclipse.commons.livexp.core.SnapshotLiveSetTest;
 
 /**
  * Runs all automated tests for STS IDE.
@@ -42,7 +47,12 @@ import org.springsource.ide.eclipse.commons.internal.ui.editors.UpdateNotificati
 		CommandHistoryTest.class, //
 		UpdateNotificationTest.class, //
 		TipOfTheDayTests.class, //
-		DownloadManagerTests.class //
+		DownloadManagerTests.class, //
+		HttpCacheTest.class, //
+		LiveExpressionTest.class, //
+		SnapshotLiveSetTest.class, //
+		AsyncUIValueListenerTest.class, //
+		CompactExternalTypeIndexerTest.class //
 })
 public class AllIdeTests {
 
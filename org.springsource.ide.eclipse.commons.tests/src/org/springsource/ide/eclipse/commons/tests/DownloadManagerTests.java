@@ -13,20 +13,30 @@ package org.springsource.ide.eclipse.commons.tests;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import junit.framework.TestCase;
 
 import org.springsource.ide.eclipse.commons.frameworks.core.downloadmanager.DownloadManager;
 import org.springsource.ide.eclipse.commons.frameworks.core.downloadmanager.DownloadManager.DownloadService;
 import org.springsource.ide.eclipse.commons.frameworks.core.downloadmanager.DownloadableItem;
+import org.springsource.ide.eclipse.commons.frameworks.core.downloadmanager.SimpleDownloadService;
+import org.springsource.ide.eclipse.commons.frameworks.core.util.FileUtil;
 import org.springsource.ide.eclipse.commons.frameworks.core.util.IOUtil;
 
 public class DownloadManagerTests extends TestCase {
@@ -266,6 +276,416 @@ public class DownloadManagerTests extends TestCase {
 		
 	}
 	
+	/**
+	 * A DownloadService that blocks in 'fetch' until a number of fetches are in progress
+	 * at the same time, or a timeout expires.
+	 */
+	public class BlockingDownloadService implements DownloadService {
+		private final CountDownLatch started;
+		private final long timeout;
+		public final AtomicInteger fetchCount = new AtomicInteger();
+		public volatile boolean timedOut = false;
+
+		public BlockingDownloadService(int concurrentFetches, long timeout) {
+			this.started = new CountDownLatch(concurrentFetches);
+			this.timeout = timeout;
+		}
+
+		public void fetch(URL url, OutputStream writeTo) throws IOException {
+			fetchCount.incrementAndGet();
+			started.countDown();
+			try {
+				if (!started.await(timeout, TimeUnit.MILLISECONDS)) {
+					timedOut = true;
+				}
+			} catch (InterruptedException e) {
+				throw new InterruptedIOException();
+			}
+			writeTo.write(("Content for "+url).getBytes("utf8"));
+		}
+	}
+
+	/**
+	 * Check that different items are downloaded in parallel.
+	 */
+	public void testParallelDownloads() throws Exception {
+		BlockingDownloadService service = new BlockingDownloadService(2, 5000);
+		downloader = new DownloadManager(service, null);
+		downloader.allowUIThread(true);
+		try {
+			joinDownloads(startDownloads(item("foo"), item("bar")));
+			//Each download only finishes once both are in progress.
+			assertFalse(service.timedOut);
+			assertEquals(2, service.fetchCount.get());
+			assertTrue(downloader.isDownloaded(item("foo")));
+			assertTrue(downloader.isDownloaded(item("bar")));
+		} finally {
+			downloader.dispose();
+		}
+	}
+
+	/**
+	 * A DownloadService that blocks in 'fetch' until it is released.
+	 */
+	public class GatedDownloadService implements DownloadService {
+		public final CountDownLatch started = new CountDownLatch(1);
+		public final CountDownLatch release = new CountDownLatch(1);
+		public final AtomicInteger fetchCount = new AtomicInteger();
+
+		public void fetch(URL url, OutputStream writeTo) throws IOException {
+			fetchCount.incrementAndGet();
+			started.countDown();
+			try {
+				release.await();
+			} catch (InterruptedException e) {
+				throw new InterruptedIOException();
+			}
+			writeTo.write(("Content for "+url).getBytes("utf8"));
+		}
+	}
+
+	/**
+	 * Check that concurrent requests for the same item share a single download.
+	 */
+	public void testConcurrentRequestsShareDownload() throws Exception {
+		GatedDownloadService service = new GatedDownloadService();
+		downloader = new DownloadManager(service, null);
+		downloader.allowUIThread(true);
+		try {
+			List<Thread> threads = startDownloads(item("foo"), item("foo"), item("foo"), item("foo"));
+			try {
+				assertTrue(service.started.await(5, TimeUnit.SECONDS));
+				//All requests, including the ones that didn't start the download, must end up waiting
+				// for the one fetch in progress.
+				long deadline = System.currentTimeMillis()+5000;
+				while (!allWaiting(threads)) {
+					assertTrue("Requests not waiting for the download", System.currentTimeMillis()<deadline);
+					Thread.sleep(10);
+				}
+				assertEquals(1, service.fetchCount.get());
+			} finally {
+				service.release.countDown();
+			}
+			joinDownloads(threads);
+			assertEquals(1, service.fetchCount.get());
+			assertTrue(downloader.isDownloaded(item("foo")));
+		} finally {
+			downloader.dispose();
+		}
+	}
+
+	private static boolean allWaiting(List<Thread> threads) {
+		for (Thread t : threads) {
+			if (t.getState()!=Thread.State.WAITING) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Errors thrown by the threads started by 'startDownloads'.
+	 */
+	private final List<Throwable> downloadErrors = Collections.synchronizedList(new ArrayList<Throwable>());
+
+	private List<Thread> startDownloads(DownloadableItem... items) {
+		List<Thread> threads = new ArrayList<Thread>();
+		for (final DownloadableItem item : items) {
+			Thread t = new Thread() {
+				@Override
+				public void run() {
+					try {
+						downloader.doWithDownload(item, new DownloadAcceptor("Content for "+item.getURL()));
+					} catch (Throwable e) {
+						downloadErrors.add(e);
+					}
+				}
+			};
+			t.start();
+			threads.add(t);
+		}
+		return threads;
+	}
+
+	/**
+	 * Wait for the threads started by 'startDownloads' to finish, and rethrow the first error any of them threw.
+	 */
+	private void joinDownloads(List<Thread> threads) throws Exception {
+		for (Thread t : threads) {
+			t.join();
+		}
+		synchronized (downloadErrors) {
+			if (!downloadErrors.isEmpty()) {
+				Throwable e = downloadErrors.get(0);
+				if (e instanceof Exception) {
+					throw (Exception) e;
+				}
+				throw (Error) e;
+			}
+		}
+	}
+
+	/**
+	 * Check that a download that breaks off is resumed where it stopped.
+	 */
+	public void testResumeInterruptedDownload() throws Exception {
+		TestHttpServer server = new TestHttpServer();
+		byte[] content = bytes(100000);
+		TestHttpServer.Resource resource = server.serve("/foo.zip", content, "\"v1\"");
+		resource.breakAfter = 40000;
+		downloader = new DownloadManager(new SimpleDownloadService(), null);
+		downloader.allowUIThread(true);
+		try {
+			DownloadableItem item = new DownloadableItem(server.url("/foo.zip"), downloader);
+			assertContent(content, item.getFile());
+			assertEquals(2, resource.requests.size());
+			assertEquals("bytes=40000-", resource.requests.get(1).getFirst("Range"));
+			assertEquals("\"v1\"", resource.requests.get(1).getFirst("If-Range"));
+			assertEquals(content.length, resource.bytesSent);
+		} finally {
+			downloader.dispose();
+			server.stop();
+		}
+	}
+
+	/**
+	 * Check that an error response to a resume request doesn't discard the content downloaded so far.
+	 */
+	public void testResumeAfterErrorResponse() throws Exception {
+		TestHttpServer server = new TestHttpServer();
+		byte[] content = bytes(100000);
+		TestHttpServer.Resource resource = server.serve("/foo.zip", content, "\"v1\"");
+		resource.breakAfter = 40000;
+		downloader = new DownloadManager(new SimpleDownloadService(), null);
+		downloader.allowUIThread(true);
+		try {
+			DownloadableItem item = new DownloadableItem(server.url("/foo.zip"), downloader);
+			try {
+				downloader.downloadFile(item);
+				fail("Download should have failed");
+			} catch (IOException e) {
+				//expected
+			}
+			resource.failNext = 503;
+			assertContent(content, item.getFile());
+			assertEquals(3, resource.requests.size());
+			assertEquals("bytes=40000-", resource.requests.get(1).getFirst("Range"));
+			assertEquals("bytes=40000-", resource.requests.get(2).getFirst("Range"));
+			assertEquals(content.length, resource.bytesSent);
+		} finally {
+			downloader.dispose();
+			server.stop();
+		}
+	}
+
+	/**
+	 * Check that a download starts over when the content changed since it was interrupted.
+	 */
+	public void testRestartChangedDownload() throws Exception {
+		TestHttpServer server = new TestHttpServer();
+		TestHttpServer.Resource resource = server.serve("/foo.zip", bytes(100000), "\"v1\"");
+		resource.breakAfter = 40000;
+		downloader = new DownloadManager(new SimpleDownloadService(), null);
+		downloader.allowUIThread(true);
+		try {
+			DownloadableItem item = new DownloadableItem(server.url("/foo.zip"), downloader);
+			try {
+				downloader.downloadFile(item);
+				fail("Download should have failed");
+			} catch (IOException e) {
+				//expected
+			}
+			byte[] changed = bytes(50000);
+			changed[0] = 42;
+			resource.content = changed;
+			resource.etag = "\"v2\"";
+			assertContent(changed, item.getFile());
+			assertEquals("bytes=40000-", resource.requests.get(1).getFirst("Range"));
+		} finally {
+			downloader.dispose();
+			server.stop();
+		}
+	}
+
+	/**
+	 * Check that a download starts over when the server doesn't support ranges.
+	 */
+	public void testRestartWithoutRangeSupport() throws Exception {
+		TestHttpServer server = new TestHttpServer();
+		byte[] content = bytes(100000);
+		TestHttpServer.Resource resource = server.serve("/foo.zip", content, "\"v1\"");
+		resource.acceptRanges = false;
+		resource.breakAfter = 40000;
+		downloader = new DownloadManager(new SimpleDownloadService(), null);
+		downloader.allowUIThread(true);
+		try {
+			DownloadableItem item = new DownloadableItem(server.url("/foo.zip"), downloader);
+			assertContent(content, item.getFile());
+			assertEquals(40000+content.length, resource.bytesSent);
+		} finally {
+			downloader.dispose();
+			server.stop();
+		}
+	}
+
+	/**
+	 * Check that identical content downloaded for different items is stored only once.
+	 */
+	public void testCacheStoresSameContentOnce() throws Exception {
+		TestDownloadService service = new TestDownloadService();
+		service.at("http://foo", content("Same content"));
+		service.at("http://bar", content("Same content"));
+		downloader = new DownloadManager(service, null);
+		downloader.allowUIThread(true);
+		try {
+			File foo = item("foo").getFile();
+			File bar = item("bar").getFile();
+			assertEquals(foo, bar);
+			assertEquals("Same content".length(), downloader.getCacheSize());
+			//Removing one item doesn't remove content the other still uses.
+			item("foo").clearCache();
+			assertFalse(downloader.isDownloaded(item("foo")));
+			assertTrue(downloader.isDownloaded(item("bar")));
+		} finally {
+			downloader.dispose();
+		}
+	}
+
+	/**
+	 * Check that the cache evicts least recently used content to stay under its maximum size.
+	 */
+	public void testCacheEvictsLeastRecentlyUsed() throws Exception {
+		TestDownloadService service = new TestDownloadService();
+		service.at("http://a", content("aaaaaaaaaa"));
+		service.at("http://b", content("bbbbbbbbbb"));
+		service.at("http://c", content("cccccccccc"));
+		downloader = new DownloadManager(service, null);
+		downloader.allowUIThread(true);
+		downloader.setMaxCacheSize(25);
+		try {
+			item("a").getFile();
+			Thread.sleep(10);
+			item("b").getFile();
+			Thread.sleep(10);
+			item("a").getFile(); // 'b' is now least recently used
+			Thread.sleep(10);
+			item("c").getFile();
+			assertTrue(downloader.isDownloaded(item("a")));
+			assertFalse(downloader.isDownloaded(item("b")));
+			assertTrue(downloader.isDownloaded(item("c")));
+			assertEquals(20, downloader.getCacheSize());
+			assertEquals(3, service.fetchCount);
+		} finally {
+			downloader.dispose();
+		}
+	}
+
+	/**
+	 * Check that content corrupted in the cache is detected when it is read, and downloaded again.
+	 */
+	public void testCacheDetectsCorruption() throws Exception {
+		TestDownloadService service = new TestDownloadService();
+		service.at("http://foo", content("Content for http://foo"));
+		//Not a temp cache dir created by the download manager, so it survives 'dispose'.
+		File cacheDir = FileUtil.createTempDirectory();
+		try {
+			downloader = new DownloadManager(service, cacheDir);
+			downloader.allowUIThread(true);
+			File file = item("foo").getFile();
+			downloader.dispose();
+
+			//Same length, different content.
+			FileOutputStream out = new FileOutputStream(file);
+			try {
+				out.write("Content for http://bar".getBytes("utf8"));
+			} finally {
+				out.close();
+			}
+
+			//Content is verified the first time it is read by another download manager.
+			downloader = new DownloadManager(service, cacheDir);
+			downloader.allowUIThread(true);
+			DownloadAcceptor acceptor = new DownloadAcceptor("Content for http://foo");
+			downloader.doWithDownload(item("foo"), acceptor);
+			assertEquals("Content for http://foo", acceptor.data);
+			assertEquals(2, service.fetchCount);
+		} finally {
+			downloader.clearCache();
+			downloader.dispose();
+			cacheDir.delete();
+		}
+	}
+
+	/**
+	 * Check that stale content is revalidated with a conditional request, and not downloaded
+	 * again if it didn't change.
+	 */
+	public void testRevalidateUnchanged() throws Exception {
+		TestHttpServer server = new TestHttpServer();
+		byte[] content = bytes(10000);
+		TestHttpServer.Resource resource = server.serve("/foo.zip", content, "\"v1\"");
+		downloader = new DownloadManager(new SimpleDownloadService(), null);
+		downloader.allowUIThread(true);
+		downloader.setRevalidationInterval(0);
+		try {
+			DownloadableItem item = new DownloadableItem(server.url("/foo.zip"), downloader);
+			assertContent(content, item.getFile());
+			assertContent(content, item.getFile());
+			assertEquals(2, resource.requests.size());
+			assertEquals("\"v1\"", resource.requests.get(1).getFirst("If-None-Match"));
+			assertEquals(content.length, resource.bytesSent);
+		} finally {
+			downloader.dispose();
+			server.stop();
+		}
+	}
+
+	/**
+	 * Check that stale content is downloaded again if it changed, and that the cached content is
+	 * used if the server can't be reached.
+	 */
+	public void testRevalidateChanged() throws Exception {
+		TestHttpServer server = new TestHttpServer();
+		TestHttpServer.Resource resource = server.serve("/foo.zip", bytes(10000), "\"v1\"");
+		downloader = new DownloadManager(new SimpleDownloadService(), null);
+		downloader.allowUIThread(true);
+		downloader.setRevalidationInterval(0);
+		try {
+			DownloadableItem item = new DownloadableItem(server.url("/foo.zip"), downloader);
+			item.getFile();
+			byte[] changed = bytes(20000);
+			resource.content = changed;
+			resource.etag = "\"v2\"";
+			assertContent(changed, item.getFile());
+			assertEquals("\"v1\"", resource.requests.get(1).getFirst("If-None-Match"));
+
+			server.stop();
+			assertContent(changed, item.getFile());
+		} finally {
+			downloader.dispose();
+			server.stop();
+		}
+	}
+
+	private static byte[] bytes(int length) {
+		byte[] bytes = new byte[length];
+		for (int i = 0; i < bytes.length; i++) {
+			bytes[i] = (byte) (i*31);
+		}
+		return bytes;
+	}
+
+	private static void assertContent(byte[] expected, File file) throws IOException {
+		ByteArrayOutputStream data = new ByteArrayOutputStream();
+		FileInputStream in = new FileInputStream(file);
+		try {
+			IOUtil.pipe(in, data);
+		} finally {
+			in.close();
+		}
+		assertTrue(Arrays.equals(expected, data.toByteArray()));
+	}
+
 	public TestContent content(String string) {
 		return new TestContent(false, string);
 	}
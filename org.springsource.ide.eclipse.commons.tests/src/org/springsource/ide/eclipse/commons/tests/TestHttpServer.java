@@ -0,0 +1,283 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Pivotal Software, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Pivotal Software, Inc. - initial API and implementation
+ *******************************************************************************/
+package org.springsource.ide.eclipse.commons.tests;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.MalformedURLException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A local HTTP server for tests, serving 'resources' whose behavior can be programmed.
+ * <p>
+ * Just enough of HTTP/1.1 for the tests: one GET or HEAD request per connection, after which
+ * the connection is closed.
+ */
+public class TestHttpServer {
+
+	/**
+	 * Content served at a path.
+	 */
+	public static class Resource {
+		public volatile byte[] content;
+		public volatile String etag;
+		public volatile boolean acceptRanges = true;
+
+		/**
+		 * Value of the 'Last-Modified' header, or null to send none.
+		 */
+		public volatile String lastModified;
+
+		/**
+		 * If >= 0, the next response breaks off after sending this many bytes of content.
+		 */
+		public volatile int breakAfter = -1;
+
+		/**
+		 * If > 0, the next request is answered with this status (and no content) instead.
+		 */
+		public volatile int failNext = 0;
+
+		/**
+		 * Number of bytes of content sent so far.
+		 */
+		public volatile long bytesSent = 0;
+
+		public final List<Request> requests = new ArrayList<Request>();
+
+		public Resource(byte[] content, String etag) {
+			this.content = content;
+			this.etag = etag;
+		}
+	}
+
+	/**
+	 * Headers of a received request.
+	 */
+	public static class Request {
+		private String method;
+		private final Map<String, String> headers = new HashMap<String, String>();
+
+		public String getMethod() {
+			return method;
+		}
+
+		/**
+		 * @return The value of a header, or null if the request doesn't have it. Names are case insensitive.
+		 */
+		public String getFirst(String name) {
+			return headers.get(name.toLowerCase());
+		}
+	}
+
+	private final ServerSocket serverSocket;
+	private final Map<String, Resource> resources = new HashMap<String, Resource>();
+
+	public TestHttpServer() throws IOException {
+		serverSocket = new ServerSocket(0, 50, InetAddress.getByName("localhost"));
+		Thread acceptor = new Thread("TestHttpServer") {
+			@Override
+			public void run() {
+				while (!serverSocket.isClosed()) {
+					try {
+						final Socket socket = serverSocket.accept();
+						new Thread("TestHttpServer request") {
+							@Override
+							public void run() {
+								try {
+									handle(socket);
+								} catch (IOException e) {
+									//Client went away. Nothing to do.
+								} finally {
+									try {
+										socket.close();
+									} catch (IOException e) {
+										//ignore
+									}
+								}
+							}
+						}.start();
+					} catch (IOException e) {
+						//Closed by 'stop'
+					}
+				}
+			}
+		};
+		acceptor.setDaemon(true);
+		acceptor.start();
+	}
+
+	/**
+	 * Serve a resource at a given path (which must start with a '/').
+	 */
+	public Resource serve(String path, byte[] content, String etag) {
+		Resource resource = new Resource(content, etag);
+		synchronized (resources) {
+			resources.put(path, resource);
+		}
+		return resource;
+	}
+
+	public URL url(String path) throws MalformedURLException {
+		return new URL("http://localhost:"+serverSocket.getLocalPort()+path);
+	}
+
+	public void stop() {
+		try {
+			serverSocket.close();
+		} catch (IOException e) {
+			//ignore
+		}
+	}
+
+	private void handle(Socket socket) throws IOException {
+		InputStream in = new BufferedInputStream(socket.getInputStream());
+		String requestLine = readLine(in);
+		if (requestLine==null) {
+			return;
+		}
+		Request request = new Request();
+		request.method = requestLine.split(" ")[0];
+		String line;
+		while ((line = readLine(in))!=null && line.length()>0) {
+			int colon = line.indexOf(':');
+			if (colon>0) {
+				request.headers.put(line.substring(0, colon).trim().toLowerCase(), line.substring(colon+1).trim());
+			}
+		}
+		// <method> <path> HTTP/1.1
+		String[] parts = requestLine.split(" ");
+		Resource resource;
+		synchronized (resources) {
+			resource = parts.length>1 ? resources.get(parts[1]) : null;
+		}
+		OutputStream out = socket.getOutputStream();
+		if (resource==null) {
+			sendHeaders(out, 404, new ArrayList<String>(), 0);
+			return;
+		}
+		synchronized (resource.requests) {
+			resource.requests.add(request);
+		}
+		handleRequest(resource, request, out);
+	}
+
+	private void handleRequest(Resource resource, Request request, OutputStream out) throws IOException {
+		byte[] content = resource.content;
+		String etag = resource.etag;
+		List<String> response = new ArrayList<String>();
+		if (resource.failNext>0) {
+			int status = resource.failNext;
+			resource.failNext = 0;
+			sendHeaders(out, status, response, 0);
+			return;
+		}
+		if (etag!=null) {
+			response.add("ETag: "+etag);
+		}
+		if (resource.lastModified!=null) {
+			response.add("Last-Modified: "+resource.lastModified);
+		}
+		String ifNoneMatch = request.getFirst("If-None-Match");
+		if (etag!=null && etag.equals(ifNoneMatch)) {
+			sendHeaders(out, 304, response, -1);
+			return;
+		}
+		if ("HEAD".equals(request.getMethod())) {
+			sendHeaders(out, 200, response, content.length);
+			return;
+		}
+		int start = 0;
+		String range = request.getFirst("Range");
+		String ifRange = request.getFirst("If-Range");
+		if (resource.acceptRanges) {
+			response.add("Accept-Ranges: bytes");
+			if (range!=null && range.startsWith("bytes=") && range.endsWith("-") && (ifRange==null || ifRange.equals(etag))) {
+				start = Integer.parseInt(range.substring("bytes=".length(), range.length()-1));
+				if (start>=content.length) {
+					sendHeaders(out, 416, response, 0);
+					return;
+				}
+			}
+		}
+		if (start>0) {
+			response.add("Content-Range: bytes "+start+"-"+(content.length-1)+"/"+content.length);
+			sendHeaders(out, 206, response, content.length-start);
+		} else {
+			sendHeaders(out, 200, response, content.length);
+		}
+		int length = content.length-start;
+		if (resource.breakAfter>=0) {
+			length = Math.min(length, resource.breakAfter);
+			resource.breakAfter = -1;
+		}
+		out.write(content, start, length);
+		out.flush();
+		resource.bytesSent += length;
+	}
+
+	/**
+	 * @param contentLength Length of the content that will follow, or -1 for a response without content.
+	 */
+	private static void sendHeaders(OutputStream out, int status, List<String> headers, long contentLength) throws IOException {
+		StringBuilder s = new StringBuilder();
+		s.append("HTTP/1.1 ").append(status).append(" ").append(reason(status)).append("\r\n");
+		for (String h : headers) {
+			s.append(h).append("\r\n");
+		}
+		if (contentLength>=0) {
+			s.append("Content-Length: ").append(contentLength).append("\r\n");
+		}
+		s.append("Connection: close\r\n\r\n");
+		out.write(s.toString().getBytes("ISO-8859-1"));
+		out.flush();
+	}
+
+	private static String reason(int status) {
+		switch (status) {
+		case 200: return "OK";
+		case 206: return "Partial Content";
+		case 304: return "Not Modified";
+		case 404: return "Not Found";
+		case 416: return "Requested Range Not Satisfiable";
+		case 503: return "Service Unavailable";
+		default: return "Unknown";
+		}
+	}
+
+	/**
+	 * @return A line of the request head without its line terminator, or null at the end of the stream.
+	 */
+	private static String readLine(InputStream in) throws IOException {
+		ByteArrayOutputStream line = new ByteArrayOutputStream();
+		int c;
+		while ((c = in.read())!=-1 && c!='\n') {
+			if (c!='\r') {
+				line.write(c);
+			}
+		}
+		if (c==-1 && line.size()==0) {
+			return null;
+		}
+		return line.toString("ISO-8859-1");
+	}
+
+}